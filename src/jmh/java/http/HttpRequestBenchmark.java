@@ -0,0 +1,104 @@
+package http;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// 실제에 가까운 요청 세 가지를 HttpRequest.from 으로 읽는 비용. 핸들러가 값을 꺼내는 데까지 잰다.
+// 10MB 업로드는 임계값(16KB)을 넘으므로 임시 파일에 받고, 매번 지운다
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpRequestBenchmark {
+    private static final String BOUNDARY = "----JinBenchmarkBoundary7MA4YWxkTrZu0gW";
+    private static final String HEADERS = """
+            Host: localhost:8080\r
+            Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r
+            Accept-Encoding: gzip, deflate, br\r
+            Accept-Language: ko-KR,ko;q=0.9,en-US;q=0.8\r
+            Connection: keep-alive\r
+            Cookie: sid=5f1c2a; theme=dark\r
+            User-Agent: Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/126.0.0.0 Safari/537.36\r
+            """;
+
+    @Param({"smallGet", "form64k", "multipart10m"})
+    public String request;
+
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        bytes = switch (request) {
+            case "smallGet" -> ("GET /users/42?page=1&size=20 HTTP/1.1\r\n" + HEADERS + "\r\n").getBytes(StandardCharsets.US_ASCII);
+            case "form64k" -> form(64 * 1024);
+            case "multipart10m" -> multipart(10 * 1024 * 1024);
+            default -> throw new IllegalArgumentException(request);
+        };
+    }
+
+    @Benchmark
+    public Object from() throws IOException {
+        HttpRequest req = HttpRequest.from(new ByteArrayInputStream(bytes));
+        try {
+            return switch (request) {
+                case "smallGet" -> req.getHeader("Accept-Encoding").orElse(null) + req.getQuery("page") + req.getCookie("sid").orElse(null);
+                case "form64k" -> req.getQuery("field0");
+                default -> ((File) req.getMultipartFile("file")).getSize();
+            };
+        } finally {
+            req.release();
+        }
+    }
+
+    private static byte[] form(int size) {
+        StringBuilder body = new StringBuilder(size + 64);
+        for (int i = 0; body.length() < size; i++) {
+            if (i > 0) {
+                body.append('&');
+            }
+            body.append("field").append(i).append("=value%20").append(i).append("+text");
+        }
+        return ("POST /users HTTP/1.1\r\n" + HEADERS
+                + "Content-Type: application/x-www-form-urlencoded\r\n"
+                + "Content-Length: " + body.length() + "\r\n\r\n" + body).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] multipart(int fileSize) throws IOException {
+        byte[] content = new byte[fileSize];
+        Arrays.fill(content, (byte) 'x');
+        ByteArrayOutputStream body = new ByteArrayOutputStream(fileSize + 512);
+        body.write(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"title\"\r\n\r\n"
+                + "holiday\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"video.mp4\"\r\n"
+                + "Content-Type: video/mp4\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        body.write(content);
+        body.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+
+        ByteArrayOutputStream request = new ByteArrayOutputStream(body.size() + 1024);
+        request.write(("POST /upload HTTP/1.1\r\n" + HEADERS
+                + "Content-Type: multipart/form-data; boundary=" + BOUNDARY + "\r\n"
+                + "Content-Length: " + body.size() + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        body.writeTo(request);
+        return request.toByteArray();
+    }
+}
@@ -0,0 +1,69 @@
+package http;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// 기존 HttpRequest.from 과 증분 파서의 바디 크기별 비교. 기존 방식은 바디가 커질수록 제곱으로 느려진다
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpRequestParserBenchmark {
+    private static final String HEADERS = """
+            Host: localhost:8080\r
+            Accept: text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,*/*;q=0.8\r
+            Accept-Encoding: gzip, deflate, br, zstd\r
+            Accept-Language: ko-KR,ko;q=0.9,en-US;q=0.8,en;q=0.7\r
+            Connection: keep-alive\r
+            Cookie: sid=5f1c2a; theme=dark\r
+            User-Agent: Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/126.0.0.0 Safari/537.36\r
+            """;
+
+    @Param({"0", "65536", "1048576"})
+    public int bodySize;
+
+    private byte[] request;
+
+    @Setup
+    public void setUp() {
+        byte[] body = new byte[bodySize];
+        Arrays.fill(body, (byte) 'a');
+        String head = bodySize == 0
+                ? "GET /users?page=1&size=20 HTTP/1.1\r\n" + HEADERS + "\r\n"
+                : "POST /users?page=1&size=20 HTTP/1.1\r\n" + HEADERS
+                + "Content-Type: application/json\r\nContent-Length: " + bodySize + "\r\n\r\n";
+
+        request = new byte[head.length() + bodySize];
+        System.arraycopy(head.getBytes(), 0, request, 0, head.length());
+        System.arraycopy(body, 0, request, head.length(), bodySize);
+    }
+
+    @Benchmark
+    public HttpRequest legacyParser() throws IOException {
+        return LegacyRequestParser.from(new ByteArrayInputStream(request));
+    }
+
+    @Benchmark
+    public HttpRequest incrementalParser() throws IOException {
+        // 레거시 파서와 같은 일을 하도록 바디까지 읽는다
+        HttpRequest parsed = new HttpRequestParser().read(new ByteArrayInputStream(request));
+        parsed.getBody();
+        return parsed;
+    }
+}
@@ -0,0 +1,53 @@
+package http;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// 기존 String.format 직렬화와 미리 인코딩한 상태 줄 + 재사용 버퍼 직렬화 비교.
+// 응답당 할당량은 gc 프로파일러로 본다(gc.alloc.rate.norm 이 응답 하나에 할당한 바이트 수):
+// ./gradlew jmhJar && java -jar build/libs/jin-1.0.1-SNAPSHOT-jmh.jar HttpResponseBenchmark -prof gc
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-XX:+UseParallelGC")
+public class HttpResponseBenchmark {
+    private static final byte[] BODY = "{\"id\":1,\"name\":\"jin\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final OutputStream sink = OutputStream.nullOutputStream();
+
+    @Benchmark
+    public HttpResponse legacySend() throws IOException {
+        HttpResponse res = response();
+        LegacyResponseWriter.send(sink, "HTTP/1.1", HttpStatus.OK, res.getHeaders(), res.getBody());
+        return res;
+    }
+
+    @Benchmark
+    public HttpResponse send() throws IOException {
+        HttpResponse res = response();
+        res.send();
+        return res;
+    }
+
+    private HttpResponse response() {
+        return new HttpResponse(sink)
+                .setStatus(HttpStatus.OK)
+                .addHeader("Content-Type", "application/json")
+                .addHeader("Connection", "keep-alive")
+                .setBody(BODY);
+    }
+}
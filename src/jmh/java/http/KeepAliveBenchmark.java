@@ -0,0 +1,119 @@
+package http;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// 연결당 요청 하나(기존 방식)와 keep-alive 연결 재사용의 초당 요청 수 비교
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class KeepAliveBenchmark {
+    private static final int PORT = 9100;
+    private static final byte[] KEEP_ALIVE_REQUEST = "GET /ping HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes();
+    private static final byte[] CLOSE_REQUEST = "GET /ping HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n".getBytes();
+
+    private Server server;
+    private ExecutorService acceptor;
+
+    @Setup(Level.Trial)
+    public void startServer() {
+        server = Server.defaultServer(PORT, 8);
+        server.setMaxRequestsPerConnection(Integer.MAX_VALUE);
+        server.get("/ping", ctx -> ctx.response()
+                .setStatus(HttpStatus.OK)
+                .setBody("pong".getBytes()));
+
+        acceptor = Executors.newSingleThreadExecutor();
+        acceptor.execute(server::start);
+        while (!server.isConnected()) {
+            Thread.onSpinWait();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() throws IOException {
+        server.stop();
+        acceptor.shutdownNow();
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        private Socket socket;
+        private InputStream input;
+        private OutputStream output;
+
+        @Setup(Level.Trial)
+        public void connect() throws IOException {
+            socket = new Socket("localhost", PORT);
+            input = new BufferedInputStream(socket.getInputStream());
+            output = socket.getOutputStream();
+        }
+
+        @TearDown(Level.Trial)
+        public void disconnect() throws IOException {
+            socket.close();
+        }
+    }
+
+    @Benchmark
+    public int connectionPerRequest() throws IOException {
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.getOutputStream().write(CLOSE_REQUEST);
+            return socket.getInputStream().readAllBytes().length;
+        }
+    }
+
+    @Benchmark
+    public int keepAlive(Client client) throws IOException {
+        client.output.write(KEEP_ALIVE_REQUEST);
+        return readResponse(client.input);
+    }
+
+    // 헤더 끝까지 읽은 뒤 Content-Length 만큼 바디를 읽는다
+    private static int readResponse(InputStream input) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int contentLength = 0;
+        int b;
+        while ((b = input.read()) != -1) {
+            if (b == '\r') {
+                continue;
+            }
+            if (b != '\n') {
+                line.append((char) b);
+                continue;
+            }
+            if (line.length() == 0) {
+                return input.readNBytes(contentLength).length;
+            }
+            if (line.toString().regionMatches(true, 0, "Content-Length:", 0, 15)) {
+                contentLength = Integer.parseInt(line.substring(15).trim());
+            }
+            line.setLength(0);
+        }
+        throw new IOException("Connection closed");
+    }
+}
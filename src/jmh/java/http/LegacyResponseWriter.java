@@ -0,0 +1,32 @@
+package http;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
+// 비교용으로 남겨 둔 기존 HttpResponse.send 의 직렬화
+final class LegacyResponseWriter {
+    private LegacyResponseWriter() {
+    }
+
+    static void send(OutputStream outputStream, String version, HttpStatus status, Map<String, String> headers, byte[] body)
+            throws IOException {
+        String statusLine = String.format("%s %d %s\r%n", version, status.getCode(), status.getMessage());
+        BufferedOutputStream os = new BufferedOutputStream(outputStream);
+        os.write(statusLine.getBytes());
+
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            String headerLine = header.getKey() + ": " + header.getValue() + " \r\n";
+            os.write(headerLine.getBytes());
+        }
+
+        os.write("\r\n".getBytes());
+
+        if (body != null) {
+            os.write(body);
+        }
+
+        os.flush();
+    }
+}
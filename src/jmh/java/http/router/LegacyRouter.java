@@ -0,0 +1,34 @@
+package http.router;
+
+import http.handler.Handler;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 비교용으로 남겨 둔 기존 Router. 정확히 같은 경로만 HashMap 으로 찾고, 나머지는 접두사를 하나씩 훑는다
+class LegacyRouter {
+    private final Map<String, Map<String, Handler>> routes = new ConcurrentHashMap<>();
+    private final Map<String, Handler> staticRoutes = new ConcurrentHashMap<>();
+
+    void addRoute(String method, String path, Handler handler) {
+        routes.computeIfAbsent(method, k -> new HashMap<>()).put(path, handler);
+    }
+
+    void staticFiles(String path, Handler staticHandler) {
+        staticRoutes.put(path, staticHandler);
+    }
+
+    Handler getHandlers(String method, String path) {
+        Map<String, Handler> methodRoutes = routes.get(method);
+        if (methodRoutes != null && methodRoutes.containsKey(path)) {
+            return methodRoutes.get(path);
+        }
+        for (Map.Entry<String, Handler> entry : staticRoutes.entrySet()) {
+            if (path.startsWith(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+}
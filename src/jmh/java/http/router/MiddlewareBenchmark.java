@@ -0,0 +1,89 @@
+package http.router;
+
+import http.Context;
+import http.handler.Handler;
+import http.handler.Middleware;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// 미들웨어 5개를 거치는 비용. 라우터가 미리 이어 둔 체인과 핸들러만 부르는 경우, 요청마다 목록을 훑으며
+// next 를 만드는 방식을 비교한다. 할당은 -prof gc 로 본다:
+// ./gradlew jmhJar && java -jar build/libs/jin-1.0.1-SNAPSHOT-jmh.jar MiddlewareBenchmark -prof gc
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MiddlewareBenchmark {
+    private static final int FILTERS = 5;
+
+    private final Context ctx = new Context(null, null);
+    private final List<Middleware> middleware = new ArrayList<>();
+    private long counter;
+    private Handler handler;
+    private Handler bare;
+    private Handler chained;
+
+    @Setup
+    public void setUp() {
+        handler = ctx -> counter++;
+        for (int i = 0; i < FILTERS; i++) {
+            middleware.add((ctx, next) -> {
+                counter++;
+                next.handle(ctx);
+            });
+        }
+
+        Router router = new Router();
+        router.addRoute("GET", "/bare", handler);
+        bare = router.getHandlers("GET", "/bare");
+
+        router = new Router();
+        for (Middleware m : middleware) {
+            router.use("/", m);
+        }
+        router.addRoute("GET", "/chained", handler);
+        chained = router.getHandlers("GET", "/chained");
+    }
+
+    @Benchmark
+    public long bareHandler() {
+        bare.handle(ctx);
+        return counter;
+    }
+
+    @Benchmark
+    public long compiledChain() {
+        chained.handle(ctx);
+        return counter;
+    }
+
+    // 요청마다 iterator 와 next 람다를 만드는 방식
+    @Benchmark
+    public long interpretedChain() {
+        next(middleware.iterator()).handle(ctx);
+        return counter;
+    }
+
+    private Handler next(Iterator<Middleware> it) {
+        if (!it.hasNext()) {
+            return handler;
+        }
+        Middleware m = it.next();
+        return ctx -> m.handle(ctx, next(it));
+    }
+}
@@ -0,0 +1,87 @@
+package http.router;
+
+import http.handler.Handler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// 라우트 수에 따른 조회 비용. 라디크스 트리는 경로 길이에, 기존 방식은 접두사 라우트 수에 비례한다.
+// 기존 방식에는 경로 변수가 없으므로 /resourceN/ 접두사로 등록하고 핸들러에서 잘라 쓰는 경우와 비교한다
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RouterBenchmark {
+    private static final Handler HANDLER = ctx -> {
+    };
+
+    @Param({"10", "100", "1000"})
+    public int routeCount;
+
+    private Router router;
+    private LegacyRouter legacyRouter;
+    private String staticPath;
+    private String paramPath;
+
+    @Setup
+    public void setUp() {
+        router = new Router();
+        legacyRouter = new LegacyRouter();
+        for (int i = 0; i < routeCount / 2; i++) {
+            router.addRoute("GET", "/api/v1/resource" + i, HANDLER);
+            router.addRoute("GET", "/api/v1/resource" + i + "/:id/items/:itemId", HANDLER);
+            legacyRouter.addRoute("GET", "/api/v1/resource" + i, HANDLER);
+            legacyRouter.staticFiles("/api/v1/resource" + i + "/", HANDLER);
+        }
+        int last = routeCount / 2 - 1;
+        staticPath = "/api/v1/resource" + last;
+        paramPath = "/api/v1/resource" + last + "/12345/items/678";
+    }
+
+    @Benchmark
+    public Object radixStatic() {
+        return router.match("GET", staticPath);
+    }
+
+    @Benchmark
+    public Object radixParam() {
+        RouteMatch match = router.match("GET", paramPath);
+        return match.getParam("itemId");
+    }
+
+    // 서버가 부르는 것과 같은 경로. 경로 변수가 없는 라우트는 미리 만든 결과를 돌려준다
+    @Benchmark
+    public Handler getHandlersStatic() {
+        return router.getHandlers("GET", staticPath);
+    }
+
+    @Benchmark
+    public Handler getHandlersParam() {
+        return router.getHandlers("GET", paramPath);
+    }
+
+    @Benchmark
+    public Object legacyStatic() {
+        return legacyRouter.getHandlers("GET", staticPath);
+    }
+
+    @Benchmark
+    public Object legacyParam() {
+        Handler handler = legacyRouter.getHandlers("GET", paramPath);
+        // 기존 방식은 핸들러가 경로를 직접 잘라야 한다
+        String[] segments = paramPath.split("/");
+        return segments[segments.length - 1] == null ? null : handler;
+    }
+}
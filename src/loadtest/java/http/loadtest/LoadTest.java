@@ -0,0 +1,464 @@
+package http.loadtest;
+
+import http.HttpStatus;
+import http.Server;
+import http.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// 같은 프로세스에서 Server 를 띄우고 논블로킹 클라이언트로 부하를 주어 처리량과 지연 시간 분위수를 출력한다.
+//
+// --rate 를 주면 연결마다 정해진 간격으로 요청을 보내기로 하고, 지연 시간을 실제로 보낸 시각이 아니라 보내기로 한 시각부터 잰다.
+// 앞 응답이 늦어 다음 요청을 제때 못 보내면 그 기다림까지 지연 시간에 들어가므로, 서버가 멈춘 동안의 요청이
+// 통계에서 빠지지 않는다(coordinated omission 보정). --rate=0 이면 응답을 받자마자 다음 요청을 보낸다.
+//
+// ./gradlew loadTest -PloadTestArgs="--server=nio --workers=16 --connections=64 --rate=20000 --duration=30"
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        Server server = newServer(options);
+        registerRoutes(server);
+
+        Thread serverThread = new Thread(server::start, "jin-loadtest-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        while (!server.isConnected()) {
+            Thread.sleep(10);
+        }
+
+        System.out.println(options);
+        Result result;
+        try {
+            result = run(options);
+        } finally {
+            server.stop();
+        }
+        result.print(System.out);
+
+        if (options.maxP99Millis > 0 && result.histogram.valueAtQuantile(0.99) > options.maxP99Millis * 1000) {
+            System.out.println("p99 exceeds --maxP99=" + options.maxP99Millis + "ms");
+            System.exit(1);
+        }
+        System.exit(result.errors > 0 ? 1 : 0);
+    }
+
+    private static Server newServer(Options options) {
+        return switch (options.server) {
+            case "default" -> Server.defaultServer(options.port, options.workers);
+            case "nio" -> Server.nioServer(options.port, options.workers);
+            case "virtual" -> Server.virtualThreadServer(options.port, options.workers);
+            default -> throw new IllegalArgumentException("Unknown --server: " + options.server);
+        };
+    }
+
+    // 응답 크기와 처리 방식이 다른 라우트. /sleep 은 워커를 잡고 기다리고 /async-sleep 은 놓고 기다리므로
+    // 다른 서비스를 부르는 핸들러에 맞는 threadPoolSize 를 찾을 때 쓴다
+    private static void registerRoutes(Server server) {
+        byte[] plaintext = "Hello, World!".getBytes(StandardCharsets.UTF_8);
+        byte[] json = "{\"id\":42,\"name\":\"jin\",\"tags\":[\"web\",\"java\"],\"active\":true}".getBytes(StandardCharsets.UTF_8);
+        byte[] large = new byte[64 * 1024];
+        Arrays.fill(large, (byte) 'x');
+        Executor delayed = CompletableFuture.delayedExecutor(5, TimeUnit.MILLISECONDS);
+
+        server.get("/plaintext", ctx -> ctx.response().setStatus(HttpStatus.OK)
+                .addHeader("Content-Type", "text/plain").setBody(plaintext));
+        server.get("/json", ctx -> ctx.response().setStatus(HttpStatus.OK)
+                .addHeader("Content-Type", "application/json").setBody(json));
+        server.get("/users/:id", ctx -> ctx.response().setStatus(HttpStatus.OK)
+                .setBody(ctx.param("id").getBytes(StandardCharsets.UTF_8)));
+        server.get("/large", ctx -> ctx.response().setStatus(HttpStatus.OK).setBody(large));
+        server.get("/sleep", ctx -> {
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ctx.response().setStatus(HttpStatus.OK).setBody(plaintext);
+        });
+        server.getAsync("/async-sleep", ctx -> CompletableFuture.runAsync(
+                () -> ctx.response().setStatus(HttpStatus.OK).setBody(plaintext), delayed));
+    }
+
+    private static Result run(Options options) throws InterruptedException, IOException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        LongAdder completed = new LongAdder();
+        LongAdder errors = new LongAdder();
+
+        long start = System.nanoTime();
+        long measureStart = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds);
+        long end = measureStart + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < options.clientThreads; t++) {
+            // 연결을 클라이언트 스레드에 고르게 나눈다
+            int connections = options.connections / options.clientThreads + (t < options.connections % options.clientThreads ? 1 : 0);
+            Driver driver = new Driver(options, connections, start, measureStart, end, histogram, completed, errors);
+            Thread thread = new Thread(driver, "jin-loadtest-client-" + t);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return new Result(histogram, completed.sum(), errors.sum(), options.durationSeconds);
+    }
+
+    // 클라이언트 스레드 하나. 셀렉터 하나로 맡은 연결을 모두 돌린다
+    private static final class Driver implements Runnable {
+        private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+        private final Options options;
+        private final InetSocketAddress address;
+        private final Selector selector;
+        private final Connection[] connections;
+        // 연결 하나가 요청을 보내는 간격. --rate=0 이면 0
+        private final long interval;
+        private final long measureStart;
+        private final long end;
+        private final LatencyHistogram histogram;
+        private final LongAdder completed;
+        private final LongAdder errors;
+
+        private Driver(Options options, int count, long start, long measureStart, long end,
+                       LatencyHistogram histogram, LongAdder completed, LongAdder errors) throws IOException {
+            this.options = options;
+            this.address = new InetSocketAddress("localhost", options.port);
+            this.selector = Selector.open();
+            this.connections = new Connection[count];
+            this.interval = options.rate == 0 ? 0 : TimeUnit.SECONDS.toNanos(options.connections) / options.rate;
+            this.measureStart = measureStart;
+            this.end = end;
+            this.histogram = histogram;
+            this.completed = completed;
+            this.errors = errors;
+            for (int i = 0; i < count; i++) {
+                connections[i] = new Connection();
+                // 모든 연결이 한꺼번에 보내지 않도록 시작 시각을 흩어 둔다
+                connections[i].next = start + (count == 0 ? 0 : interval * i / count);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    if (now >= end) {
+                        break;
+                    }
+                    long wait = sendDue(now);
+                    long waitMillis = Math.min(TimeUnit.NANOSECONDS.toMillis(wait), TimeUnit.NANOSECONDS.toMillis(end - now));
+                    if (waitMillis <= 0) {
+                        selector.selectNow();
+                    } else {
+                        selector.select(waitMillis);
+                    }
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        handle(key);
+                    }
+                    selector.selectedKeys().clear();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                for (Connection conn : connections) {
+                    conn.close();
+                }
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                    // 끝났으니 무시한다
+                }
+            }
+        }
+
+        // 보낼 때가 된 연결에서 요청을 보내고, 다음에 보낼 때까지 남은 시간을 돌려준다
+        private long sendDue(long now) {
+            long wait = TimeUnit.MILLISECONDS.toNanos(10);
+            for (Connection conn : connections) {
+                if (conn.inFlight) {
+                    continue;
+                }
+                if (conn.next <= now) {
+                    long intended = interval == 0 ? now : conn.next;
+                    conn.next += interval;
+                    send(conn, intended);
+                } else {
+                    wait = Math.min(wait, conn.next - now);
+                }
+            }
+            return wait;
+        }
+
+        private void send(Connection conn, long intended) {
+            conn.intended = intended;
+            conn.inFlight = true;
+            conn.request = ByteBuffer.wrap(options.pick());
+            conn.response.clear();
+            try {
+                if (conn.channel == null) {
+                    conn.channel = SocketChannel.open();
+                    conn.channel.configureBlocking(false);
+                    conn.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    if (!conn.channel.connect(address)) {
+                        conn.channel.register(selector, SelectionKey.OP_CONNECT, conn);
+                        return;
+                    }
+                }
+                write(conn);
+            } catch (IOException e) {
+                fail(conn);
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            Connection conn = (Connection) key.attachment();
+            try {
+                if (key.isConnectable()) {
+                    conn.channel.finishConnect();
+                    write(conn);
+                } else if (key.isWritable()) {
+                    write(conn);
+                } else if (key.isReadable()) {
+                    read(conn);
+                }
+            } catch (IOException e) {
+                fail(conn);
+            }
+        }
+
+        private void write(Connection conn) throws IOException {
+            conn.channel.write(conn.request);
+            int ops = conn.request.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+            conn.channel.register(selector, ops, conn);
+        }
+
+        private void read(Connection conn) throws IOException {
+            if (!conn.response.hasRemaining()) {
+                conn.response = grow(conn.response, conn.response.capacity() * 2);
+            }
+            if (conn.channel.read(conn.response) == -1) {
+                fail(conn);
+                return;
+            }
+            int length = conn.responseLength();
+            if (length == -1 || conn.response.position() < length) {
+                if (length > conn.response.capacity()) {
+                    conn.response = grow(conn.response, length);
+                }
+                return;
+            }
+
+            long now = System.nanoTime();
+            if (conn.intended >= measureStart) {
+                histogram.record(now - conn.intended);
+                completed.increment();
+                if (conn.status() / 100 != 2) {
+                    errors.increment();
+                }
+            }
+            conn.inFlight = false;
+            if (!options.keepAlive || conn.closeAfterResponse()) {
+                conn.close();
+            }
+        }
+
+        // 연결이 끊기거나 응답이 잘못되면 오류로 세고 다음 요청에서 다시 연결한다
+        private void fail(Connection conn) {
+            if (conn.intended >= measureStart) {
+                errors.increment();
+            }
+            conn.inFlight = false;
+            conn.close();
+        }
+
+        private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(capacity, READ_BUFFER_SIZE));
+            buffer.flip();
+            grown.put(buffer);
+            return grown;
+        }
+
+        private static final class Connection {
+            private SocketChannel channel;
+            private ByteBuffer request;
+            private ByteBuffer response = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            // 보내기로 한 시각과 다음에 보낼 시각(System.nanoTime)
+            private long intended;
+            private long next;
+            private boolean inFlight;
+
+            // 헤더를 다 받았으면 헤더와 바디를 합친 길이, 아니면 -1
+            private int responseLength() {
+                String head = head();
+                if (head == null) {
+                    return -1;
+                }
+                int contentLength = 0;
+                for (String line : head.split("\r\n")) {
+                    int colon = line.indexOf(':');
+                    if (colon != -1 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                        contentLength = Integer.parseInt(line.substring(colon + 1).trim());
+                    }
+                }
+                return head.length() + 4 + contentLength;
+            }
+
+            private int status() {
+                String head = head();
+                return head == null || head.length() < 12 ? 0 : Integer.parseInt(head.substring(9, 12));
+            }
+
+            private boolean closeAfterResponse() {
+                String head = head();
+                return head != null && head.toLowerCase().contains("\r\nconnection: close");
+            }
+
+            private String head() {
+                byte[] bytes = response.array();
+                for (int i = 3; i < response.position(); i++) {
+                    if (bytes[i - 3] == '\r' && bytes[i - 2] == '\n' && bytes[i - 1] == '\r' && bytes[i] == '\n') {
+                        return new String(bytes, 0, i - 3, StandardCharsets.ISO_8859_1);
+                    }
+                }
+                return null;
+            }
+
+            private void close() {
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {
+                        // 다시 연결하면 된다
+                    }
+                    channel = null;
+                }
+            }
+        }
+    }
+
+    private record Result(LatencyHistogram histogram, long completed, long errors, long seconds) {
+        void print(java.io.PrintStream out) {
+            out.printf("requests   %d in %ds (%.1f req/s), errors %d%n", completed, seconds, completed / (double) seconds, errors);
+            out.printf("latency    p50 %s  p99 %s  p99.9 %s  max %s%n",
+                    millis(histogram.valueAtQuantile(0.5)), millis(histogram.valueAtQuantile(0.99)),
+                    millis(histogram.valueAtQuantile(0.999)), millis(histogram.valueAtQuantile(1.0)));
+        }
+
+        private static String millis(long micros) {
+            return String.format("%.2fms", micros / 1000.0);
+        }
+    }
+
+    // --name=value 형식의 인자
+    private static final class Options {
+        private String server = "nio";
+        private int port = 8089;
+        private int workers = 16;
+        private int connections = 64;
+        private int clientThreads = 1;
+        private int rate = 10_000;
+        private long durationSeconds = 10;
+        private long warmupSeconds = 3;
+        private boolean keepAlive = true;
+        private long maxP99Millis;
+        private String mix = "/plaintext:70,/json:20,/users/42:10";
+        // 비율대로 고를 요청 바이트와 누적 가중치
+        private byte[][] requests;
+        private int[] cumulative;
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (!arg.startsWith("--") || eq == -1) {
+                    throw new IllegalArgumentException("Expected --name=value: " + arg);
+                }
+                values.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+
+            Options options = new Options();
+            options.server = values.getOrDefault("server", options.server);
+            options.port = Integer.parseInt(values.getOrDefault("port", String.valueOf(options.port)));
+            options.workers = Integer.parseInt(values.getOrDefault("workers", String.valueOf(options.workers)));
+            options.connections = Integer.parseInt(values.getOrDefault("connections", String.valueOf(options.connections)));
+            options.clientThreads = Integer.parseInt(values.getOrDefault("clientThreads", String.valueOf(options.clientThreads)));
+            options.rate = Integer.parseInt(values.getOrDefault("rate", String.valueOf(options.rate)));
+            options.durationSeconds = Long.parseLong(values.getOrDefault("duration", String.valueOf(options.durationSeconds)));
+            options.warmupSeconds = Long.parseLong(values.getOrDefault("warmup", String.valueOf(options.warmupSeconds)));
+            options.keepAlive = Boolean.parseBoolean(values.getOrDefault("keepAlive", String.valueOf(options.keepAlive)));
+            options.maxP99Millis = Long.parseLong(values.getOrDefault("maxP99", "0"));
+            options.mix = values.getOrDefault("mix", options.mix);
+            values.keySet().removeAll(List.of("server", "port", "workers", "connections", "clientThreads", "rate",
+                    "duration", "warmup", "keepAlive", "maxP99", "mix"));
+            if (!values.isEmpty()) {
+                throw new IllegalArgumentException("Unknown options: " + values.keySet());
+            }
+            if (options.connections < 1 || options.clientThreads < 1 || options.clientThreads > options.connections) {
+                throw new IllegalArgumentException("Need 1 <= clientThreads <= connections");
+            }
+            if (options.rate < 0 || options.durationSeconds < 1 || options.warmupSeconds < 0) {
+                throw new IllegalArgumentException("rate, duration and warmup must not be negative");
+            }
+            options.compileMix();
+            return options;
+        }
+
+        // "/plaintext:70,/json:30" -> 요청 바이트와 누적 가중치
+        private void compileMix() {
+            String[] entries = mix.split(",");
+            requests = new byte[entries.length][];
+            cumulative = new int[entries.length];
+            int total = 0;
+            for (int i = 0; i < entries.length; i++) {
+                String entry = entries[i].trim();
+                int colon = entry.lastIndexOf(':');
+                String path = colon == -1 ? entry : entry.substring(0, colon);
+                int weight = colon == -1 ? 1 : Integer.parseInt(entry.substring(colon + 1));
+                if (weight < 1) {
+                    throw new IllegalArgumentException("Weight must be positive: " + entry);
+                }
+                total += weight;
+                cumulative[i] = total;
+                requests[i] = ("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n"
+                        + (keepAlive ? "" : "Connection: close\r\n") + "\r\n").getBytes(StandardCharsets.US_ASCII);
+            }
+        }
+
+        private byte[] pick() {
+            int n = ThreadLocalRandom.current().nextInt(cumulative[cumulative.length - 1]);
+            for (int i = 0; i < cumulative.length; i++) {
+                if (n < cumulative[i]) {
+                    return requests[i];
+                }
+            }
+            return requests[requests.length - 1];
+        }
+
+        @Override
+        public String toString() {
+            return "server=" + server + " workers=" + workers + " connections=" + connections
+                    + " clientThreads=" + clientThreads + " rate=" + (rate == 0 ? "max" : rate + "/s")
+                    + " keepAlive=" + keepAlive + " duration=" + durationSeconds + "s warmup=" + warmupSeconds + "s"
+                    + " mix=" + mix;
+        }
+    }
+}
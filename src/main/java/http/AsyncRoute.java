@@ -0,0 +1,26 @@
+package http;
+
+import http.handler.AsyncHandler;
+import http.handler.Handler;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+// 라우터에는 Handler 로 등록해 미들웨어 체인 끝에 놓는다. 체인이 여기까지 오면 핸들러를 시작하고 stage 를 Context 에 남기며,
+// 서버는 체인이 돌아온 뒤 그 stage 를 기다린다. timeout 이 0 이면 서버 기본값을 쓴다
+record AsyncRoute(AsyncHandler handler, int timeout) implements Handler {
+
+    @Override
+    public void handle(Context ctx) {
+        CompletionStage<?> stage;
+        try {
+            stage = handler.handle(ctx);
+            if (stage == null) {
+                stage = CompletableFuture.failedFuture(new NullPointerException("AsyncHandler returned null"));
+            }
+        } catch (RuntimeException e) {
+            stage = CompletableFuture.failedFuture(e);
+        }
+        ctx.startAsync(this, stage);
+    }
+}
@@ -0,0 +1,35 @@
+package http;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+// 연결마다 쓰는 읽기/쓰기 버퍼를 모아 두고 다음 연결에서 다시 쓴다.
+// 크기가 같은 배열만 받고, maxPooled 를 넘게 돌려받으면 버려서 GC 에 맡긴다
+final class BufferPool {
+    private final int bufferSize;
+    private final ArrayBlockingQueue<byte[]> free;
+
+    BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.free = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    byte[] acquire() {
+        byte[] buffer = free.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    void release(byte[] buffer) {
+        if (buffer.length == bufferSize) {
+            free.offer(buffer);
+        }
+    }
+
+    int bufferSize() {
+        return bufferSize;
+    }
+
+    // 지금 쉬고 있는 버퍼 수
+    int pooled() {
+        return free.size();
+    }
+}
@@ -0,0 +1,38 @@
+package http;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// 이벤트 루프가 보낼 응답을 ByteBuffer 목록으로 모은다. 바디 배열은 복사하지 않고 그대로 감싼다
+class ByteBufferOutput extends ByteArrayOutputStream implements GatheringOutput {
+    private final List<ByteBuffer> buffers = new ArrayList<>(2);
+
+    ByteBufferOutput() {
+        super(0);
+    }
+
+    @Override
+    public void write(byte[] head, int headLength, byte[] body) {
+        drain();
+        buffers.add(ByteBuffer.wrap(Arrays.copyOf(head, headLength)));
+        if (body != null && body.length > 0) {
+            buffers.add(ByteBuffer.wrap(body));
+        }
+    }
+
+    List<ByteBuffer> toBuffers() {
+        drain();
+        return buffers;
+    }
+
+    // 스트림으로 쓴 바이트를 버퍼 하나로 떼어 낸다
+    private void drain() {
+        if (count > 0) {
+            buffers.add(ByteBuffer.wrap(toByteArray()));
+            reset();
+        }
+    }
+}
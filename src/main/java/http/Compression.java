@@ -0,0 +1,248 @@
+package http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.zip.CRC32C;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Accept-Encoding 을 보고 byte[] 바디를 gzip 이나 deflate 로 압축한다. Server.setCompression 으로 켠다.
+// 강한 ETag 가 붙은 바디(정적 파일 캐시 등)는 압축 결과를 ETag 로 기억해 두고 다시 압축하지 않는다.
+// 강한 ETag 는 URL 마다만 다르므로 바디의 CRC32C 와 길이까지 같아야 기억해 둔 결과를 쓴다
+public class Compression {
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+    private static final int DEFAULT_MIN_SIZE = 1024;
+    private static final long DEFAULT_CACHE_SIZE = 16 * 1024 * 1024;
+    private static final Set<String> DEFAULT_MIME_TYPES = Set.of(
+            "text/html", "text/css", "text/plain", "text/javascript", "application/javascript",
+            "application/json", "application/xml", "image/svg+xml");
+
+    private int minSize = DEFAULT_MIN_SIZE;
+    private Set<String> mimeTypes = DEFAULT_MIME_TYPES;
+    private int level = Deflater.DEFAULT_COMPRESSION;
+
+    private final LinkedHashMap<String, Cached> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxCacheBytes = DEFAULT_CACHE_SIZE;
+    private long cacheBytes;
+
+    // 이보다 작은 바디는 압축하지 않는다. 기본 1024 바이트
+    public Compression setMinSize(int minSize) {
+        if (minSize < 0) {
+            throw new IllegalArgumentException("minSize must not be negative: " + minSize);
+        }
+        this.minSize = minSize;
+        return this;
+    }
+
+    // 압축할 Content-Type (파라미터 제외)
+    public Compression setMimeTypes(Set<String> mimeTypes) {
+        this.mimeTypes = Set.copyOf(mimeTypes);
+        return this;
+    }
+
+    // Deflater 압축 레벨 (1~9)
+    public Compression setLevel(int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("level must be between 1 and 9: " + level);
+        }
+        this.level = level;
+        return this;
+    }
+
+    // 헤더를 보내기 직전에 서버가 호출한다
+    void apply(HttpRequest req, HttpResponse res) {
+        if (!isCompressible(res.getHeader("Content-Type"))) {
+            return;
+        }
+        // 압축 여부가 Accept-Encoding 에 따라 달라지므로 압축하지 않을 때도 알린다
+        addVary(res);
+
+        if (res.getStatusCode() == HttpStatus.NOT_MODIFIED.getCode()) {
+            notModified(req, res);
+            return;
+        }
+        byte[] body = res.getBody();
+        if (body == null || body.length < minSize || res.getHeader("Content-Encoding") != null) {
+            return;
+        }
+        String encoding = negotiate(req.getHeader("Accept-Encoding").orElse(null));
+        if (encoding == null) {
+            return;
+        }
+
+        String etag = res.getHeader("ETag");
+        byte[] compressed = etag != null && !etag.startsWith("W/")
+                ? cached(encoding + " " + etag, body, encoding)
+                : compress(body, encoding);
+        if (compressed.length >= body.length) {
+            return;
+        }
+        res.setBody(compressed);
+        res.addHeader("Content-Encoding", encoding);
+        if (etag != null) {
+            res.addHeader("ETag", etag(etag, encoding));
+        }
+    }
+
+    // 304 에는 바디가 없어 압축할지 알 수 없다. 클라이언트가 압축한 응답의 ETag 로 물었고
+    // 지금도 그 인코딩을 받으면 200 과 같은 ETag 로 응답한다
+    private static void notModified(HttpRequest req, HttpResponse res) {
+        String etag = res.getHeader("ETag");
+        if (etag == null || etag.startsWith("W/") || !stripEncoding(etag).equals(etag)) {
+            return;
+        }
+        String encoding = negotiate(req.getHeader("Accept-Encoding").orElse(null));
+        String ifNoneMatch = req.getHeader("If-None-Match").orElse(null);
+        if (encoding == null || ifNoneMatch == null) {
+            return;
+        }
+        String variant = etag(etag, encoding);
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(variant)) {
+                res.addHeader("ETag", variant);
+                return;
+            }
+        }
+    }
+
+    private boolean isCompressible(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        int semicolon = contentType.indexOf(';');
+        String type = (semicolon == -1 ? contentType : contentType.substring(0, semicolon)).trim().toLowerCase();
+        return mimeTypes.contains(type);
+    }
+
+    private static void addVary(HttpResponse res) {
+        String vary = res.getHeader("Vary");
+        if (vary == null) {
+            res.addHeader("Vary", "Accept-Encoding");
+        } else if (!vary.toLowerCase().contains("accept-encoding")) {
+            res.addHeader("Vary", vary + ", Accept-Encoding");
+        }
+    }
+
+    // gzip 을 먼저 고르고, 안 되면 deflate. q=0 인 인코딩은 고르지 않는다.
+    // * 는 목록에 이름이 없는 인코딩에만 쓰므로 gzip;q=0, * 이면 gzip 을 고르지 않는다
+    public static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        // 목록에 없으면 null
+        Boolean gzip = null;
+        Boolean deflate = null;
+        boolean any = false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String coding = params[0].trim().toLowerCase();
+            boolean accepted = true;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        accepted = Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        accepted = false;
+                    }
+                }
+            }
+            switch (coding) {
+                case GZIP, "x-gzip" -> gzip = accepted;
+                case DEFLATE -> deflate = accepted;
+                case "*" -> any = accepted;
+                default -> {
+                }
+            }
+        }
+        if (gzip != null ? gzip : any) {
+            return GZIP;
+        }
+        return (deflate != null ? deflate : any) ? DEFLATE : null;
+    }
+
+    // 인코딩마다 바이트가 다르므로 강한 ETag 도 달라야 한다. "abc" -> "abc-gzip"
+    public static String etag(String etag, String encoding) {
+        return etag.substring(0, etag.length() - 1) + "-" + encoding + "\"";
+    }
+
+    // 압축한 응답의 ETag 로 온 조건부 요청을 원래 ETag 와 비교할 수 있게 되돌린다
+    public static String stripEncoding(String etag) {
+        for (String encoding : new String[]{GZIP, DEFLATE}) {
+            String suffix = "-" + encoding + "\"";
+            if (etag.endsWith(suffix)) {
+                return etag.substring(0, etag.length() - suffix.length()) + "\"";
+            }
+        }
+        return etag;
+    }
+
+    private byte[] cached(String key, byte[] body, String encoding) {
+        long checksum = checksum(body);
+        synchronized (cache) {
+            Cached cached = cache.get(key);
+            if (cached != null && cached.length() == body.length && cached.checksum() == checksum) {
+                return cached.compressed();
+            }
+        }
+        byte[] compressed = compress(body, encoding);
+        synchronized (cache) {
+            Cached previous = cache.put(key, new Cached(body.length, checksum, compressed));
+            cacheBytes += compressed.length - (previous == null ? 0 : previous.compressed().length);
+            Iterator<Cached> eldest = cache.values().iterator();
+            while (cacheBytes > maxCacheBytes && eldest.hasNext()) {
+                cacheBytes -= eldest.next().compressed().length;
+                eldest.remove();
+            }
+        }
+        return compressed;
+    }
+
+    private static long checksum(byte[] body) {
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        return crc.getValue();
+    }
+
+    // 압축하기 전 바디의 길이와 CRC32C. 다른 URL 이 같은 ETag 를 써도 다른 바디의 결과를 돌려주지 않는다
+    private record Cached(int length, long checksum, byte[] compressed) {
+    }
+
+    private byte[] compress(byte[] body, String encoding) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 2);
+        try {
+            if (GZIP.equals(encoding)) {
+                try (GZIPOutputStream gzip = new LevelGZIPOutputStream(out, level)) {
+                    gzip.write(body);
+                }
+            } else {
+                Deflater deflater = new Deflater(level);
+                try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, deflater)) {
+                    deflate.write(body);
+                } finally {
+                    deflater.end();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static final class LevelGZIPOutputStream extends GZIPOutputStream {
+        private LevelGZIPOutputStream(ByteArrayOutputStream out, int level) throws IOException {
+            super(out);
+            def.setLevel(level);
+        }
+    }
+}
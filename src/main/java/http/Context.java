@@ -1,8 +1,15 @@
 package http;
 
+import java.util.concurrent.CompletionStage;
+
 public class Context {
     private final HttpRequest request;
     private final HttpResponse response;
+    // 풀링할 때 요청이 끝나면 표시한다. 요청과 응답 객체는 다음 요청에 다시 쓰이므로 그 뒤에 쓰면 예외를 던진다
+    private volatile boolean released;
+    // 미들웨어 체인 끝의 비동기 라우트가 남긴 stage. 체인이 돌아오면 서버가 꺼내 완료를 기다린다
+    private AsyncRoute asyncRoute;
+    private CompletionStage<?> asyncStage;
 
     public Context(HttpRequest request, HttpResponse response) {
         this.request = request;
@@ -10,10 +17,41 @@ public class Context {
     }
 
     public HttpRequest request() {
+        checkNotReleased();
         return request;
     }
 
     public HttpResponse response() {
+        checkNotReleased();
         return response;
     }
+
+    // 경로 변수 값. request().getParam(name) 과 같다
+    public String param(String name) {
+        return request().getParam(name);
+    }
+
+    void startAsync(AsyncRoute route, CompletionStage<?> stage) {
+        this.asyncRoute = route;
+        this.asyncStage = stage;
+    }
+
+    AsyncRoute asyncRoute() {
+        return asyncRoute;
+    }
+
+    CompletionStage<?> asyncStage() {
+        return asyncStage;
+    }
+
+    void release() {
+        released = true;
+    }
+
+    // 핸들러가 끝난 뒤에도 Context 를 들고 있다가 쓰는 코드를 잡는다
+    private void checkNotReleased() {
+        if (released) {
+            throw new IllegalStateException("Context used after the request completed; keep the values you need, not the Context");
+        }
+    }
 }
@@ -0,0 +1,471 @@
+package http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+class EventLoop implements Runnable {
+    private static final Logger logger = LoggerFactory.getLogger(EventLoop.class);
+    // 멈추는 중에는 연결이 다 닫혔는지 자주 본다
+    private static final long DRAIN_CHECK_INTERVAL = 50;
+    // 파이프라이닝된 응답을 이만큼까지 모았다가 한 번에 보낸다
+    private static final int MAX_PIPELINED_RESPONSES = 16;
+
+    private final Server server;
+    private final ExecutorService workers;
+    private final Selector selector;
+    private final Thread thread;
+    private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+    private volatile boolean draining;
+    // 이 루프가 맡은 연결의 타임아웃. 루프 스레드만 돌린다
+    private final TimerWheel timeouts;
+
+    EventLoop(Server server, ExecutorService workers, String name) throws IOException {
+        this.server = server;
+        this.workers = workers;
+        this.selector = Selector.open();
+        this.timeouts = server.newTimerWheel();
+        this.thread = new Thread(this, name);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    // 새 요청을 받지 않는다. 쉬고 있는 연결은 바로 닫고, 요청을 처리 중인 연결은 응답을 보낸 뒤 닫는다.
+    // 연결이 모두 닫히면 루프가 끝난다
+    void drain() {
+        draining = true;
+        selector.wakeup();
+    }
+
+    boolean awaitTermination(long nanos) throws InterruptedException {
+        thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(nanos)));
+        return !thread.isAlive();
+    }
+
+    void register(SocketChannel channel) {
+        execute(() -> {
+            try {
+                channel.configureBlocking(false);
+                Connection conn = new Connection(channel, server.newParser());
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ, conn);
+                conn.timeout = timeouts.newTimeout(() -> expire(key));
+                awaitRequest(conn);
+                server.connectionOpened();
+            } catch (IOException e) {
+                logger.error("Error Registering Connection", e);
+                closeQuietly(channel);
+            }
+        });
+    }
+
+    // 다른 스레드에서 셀렉터를 건드리지 않도록 작업을 루프 스레드로 넘긴다
+    private void execute(Runnable task) {
+        pendingTasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                selector.select(draining ? DRAIN_CHECK_INTERVAL : TimerWheel.TICK);
+                runPendingTasks();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+
+                    if (key.isReadable()) {
+                        read(key);
+                    } else if (key.isWritable()) {
+                        write(key);
+                    }
+                }
+
+                timeouts.advance();
+                if (draining && drained()) {
+                    break;
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.error("Error In Event Loop", e);
+            }
+        }
+
+        for (SelectionKey key : selector.keys()) {
+            close(key);
+        }
+        closeQuietly(selector);
+    }
+
+    private void runPendingTasks() {
+        Runnable task;
+        while ((task = pendingTasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    // 다음 요청을 기다린다. 이미 받아 둔 바이트가 있으면 헤더를 읽는 중이다
+    private void awaitRequest(Connection conn) {
+        if (conn.parser.isIdle()) {
+            conn.phase = Phase.IDLE;
+            conn.timeout.expireAfter(server.getIdleTimeout());
+        } else {
+            conn.phase = Phase.HEADER;
+            conn.timeout.expireAfter(server.getHeaderTimeout());
+        }
+    }
+
+    // 타임아웃이 지났다. 헤더나 바디를 기다리던 연결에는 408 을 보내고, 나머지는 바로 닫는다
+    private void expire(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        Connection conn = (Connection) key.attachment();
+        switch (conn.phase) {
+            case HEADER, BODY -> reject(key, new HttpException(HttpStatus.REQUEST_TIMEOUT));
+            case IDLE, WRITE -> close(key);
+            case REQUEST -> {
+                // 핸들러가 도는 중에는 타임아웃이 없다
+            }
+        }
+    }
+
+    // 다음 요청의 첫 바이트를 기다리는 연결만 닫고, 남은 연결이 없으면 true.
+    // 헤더나 바디를 받는 중이거나 처리 중인 연결은 응답을 Connection: close 로 보낸 뒤 닫힌다
+    private boolean drained() {
+        boolean empty = true;
+        for (SelectionKey key : selector.keys()) {
+            Connection conn = (Connection) key.attachment();
+            if (key.isValid() && conn != null && isIdle(conn)) {
+                // 셀렉트한 뒤에 도착한 요청이 있으면 닫지 않고 받는다
+                read(key);
+                if (key.isValid() && isIdle(conn)) {
+                    close(key);
+                }
+            }
+            if (key.isValid()) {
+                empty = false;
+            }
+        }
+        return empty;
+    }
+
+    private static boolean isIdle(Connection conn) {
+        return !conn.busy && conn.phase == Phase.IDLE;
+    }
+
+    private void read(SelectionKey key) {
+        Connection conn = (Connection) key.attachment();
+        int bytesRead;
+        try {
+            bytesRead = conn.channel.read(conn.parser.writableBuffer());
+        } catch (IOException e) {
+            close(key);
+            return;
+        }
+        if (bytesRead == -1) {
+            close(key);
+            return;
+        }
+        if (bytesRead == 0) {
+            return;
+        }
+
+        // 첫 바이트부터 헤더 끝까지는 headerTimeout, 바디는 바이트가 올 때마다 bodyTimeout 을 다시 건다
+        if (conn.parser.isReadingBody()) {
+            conn.phase = Phase.BODY;
+            conn.timeout.expireAfter(server.getBodyTimeout());
+        } else if (conn.phase == Phase.IDLE) {
+            conn.phase = Phase.HEADER;
+            conn.timeout.expireAfter(server.getHeaderTimeout());
+        }
+        process(key);
+    }
+
+    // 버퍼에 완성된 요청이 있으면 워커로 넘긴다. 없으면 모아 둔 응답을 보내거나 더 읽는다
+    private void process(SelectionKey key) {
+        Connection conn = (Connection) key.attachment();
+        HttpRequest req;
+        try {
+            req = conn.parser.parse();
+        } catch (HttpException e) {
+            reject(key, e);
+            return;
+        } catch (IOException e) {
+            logger.error("Error Handling Request", e);
+            close(key);
+            return;
+        }
+        if (req == null) {
+            if (conn.output.isEmpty()) {
+                key.interestOps(SelectionKey.OP_READ);
+            } else {
+                write(key);
+            }
+            return;
+        }
+
+        // 핸들러가 끝날 때까지 더 읽지 않는다
+        key.interestOps(0);
+        conn.busy = true;
+        conn.phase = Phase.REQUEST;
+        conn.timeout.clear();
+        int served = ++conn.served;
+        server.submit(() -> serve(key, req, served), () -> execute(() -> shed(key, req)));
+    }
+
+    private void serve(SelectionKey key, HttpRequest req, int served) {
+        ByteBufferOutput output = new ByteBufferOutput();
+        Connection conn = (Connection) key.attachment();
+        long start = server.startTimer();
+        HttpResponse res;
+        CompletableFuture<Void> handled;
+        try {
+            res = server.newResponse(conn.response, output);
+            conn.response = res;
+            // 파일 바디는 헤더를 보낸 뒤 루프 스레드가 transferTo 로 보낸다
+            res.deferFileBody();
+            server.prepare(req, res, served);
+            handled = server.dispatch(req, res);
+        } catch (RuntimeException e) {
+            logger.error("Error Handling Request", e);
+            req.release();
+            execute(() -> close(key));
+            return;
+        }
+
+        if (handled.isDone()) {
+            complete(key, req, res, output, handled, start);
+        } else {
+            // 비동기 핸들러를 기다리는 동안 워커를 놓는다. 끝나면 다시 워커에서 응답을 만든다
+            handled.whenComplete((value, e) -> workers.execute(() -> complete(key, req, res, output, handled, start)));
+        }
+    }
+
+    // 핸들러가 정한 응답을 버퍼에 쓰고 루프 스레드에 보내게 한다
+    private void complete(SelectionKey key, HttpRequest req, HttpResponse res, ByteBufferOutput output,
+                          CompletableFuture<Void> handled, long start) {
+        boolean keepAlive;
+        FileChannel file = null;
+        Connection conn = (Connection) key.attachment();
+        try {
+            handled.join();
+            res.send();
+            server.recordRequest(req, res, start);
+            if (res.hasFileBody()) {
+                file = res.fileBody();
+            }
+            keepAlive = server.keepAlive(req, res);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error Handling Request", e);
+            if (file != null) {
+                closeQuietly(file);
+            }
+            execute(() -> close(key));
+            return;
+        } finally {
+            req.release();
+        }
+
+        List<ByteBuffer> response = output.toBuffers();
+        FileChannel fileBody = file;
+        execute(() -> {
+            if (!key.isValid()) {
+                if (fileBody != null) {
+                    closeQuietly(fileBody);
+                }
+                return;
+            }
+            conn.parser.recycle(req);
+            conn.output.addAll(response);
+            conn.keepAlive = keepAlive;
+            try {
+                conn.setFile(fileBody);
+            } catch (IOException e) {
+                close(key);
+                return;
+            }
+            // 응답은 요청 순서대로 쌓인다. 다음 요청이 이미 버퍼에 있으면 보내지 않고 이어서 처리한다.
+            // 파일 바디는 헤더 바로 뒤에 보내야 하므로 기다리지 않는다
+            if (keepAlive && fileBody == null && ++conn.pipelined < MAX_PIPELINED_RESPONSES) {
+                process(key);
+            } else {
+                write(key);
+            }
+        });
+    }
+
+    // 워커 큐가 찼거나 큐에서 너무 오래 기다린 요청에 503 을 보내고 연결을 닫는다
+    private void shed(SelectionKey key, HttpRequest req) {
+        req.release();
+        if (!key.isValid()) {
+            return;
+        }
+        ((Connection) key.attachment()).parser.recycle(req);
+        respondAndClose(key, server::shed);
+    }
+
+    // 바디를 더 읽지 않고 오류 응답을 보낸 뒤 연결을 닫는다
+    private void reject(SelectionKey key, HttpException e) {
+        respondAndClose(key, res -> server.reject(res, e));
+    }
+
+    private void respondAndClose(SelectionKey key, Consumer<HttpResponse> respond) {
+        Connection conn = (Connection) key.attachment();
+        ByteBufferOutput output = new ByteBufferOutput();
+        try {
+            HttpResponse res = new HttpResponse(output);
+            respond.accept(res);
+            res.addHeader("Connection", "close");
+            res.send();
+        } catch (IOException ignored) {
+            // 메모리에 쓰므로 일어나지 않는다
+        }
+        key.interestOps(0);
+        conn.busy = true;
+        conn.output.addAll(output.toBuffers());
+        conn.keepAlive = false;
+        write(key);
+    }
+
+    private void write(SelectionKey key) {
+        Connection conn = (Connection) key.attachment();
+        try {
+            // 모아 둔 응답을 한 번의 gathering write 로 보낸다
+            conn.channel.write(conn.output.toArray(new ByteBuffer[0]));
+            while (!conn.output.isEmpty() && !conn.output.peek().hasRemaining()) {
+                conn.output.poll();
+            }
+            if (conn.output.isEmpty() && conn.file != null) {
+                conn.filePosition += conn.file.transferTo(conn.filePosition, conn.fileEnd - conn.filePosition, conn.channel);
+            }
+        } catch (IOException e) {
+            close(key);
+            return;
+        }
+
+        if (!conn.output.isEmpty() || conn.file != null && conn.filePosition < conn.fileEnd) {
+            // 소켓에 쓸 수 있을 때마다 다시 걸어, 클라이언트가 writeTimeout 동안 하나도 받지 않을 때만 닫는다
+            conn.phase = Phase.WRITE;
+            conn.timeout.expireAfter(server.getWriteTimeout());
+            key.interestOps(SelectionKey.OP_WRITE);
+        } else if (conn.keepAlive) {
+            conn.reset();
+            awaitRequest(conn);
+            process(key);
+        } else {
+            close(key);
+        }
+    }
+
+    private void close(SelectionKey key) {
+        // 이미 닫은 연결을 다시 닫으라는 작업이 올 수 있다
+        if (!key.isValid()) {
+            return;
+        }
+        key.cancel();
+        closeQuietly(key.channel());
+        Connection conn = (Connection) key.attachment();
+        if (conn != null) {
+            if (conn.timeout != null) {
+                conn.timeout.cancel();
+            }
+            conn.closeFile();
+            conn.parser.close();
+            server.connectionClosed();
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            logger.debug("Error Closing {}", closeable, e);
+        }
+    }
+
+    private enum Phase {
+        // 다음 요청의 첫 바이트를 기다린다
+        IDLE,
+        // 요청 줄과 헤더를 다 받을 때까지
+        HEADER,
+        BODY,
+        // 워커가 요청을 처리하는 중. 타임아웃이 없다
+        REQUEST,
+        WRITE
+    }
+
+    private static final class Connection {
+        private final SocketChannel channel;
+        private final HttpRequestParser parser;
+        // 풀링할 때 다음 요청에 다시 쓰는 응답 객체. 워커가 요청 순서대로 하나씩 쓴다
+        private HttpResponse response;
+        // 아직 보내지 못한 응답. 요청 순서대로 쌓는다
+        private final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+        // 헤더 뒤에 보낼 파일 바디
+        private FileChannel file;
+        private long filePosition;
+        private long fileEnd;
+        private boolean keepAlive;
+        private boolean busy;
+        private int served;
+        // 보내지 않고 모아 둔 응답 수
+        private int pipelined;
+        private TimerWheel.Timeout timeout;
+        private Phase phase = Phase.IDLE;
+
+        private Connection(SocketChannel channel, HttpRequestParser parser) {
+            this.channel = channel;
+            this.parser = parser;
+        }
+
+        private void setFile(FileChannel file) throws IOException {
+            this.file = file;
+            if (file != null) {
+                filePosition = file.position();
+                fileEnd = file.size();
+            }
+        }
+
+        private void closeFile() {
+            if (file != null) {
+                closeQuietly(file);
+                file = null;
+            }
+        }
+
+        // 응답을 다 보냈다. 파서에 남은 바이트는 다음 요청으로 쓴다
+        private void reset() {
+            closeFile();
+            pipelined = 0;
+            busy = false;
+        }
+    }
+}
@@ -1,8 +1,22 @@
 package http;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
 public class File {
     private final String name;
-    private final byte[] content;
+    // 작은 파일은 메모리(content)에, 큰 파일은 업로드 중 임시 파일(path)에 담긴다
+    private byte[] content;
+    private Path path;
+    private final long size;
+    private boolean temporary;
+    // getPath() 가 메모리의 내용을 내려쓸 디렉터리. null 이면 시스템 임시 디렉터리
+    private Path tempDir;
     private String uploadPath = "/static/upload/";
     private String imageSrc = "/upload/";
     private String uploadName = "";
@@ -10,6 +24,19 @@ public class File {
     public File(String name, byte[] content) {
         this.name = name;
         this.content = content;
+        this.size = content.length;
+    }
+
+    File(String name, byte[] content, Path tempDir) {
+        this(name, content);
+        this.tempDir = tempDir;
+    }
+
+    File(String name, Path path, long size) {
+        this.name = name;
+        this.path = path;
+        this.size = size;
+        this.temporary = true;
     }
 
     public String getUploadPath() {
@@ -24,8 +51,68 @@ public class File {
         return name;
     }
 
+    public long getSize() {
+        return size;
+    }
+
+    public InputStream getInputStream() throws IOException {
+        if (path != null) {
+            return Files.newInputStream(path);
+        }
+        return new ByteArrayInputStream(content);
+    }
+
+    // 메모리에 있던 파일은 처음 요청될 때 임시 파일로 내려쓴다
+    public Path getPath() throws IOException {
+        if (path == null) {
+            path = tempDir == null ? Files.createTempFile("jin-upload-", ".tmp")
+                    : Files.createTempFile(tempDir, "jin-upload-", ".tmp");
+            Files.write(path, content);
+            content = null;
+            temporary = true;
+        }
+        return path;
+    }
+
+    // 업로드된 내용을 target 으로 옮긴다. 임시 파일이면 복사 없이 이동한다
+    public void transferTo(Path target) throws IOException {
+        if (path == null) {
+            Files.write(target, content);
+            return;
+        }
+        if (temporary) {
+            Files.move(path, target, StandardCopyOption.REPLACE_EXISTING);
+            path = target;
+            temporary = false;
+        } else {
+            Files.copy(path, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // 내용 전체를 힙에 올린다. 큰 파일은 getInputStream() 이나 transferTo() 를 쓴다
+    @Deprecated
     public byte[] getContent() {
-        return content;
+        if (content != null) {
+            return content;
+        }
+        try {
+            return Files.readAllBytes(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // 요청이 끝날 때 서버가 호출한다. transferTo 로 옮기지 않은 임시 파일을 지운다
+    void delete() {
+        if (!temporary) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // 임시 디렉터리에 남아도 동작에는 문제가 없다
+        }
+        temporary = false;
     }
 
     public String getUploadName() {
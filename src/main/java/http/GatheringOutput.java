@@ -0,0 +1,10 @@
+package http;
+
+import java.io.IOException;
+
+// 응답 헤더와 바디를 한 번에 내보낼 수 있는 출력. 헤더와 바디를 한 버퍼로 합치지 않고 gathering write 로 보낸다
+interface GatheringOutput {
+
+    // head 는 호출이 끝나면 다시 쓰이므로 나중에 보낼 거라면 복사해 둔다. body 는 null 일 수 있다
+    void write(byte[] head, int headLength, byte[] body) throws IOException;
+}
@@ -0,0 +1,73 @@
+package http;
+
+import java.util.Arrays;
+
+// 상태 줄과 헤더를 담는 스레드별 버퍼. 응답마다 새 배열이나 문자열을 만들지 않고 같은 버퍼에 바로 쓴다.
+// 헤더는 ISO-8859-1 로 보낸다
+final class HeaderEncoder {
+    private static final ThreadLocal<HeaderEncoder> LOCAL = ThreadLocal.withInitial(HeaderEncoder::new);
+    private static final int INITIAL_SIZE = 512;
+
+    private byte[] buffer = new byte[INITIAL_SIZE];
+    private int length;
+
+    private HeaderEncoder() {
+    }
+
+    // 이 스레드의 버퍼를 비워서 돌려준다. 다음 응답에서 다시 쓰므로 내용은 바로 보내거나 복사해야 한다
+    static HeaderEncoder get() {
+        HeaderEncoder encoder = LOCAL.get();
+        encoder.length = 0;
+        return encoder;
+    }
+
+    void write(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    void writeHeader(String name, String value) {
+        ensureCapacity(name.length() + value.length() + 4);
+        writeLatin1(name);
+        buffer[length++] = ':';
+        buffer[length++] = ' ';
+        writeLatin1(value);
+        buffer[length++] = '\r';
+        buffer[length++] = '\n';
+    }
+
+    // name 은 "Name: " 까지 인코딩해 둔 바이트
+    void writeHeader(byte[] name, String value) {
+        write(name);
+        writeLine(value);
+    }
+
+    void writeLine(String line) {
+        ensureCapacity(line.length() + 2);
+        writeLatin1(line);
+        buffer[length++] = '\r';
+        buffer[length++] = '\n';
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+
+    int length() {
+        return length;
+    }
+
+    private void writeLatin1(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            buffer[length++] = c < 0x100 ? (byte) c : (byte) '?';
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package http;
+
+import java.nio.charset.StandardCharsets;
+
+// 자주 쓰는 헤더 이름 표. 요청 바이트와 대소문자 없이 바로 맞춰 보고, 맞으면 번호로 비교한다.
+// 응답을 쓸 때는 미리 인코딩한 "Name: " 바이트를 쓴다
+final class HeaderNames {
+    private static final String[] NAMES = {
+            "Accept", "Accept-Charset", "Accept-Encoding", "Accept-Language", "Accept-Ranges", "Age", "Allow",
+            "Authorization", "Cache-Control", "Connection", "Content-Disposition", "Content-Encoding",
+            "Content-Language", "Content-Length", "Content-Location", "Content-Range", "Content-Type", "Cookie",
+            "Date", "ETag", "Expect", "Expires", "Host", "If-Match", "If-Modified-Since", "If-None-Match",
+            "If-Range", "If-Unmodified-Since", "Keep-Alive", "Last-Modified", "Location", "Origin", "Pragma",
+            "Range", "Referer", "Retry-After", "Server", "Set-Cookie", "TE", "Trailer", "Transfer-Encoding",
+            "Upgrade", "User-Agent", "Vary", "Via", "WWW-Authenticate", "X-Forwarded-For", "X-Forwarded-Proto",
+            "X-Requested-With"
+    };
+    private static final int MAX_LENGTH = 32;
+    // 길이마다 그 길이의 이름 번호들
+    private static final int[][] BY_LENGTH = new int[MAX_LENGTH + 1][];
+    private static final byte[][] ENCODED = new byte[NAMES.length][];
+
+    static {
+        for (int length = 0; length <= MAX_LENGTH; length++) {
+            int count = 0;
+            for (String name : NAMES) {
+                if (name.length() == length) {
+                    count++;
+                }
+            }
+            BY_LENGTH[length] = new int[count];
+            count = 0;
+            for (int id = 0; id < NAMES.length; id++) {
+                if (NAMES[id].length() == length) {
+                    BY_LENGTH[length][count++] = id;
+                }
+            }
+        }
+        for (int id = 0; id < NAMES.length; id++) {
+            ENCODED[id] = (NAMES[id] + ": ").getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    static final int CONNECTION = lookup("Connection");
+    static final int CONTENT_LENGTH = lookup("Content-Length");
+    static final int CONTENT_TYPE = lookup("Content-Type");
+    static final int COOKIE = lookup("Cookie");
+    static final int DATE = lookup("Date");
+    static final int TRANSFER_ENCODING = lookup("Transfer-Encoding");
+
+    private HeaderNames() {
+    }
+
+    // 표에 없으면 -1
+    static int lookup(String name) {
+        if (name.length() > MAX_LENGTH) {
+            return -1;
+        }
+        for (int id : BY_LENGTH[name.length()]) {
+            if (NAMES[id].equalsIgnoreCase(name)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    // src[start, end) 가 표의 이름이면 번호, 아니면 -1. 문자열을 만들지 않는다
+    static int lookup(byte[] src, int start, int end) {
+        int length = end - start;
+        if (length > MAX_LENGTH) {
+            return -1;
+        }
+        for (int id : BY_LENGTH[length]) {
+            if (matches(src, start, NAMES[id])) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    static String name(int id) {
+        return NAMES[id];
+    }
+
+    static byte[] encoded(int id) {
+        return ENCODED[id];
+    }
+
+    private static boolean matches(byte[] src, int start, String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (!RequestHead.equalsIgnoreCase(src[start + i], name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,151 @@
+package http;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// 응답 헤더(와 생성자로 만든 요청 헤더)를 담는 표. 이름과 값을 넣은 순서대로 배열에 두고 대소문자 없이 찾는다.
+// 한 이름에 값이 여러 개일 수 있다(Set-Cookie 등). 표에 있는 이름은 번호로 비교하고 보낼 때 정해진 표기로 쓴다
+final class HeaderTable {
+    private static final int INITIAL_SIZE = 8;
+
+    private String[] names = new String[INITIAL_SIZE];
+    private String[] values = new String[INITIAL_SIZE];
+    // HeaderNames 번호. 표에 없는 이름은 -1
+    private int[] ids = new int[INITIAL_SIZE];
+    private int size;
+
+    static HeaderTable of(Map<String, String> headers) {
+        HeaderTable table = new HeaderTable();
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                table.add(header.getKey(), header.getValue());
+            }
+        }
+        return table;
+    }
+
+    // 첫 값. 없으면 null
+    String get(String name) {
+        int i = indexOf(HeaderNames.lookup(name), name, 0);
+        return i == -1 ? null : values[i];
+    }
+
+    List<String> getAll(String name) {
+        int id = HeaderNames.lookup(name);
+        List<String> all = new ArrayList<>(1);
+        for (int i = indexOf(id, name, 0); i != -1; i = indexOf(id, name, i + 1)) {
+            all.add(values[i]);
+        }
+        return all;
+    }
+
+    boolean contains(String name) {
+        return indexOf(HeaderNames.lookup(name), name, 0) != -1;
+    }
+
+    // 같은 이름의 값을 모두 지우고 하나로 바꾼다
+    void set(String name, String value) {
+        int id = HeaderNames.lookup(name);
+        int i = indexOf(id, name, 0);
+        if (i == -1) {
+            append(id, name, value);
+            return;
+        }
+        values[i] = value;
+        removeFrom(id, name, i + 1);
+    }
+
+    void setIfAbsent(String name, String value) {
+        int id = HeaderNames.lookup(name);
+        if (indexOf(id, name, 0) == -1) {
+            append(id, name, value);
+        }
+    }
+
+    // 같은 이름이 있어도 값을 하나 더 단다
+    void add(String name, String value) {
+        append(HeaderNames.lookup(name), name, value);
+    }
+
+    void remove(String name) {
+        removeFrom(HeaderNames.lookup(name), name, 0);
+    }
+
+    void clear() {
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // 표에 있는 이름이면 정해진 표기로 돌려준다
+    String name(int index) {
+        return ids[index] == -1 ? names[index] : HeaderNames.name(ids[index]);
+    }
+
+    String value(int index) {
+        return values[index];
+    }
+
+    int id(int index) {
+        return ids[index];
+    }
+
+    // 이름마다 값 하나씩. 값이 여러 개면 쉼표로 잇는다
+    Map<String, String> toMap() {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            map.merge(name(i), values[i], (a, b) -> a + ", " + b);
+        }
+        return map;
+    }
+
+    private void append(int id, String name, String value) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+        names[size] = name;
+        values[size] = value;
+        ids[size] = id;
+        size++;
+    }
+
+    private void removeFrom(int id, String name, int from) {
+        int kept = from;
+        for (int i = from; i < size; i++) {
+            if (!matches(i, id, name)) {
+                names[kept] = names[i];
+                values[kept] = values[i];
+                ids[kept] = ids[i];
+                kept++;
+            }
+        }
+        Arrays.fill(names, kept, size, null);
+        Arrays.fill(values, kept, size, null);
+        size = kept;
+    }
+
+    private int indexOf(int id, String name, int from) {
+        for (int i = from; i < size; i++) {
+            if (matches(i, id, name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matches(int index, int id, String name) {
+        if (id != -1) {
+            return ids[index] == id;
+        }
+        return ids[index] == -1 && names[index].equalsIgnoreCase(name);
+    }
+}
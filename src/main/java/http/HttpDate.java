@@ -0,0 +1,35 @@
+package http;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+// 응답마다 붙이는 Date 헤더. 1초에 한 번만 만들고 그 사이에는 같은 바이트를 쓴다
+final class HttpDate {
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter
+            .ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+            .withZone(ZoneOffset.UTC);
+
+    private static volatile Cached cached = new Cached(-1, null);
+
+    private HttpDate() {
+    }
+
+    // "Date: ...\r\n" 한 줄
+    static byte[] headerLine() {
+        long second = System.currentTimeMillis() / 1000;
+        Cached current = cached;
+        if (current.second != second) {
+            // 여러 스레드가 같이 만들어도 결과가 같으니 잠그지 않는다
+            String line = "Date: " + FORMAT.format(Instant.ofEpochSecond(second)) + "\r\n";
+            current = new Cached(second, line.getBytes(StandardCharsets.US_ASCII));
+            cached = current;
+        }
+        return current.line;
+    }
+
+    private record Cached(long second, byte[] line) {
+    }
+}
@@ -0,0 +1,17 @@
+package http;
+
+// 핸들러나 요청 처리 중에 던지면 서버가 해당 상태 코드로 응답한다
+public class HttpException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final HttpStatus status;
+
+    public HttpException(HttpStatus status) {
+        super(status.getCode() + " " + status.getMessage());
+        this.status = status;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+}
@@ -1,22 +1,39 @@
 package http;
 
-import java.io.*;
-import java.net.URLDecoder;
-import java.util.Arrays;
+import http.router.RouteMatch;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 public class HttpRequest {
-    private static final int MAX_REQUEST_SIZE = 1024 * 10; // 1MB
-    private final String method;
-    private final String version;
-    private final String path;
-    private final Map<String, String> query;
-    private final String body;
-    private final Map<String, String> headers;
-    private final Map<String, String> cookies;
-    private final Map<String, Object> multipartFile;
+    // getBody() 나 폼 처리처럼 바디를 메모리에 올릴 때의 한도. 넘으면 413 으로 응답한다
+    static final int MAX_REQUEST_SIZE = 1024 * 1024; // 1MB
+    // 풀링할 때 같은 연결의 다음 요청에 다시 쓰므로 final 이 아니다
+    private String method;
+    private String version;
+    private String path;
+    // 파서가 만든 요청은 헤더와 쿼리를 원본 바이트로 들고 있다가 처음 찾을 때 디코딩한다
+    private RequestHead head;
+    // 폼 바디. 쿼리처럼 처음 찾을 때 파싱한다
+    private byte[] form;
+    // 이름마다 String, 같은 이름이 여러 번 오면 List<String>
+    private Map<String, ?> query;
+    private String body;
+    private InputStream bodyStream;
+    // 라우터가 찾은 라우트. 경로 변수를 여기서 꺼낸다
+    private RouteMatch routeMatch;
+    // 생성자로 만든 요청의 헤더. 파서가 만든 요청은 null 이고 head 에서 찾는다
+    private final HeaderTable headers;
+    private Map<String, String> cookies;
+    private Map<String, Object> multipartFile;
 
     public HttpRequest(String method, String version, String body, String path, Map<String, String> query, Map<String, String> headers, Map<String, String> cookies, Map<String, Object> multipartFile) {
         this.method = method;
@@ -24,228 +41,234 @@ public class HttpRequest {
         this.body = body;
         this.path = path;
         this.query = query;
-        this.headers = headers;
+        this.headers = HeaderTable.of(headers);
         this.cookies = cookies;
-        this.multipartFile = multipartFile;
+        this.multipartFile = multipartFile == null ? Map.of() : multipartFile;
+        this.bodyStream = body == null ? InputStream.nullInputStream() : new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
     }
 
-    public static HttpRequest from(InputStream is) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        BufferedInputStream bis = new BufferedInputStream(is);
-        byte[] buffer = new byte[8196];
-        int bytesRead;
-        int contentLengthPos = -1;
-        int contentLength = -1;
-        int headerEnd = -1;
-        while ((bytesRead = bis.read(buffer)) != -1) {
-            baos.write(buffer, 0, bytesRead);
-
-            if ((contentLengthPos = findSequence(baos.toByteArray(), "Content-Length:".getBytes(), 0)) != -1) {
-                int contentLengthLength = findSequence(baos.toByteArray(), "\r\n".getBytes(), contentLengthPos);
-                if (contentLengthLength != -1) {
-                    contentLength = Integer.parseInt(new String(Arrays.copyOfRange(baos.toByteArray(), contentLengthPos + "Content-Length:".length(), contentLengthLength)).trim());
-                }
-            }
-            // baos 에 \r\n\r\n이 없으면 계속 읽기
-            if ((headerEnd = findSequence(baos.toByteArray(), "\r\n\r\n".getBytes(), 0)) != -1) {
-                if (contentLength != -1) {
-                    int bodyStart = headerEnd + 4;
-                    int bodyEnd = bodyStart + contentLength;
-                    if (bodyEnd <= baos.size()) {
-                        break;
-                    }
-                } else {
-                    break;
-                }
-            }
-        }
-        byte[] rawData = baos.toByteArray();
-
-        // 헤더와 바디 구분점 계산
-        headerEnd = findSequence(rawData, "\r\n\r\n".getBytes(), 0);
-        if (headerEnd == -1) {
-            throw new IOException("Invalid HTTP request");
-        }
-
-        // 헤더 파싱
-        String headerStr = new String(rawData, 0, headerEnd, "UTF-8");
-        String[] headerLines = headerStr.split("\r\n");
-
-        // 요청 라인 파싱
-        String[] requestLines = headerLines[0].split(" ");
-        String method = requestLines[0];
-        String target = URLDecoder.decode(requestLines[1], "UTF-8");
-
-        // 쿼리 파싱
-        Map<String, String> query = new HashMap<>();
-        if (target.contains("?")) {
-            String[] urlParts = target.split("\\?", 2);
-            target = urlParts[0];
-            parseQueryString(urlParts[1].getBytes(), query);
-        }
+    HttpRequest(String method, String version, String path, RequestHead head, byte[] form, Map<String, Object> multipartFile, InputStream bodyStream) {
+        this.headers = null;
+        reuse(method, version, path, head, form, multipartFile, bodyStream);
+    }
 
-        // 헤더 파싱
-        Map<String, String> headers = new HashMap<>();
-        Map<String, String> cookies = new HashMap<>();
-        for (int i = 1; i < headerLines.length; i++) {
-            String[] header = headerLines[i].split(":", 2);
-            if (header.length == 2) {
-                headers.put(header[0].trim(), header[1].trim());
-            }
-            if ("cookie".equalsIgnoreCase(header[0])) {
-                String[] cookieParts = header[1].split(";");
-                for (String cookiePart : cookieParts) {
-                    String[] keyValue = cookiePart.split("=", 2);
-                    if (keyValue.length == 2) {
-                        cookies.put(keyValue[0].trim(), keyValue[1].trim());
-                    }
-                }
-            }
-        }
+    // 파서가 풀링한 요청을 다음 요청으로 채운다
+    HttpRequest reuse(String method, String version, String path, RequestHead head, byte[] form, Map<String, Object> multipartFile, InputStream bodyStream) {
+        this.method = method;
+        this.version = version;
+        this.path = path;
+        this.head = head;
+        this.form = form;
+        this.multipartFile = multipartFile;
+        this.bodyStream = bodyStream;
+        return this;
+    }
 
-        // 바디 파싱
-        byte[] bodyData = Arrays.copyOfRange(rawData, headerEnd + 4, rawData.length);
-        String body = "";
+    // 응답을 보낸 뒤 바디와 라우트, 파싱해 둔 값을 놓는다. head 는 다음 요청을 파싱할 때 비운다
+    void recycle() {
+        body = null;
+        bodyStream = InputStream.nullInputStream();
+        routeMatch = null;
+        multipartFile = Map.of();
+        form = null;
+        query = null;
+        cookies = null;
+    }
 
-        Map<String, Object> multipartData = new HashMap<>();
+    RequestHead head() {
+        return head;
+    }
 
-        // POST 요청 처리
-        if ("POST".equalsIgnoreCase(method)) {
-            String contentType = headers.getOrDefault("Content-Type", "");
-            if (contentType.contains("application/x-www-form-urlencoded")) {
-                parseQueryString(bodyData, query);
-            }
-            // 다른 Content-Type (예: application/json)에 대한 처리는 여기에 추가할 수 있습니다.
-            else if (contentType.contains("multipart/form-data")) {
-                // 멀티파트 폼 데이터 처리
-                String boundary = contentType.split("boundary=")[1];
-                multipartData = parseMultipartFormData(bodyData, boundary);
-            } else {
-                body = new String(bodyData, "UTF-8");
-            }
-        }
+    public static HttpRequest from(InputStream is) throws IOException {
+        return new HttpRequestParser().read(is);
+    }
 
-        return new HttpRequest(method, requestLines[2], body, target, query, headers, cookies, multipartData);
+    public String getMethod() {
+        return method;
     }
 
-    private static int findSequence(byte[] data, byte[] sequence, int start) {
-        for (int i = start; i <= data.length - sequence.length; i++) {
-            boolean found = true;
-            for (int j = 0; j < sequence.length; j++) {
-                if (data[i + j] != sequence[j]) {
-                    found = false;
-                    break;
-                }
-            }
-            if (found) {
-                return i;
-            }
-        }
-        return -1;
+    public String getPath() {
+        return path;
     }
 
-    private static Map<String, Object> parseMultipartFormData(byte[] bodyData, String boundary) throws IOException {
-        Map<String, Object> result = new HashMap<>();
-        byte[] boundaryBytes = ("\r\n--" + boundary).getBytes("UTF-8");
-        int start = 0;
+    public Optional<String> getHeader(String key) {
+        return Optional.ofNullable(header(key));
+    }
 
-        while (start < bodyData.length) {
-            int end = findSequence(bodyData, boundaryBytes, start);
-            if (end == -1) {
-                break;
-            }
+    // 같은 이름의 헤더가 여러 번 오면 온 순서대로 모두
+    public List<String> getHeaders(String key) {
+        return headers == null ? head.headers(key) : headers.getAll(key);
+    }
 
-            byte[] part = Arrays.copyOfRange(bodyData, start, end);
-            processMultipartPart(part, result);
+    private String header(String key) {
+        return headers == null ? head.header(key) : headers.get(key);
+    }
 
-            start = end + boundaryBytes.length;
+    // HTTP/1.1 은 Connection: close 가 없으면, HTTP/1.0 은 Connection: keep-alive 가 있을 때만 연결을 유지한다
+    public boolean isKeepAlive() {
+        // Content-Length 와 Transfer-Encoding 이 함께 오면 앞선 프록시가 바디 길이를 달리 읽었을 수 있으니 닫는다
+        if (header("Transfer-Encoding") != null && header("Content-Length") != null) {
+            return false;
         }
-
-        return result;
+        String connection = header("Connection");
+        if ("HTTP/1.0".equals(version)) {
+            return hasToken(connection, "keep-alive");
+        }
+        return !hasToken(connection, "close");
     }
 
-    private static void processMultipartPart(byte[] part, Map<String, Object> result) throws IOException {
-        int headerEnd = findSequence(part, "\r\n\r\n".getBytes(), 0);
-        if (headerEnd == -1) {
-            return;
+    private static boolean hasToken(String value, String token) {
+        if (value == null) {
+            return false;
         }
-
-        String headerStr = new String(part, 0, headerEnd, "UTF-8");
-        String[] headerLines = headerStr.split("\r\n");
-
-        String[] disposition = headerLines[1].split(";");
-        String name = null;
-        String filename = null;
-        for (String partDisposition : disposition) {
-            String[] keyValue = partDisposition.split("=", 2);
-            if (keyValue.length == 2) {
-                String key = keyValue[0].trim();
-                String value = keyValue[1].trim();
-                if ("name".equalsIgnoreCase(key)) {
-                    name = value.substring(1, value.length() - 1);
-                } else if ("filename".equalsIgnoreCase(key)) {
-                    filename = value.substring(1, value.length() - 1);
-                }
+        for (String part : value.split(",")) {
+            if (token.equalsIgnoreCase(part.trim())) {
+                return true;
             }
         }
+        return false;
+    }
 
-        if (name == null) {
-            return;
-        }
-
-        byte[] value = Arrays.copyOfRange(part, headerEnd + 4, part.length);
-        if (filename != null) {
-            result.put(name, new File(filename, value));
-        } else {
-            result.put(name, new String(value, 0, value.length, "UTF-8"));
-        }
+    public String getRequestLine() {
+        return method + " " + path + " " + version;
     }
 
-    private static void parseQueryString(byte[] bodyData, Map<String, String> query) throws UnsupportedEncodingException {
-        String queryString = new String(bodyData);
-        for (String param : queryString.split("&")) {
-            String[] keyValue = param.split("=", 2);
-            if (keyValue.length == 2) {
-                query.put(keyValue[0], URLDecoder.decode(keyValue[1], "UTF-8"));
-            } else if (keyValue.length == 1) {
-                query.put(keyValue[0], "");
-            }
+    // 쿼리와 폼 필드 값. 같은 이름이 여러 번 오면 첫 값
+    public String getQuery(String key) {
+        Object value = query().get(key);
+        if (value instanceof List<?> values) {
+            return (String) values.get(0);
         }
+        return (String) value;
     }
 
-    public String getMethod() {
-        return method;
+    // 같은 이름으로 온 쿼리와 폼 필드 값 전부. 없으면 빈 목록
+    @SuppressWarnings("unchecked")
+    public List<String> getQueries(String key) {
+        Object value = query().get(key);
+        if (value == null) {
+            return List.of();
+        }
+        if (value instanceof List<?> values) {
+            return Collections.unmodifiableList((List<String>) values);
+        }
+        return List.of((String) value);
     }
 
-    public String getPath() {
-        return path;
+    // 처음 찾을 때 쿼리 문자열과 폼 바디를 디코딩한다. 잘못된 %-인코딩이면 400 으로 응답한다
+    private Map<String, ?> query() {
+        if (query == null) {
+            Map<String, Object> parsed = new HashMap<>();
+            try {
+                if (head != null) {
+                    head.parseQuery(parsed);
+                }
+                if (form != null) {
+                    RequestHead.parseParams(form, 0, form.length, parsed);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new HttpException(HttpStatus.BAD_REQUEST);
+            }
+            query = parsed;
+        }
+        return query;
     }
 
-    public Optional<String> getHeader(String key) {
-        return Optional.ofNullable(headers.get(key));
+    // /users/:id 같은 라우트의 경로 변수 값. 없으면 null
+    public String getParam(String key) {
+        return routeMatch == null ? null : routeMatch.getParam(key);
     }
 
-    public String getRequestLine() {
-        return method + " " + path + " " + version;
+    RouteMatch routeMatch() {
+        return routeMatch;
     }
 
-    public String getQuery(String key) {
-        return query.get(key);
+    void setRouteMatch(RouteMatch routeMatch) {
+        this.routeMatch = routeMatch;
     }
 
     public String getVersion() {
         return version;
     }
 
+    // 바디를 UTF-8 문자열로 한 번에 읽는다. 처음 호출할 때 읽으며 MAX_REQUEST_SIZE 를 넘으면 413 으로 응답한다
     public String getBody() {
+        if (body == null) {
+            try {
+                byte[] bytes = bodyStream.readNBytes(MAX_REQUEST_SIZE + 1);
+                if (bytes.length > MAX_REQUEST_SIZE) {
+                    throw new HttpException(HttpStatus.PAYLOAD_TOO_LARGE);
+                }
+                body = new String(bytes, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
         return body;
     }
 
+    // Content-Length 나 chunked 경계까지의 바디를 소켓에서 바로 읽는다. 크기 제한이 없으므로
+    // 큰 바이너리 바디를 메모리에 모으지 않고 파일 등으로 흘려보낼 때 쓴다. getBody() 와 함께 쓸 수 없다
+    public InputStream getBodyStream() {
+        return bodyStream;
+    }
+
     public Object getMultipartFile(String key) {
         return multipartFile.get(key);
     }
 
+    // 핸들러가 읽지 않은 바디를 limit 바이트까지 읽어 버린다. 바디 끝까지 읽었으면 true
+    boolean discardBody(long limit) throws IOException {
+        // 바디가 없거나 다 읽었으면 버퍼를 만들지 않는다
+        int first = bodyStream.read();
+        if (first == -1) {
+            return true;
+        }
+        byte[] skipped = new byte[8192];
+        long total = 1;
+        int n;
+        while ((n = bodyStream.read(skipped)) != -1) {
+            total += n;
+            if (total > limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 응답을 보낸 뒤 서버가 호출한다. 핸들러가 옮기지 않은 업로드 임시 파일을 지운다
+    void release() {
+        for (Object value : multipartFile.values()) {
+            if (value instanceof File file) {
+                file.delete();
+            }
+        }
+    }
+
     public Optional<String> getCookie(String key) {
+        if (cookies == null) {
+            cookies = parseCookies(header("Cookie"));
+        }
         return Optional.ofNullable(cookies.get(key));
     }
+
+    private static Map<String, String> parseCookies(String value) {
+        if (value == null) {
+            return Map.of();
+        }
+        Map<String, String> cookies = new HashMap<>();
+        int start = 0;
+        while (start <= value.length()) {
+            int end = value.indexOf(';', start);
+            if (end == -1) {
+                end = value.length();
+            }
+            int eq = value.indexOf('=', start);
+            if (eq != -1 && eq < end) {
+                cookies.put(value.substring(start, eq).trim(), value.substring(eq + 1, end).trim());
+            }
+            start = end + 1;
+        }
+        return cookies;
+    }
 }
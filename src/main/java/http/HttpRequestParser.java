@@ -0,0 +1,665 @@
+package http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+
+// 요청 한 건을 줄 단위 상태 기계로 파싱한다. 이미 확인한 바이트는 다시 훑지 않고,
+// 다 읽은 줄은 바로 버퍼에서 버리므로 버퍼에는 파싱 중인 한 줄과 아직 처리하지 않은 바이트만 남는다.
+// 연결마다 하나를 두고 재사용하면 다음 요청의 바이트(파이프라이닝)도 버퍼에 그대로 남는다.
+class HttpRequestParser {
+    static final int INITIAL_BUFFER_SIZE = 8192;
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    static final int DEFAULT_FILE_SIZE_THRESHOLD = 16 * 1024;
+    static final Path DEFAULT_UPLOAD_DIR = Paths.get(System.getProperty("java.io.tmpdir"));
+    private static final String[] METHODS = {"GET", "POST", "PUT", "DELETE", "HEAD", "OPTIONS", "PATCH"};
+
+    private enum State {
+        REQUEST_LINE, HEADERS, BODY
+    }
+
+    // 바디 길이를 정하는 방식
+    private enum Framing {
+        NONE, LENGTH, CHUNKED
+    }
+
+    private enum ChunkState {
+        SIZE, DATA, DATA_END, TRAILER, DONE
+    }
+
+    // 쓰기 모드로 유지한다. [readIndex, position) 이 아직 파싱하지 않은 바이트다
+    private ByteBuffer buffer;
+    private int readIndex;
+    // readIndex 부터 이미 줄 끝을 찾아본 바이트 수
+    private int scanned;
+
+    private State state = State.REQUEST_LINE;
+    private int headerSize;
+    private String method;
+    private String path;
+    private String version;
+    // 파싱 중인 요청의 원본 헤더. 헤더를 다 읽을 때까지 버퍼에서 headStart 뒤를 버리지 않는다
+    private RequestHead head;
+    private int headStart;
+    private String contentType;
+    private long contentLength;
+    private Framing framing;
+    private ChunkState chunkState;
+    // 고정 길이 바디나 지금 청크에서 남은 바이트 수
+    private long remaining;
+
+    // 논블로킹 경로에서 바디를 모으는 곳
+    private byte[] body;
+    private int bodySize;
+    private MultipartDecoder multipart;
+    private byte[] scratch;
+
+    private final int fileSizeThreshold;
+    private final Path uploadDir;
+    // 있으면 읽기 버퍼를 여기서 빌리고 close() 때 돌려준다
+    private final BufferPool pool;
+    // 서버가 다 쓰고 돌려준 요청. 다음 요청에서 객체와 맵을 다시 쓴다
+    private HttpRequest recycled;
+
+    HttpRequestParser() {
+        this(DEFAULT_FILE_SIZE_THRESHOLD, DEFAULT_UPLOAD_DIR);
+    }
+
+    // fileSizeThreshold 를 넘는 업로드 파일은 uploadDir 의 임시 파일로 받는다
+    HttpRequestParser(int fileSizeThreshold, Path uploadDir) {
+        this(fileSizeThreshold, uploadDir, null);
+    }
+
+    HttpRequestParser(int fileSizeThreshold, Path uploadDir, BufferPool pool) {
+        this.fileSizeThreshold = fileSizeThreshold;
+        this.uploadDir = uploadDir;
+        this.pool = pool;
+        this.buffer = pool == null ? ByteBuffer.allocate(INITIAL_BUFFER_SIZE) : ByteBuffer.wrap(pool.acquire());
+        reset();
+    }
+
+    // 풀링할 때 서버가 응답을 다 보낸 요청을 돌려준다. 다음 요청은 이 객체를 비워서 다시 쓴다
+    void recycle(HttpRequest req) {
+        if (pool != null) {
+            req.recycle();
+            recycled = req;
+        }
+    }
+
+    // 연결이 끝났다. 받다 만 멀티파트 바디의 임시 파일을 지우고 빌린 버퍼를 돌려준다
+    void close() {
+        if (multipart != null) {
+            multipart.discard();
+            multipart = null;
+        }
+        if (pool != null && buffer != null) {
+            releaseBuffer();
+            buffer = null;
+        }
+    }
+
+    private void releaseBuffer() {
+        if (buffer.capacity() == pool.bufferSize()) {
+            pool.release(buffer.array());
+        }
+    }
+
+    // 블로킹 스트림에서 요청 헤더를 읽는다. 폼과 멀티파트 바디는 여기서 처리하고,
+    // 나머지 바디는 핸들러가 getBodyStream() 으로 읽을 때 in 에서 바로 가져온다
+    HttpRequest read(InputStream in) throws IOException {
+        while (!parseHead()) {
+            if (fill(in) == -1) {
+                if (isIdle()) {
+                    throw new EOFException("Connection closed before request");
+                }
+                throw new IOException("Invalid HTTP request");
+            }
+        }
+
+        if (framing == Framing.NONE) {
+            return finish(InputStream.nullInputStream(), Map.of());
+        }
+        if (isMultipart()) {
+            multipart = new MultipartDecoder(boundary(contentType), fileSizeThreshold, uploadDir);
+            Map<String, Object> parts;
+            try {
+                byte[] chunk = scratch();
+                int n;
+                while ((n = readBody(in, chunk, 0, chunk.length)) != -1) {
+                    multipart.feed(chunk, 0, n);
+                }
+                parts = multipart.finish();
+            } catch (IOException | RuntimeException e) {
+                // 바디가 중간에 끊기거나(EOF, 타임아웃) 잘못됐으면 이미 받은 파트의 임시 파일을 지운다
+                discardMultipart();
+                throw e;
+            }
+            return finish(InputStream.nullInputStream(), parts);
+        }
+        if (isForm()) {
+            if (contentLength > HttpRequest.MAX_REQUEST_SIZE) {
+                throw new HttpException(HttpStatus.PAYLOAD_TOO_LARGE);
+            }
+            ByteArrayOutputStream form = new ByteArrayOutputStream();
+            byte[] chunk = scratch();
+            int n;
+            while ((n = readBody(in, chunk, 0, chunk.length)) != -1) {
+                if (form.size() + n > HttpRequest.MAX_REQUEST_SIZE) {
+                    throw new HttpException(HttpStatus.PAYLOAD_TOO_LARGE);
+                }
+                form.write(chunk, 0, n);
+            }
+            return finish(new ByteArrayInputStream(form.toByteArray()), Map.of());
+        }
+        // 바디를 다 읽으면 RequestBodyStream 이 endBody() 를 부른다
+        return build(new RequestBodyStream(this, in), Map.of());
+    }
+
+    // 블로킹 스트림에서 바디를 읽는다. 버퍼가 비어 있으면 버퍼를 거치지 않고 바로 읽는다. 바디가 끝나면 -1
+    int readBody(InputStream in, byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (true) {
+            int n = decodeBody(b, off, len);
+            if (n != 0) {
+                return n;
+            }
+            if (readIndex == buffer.position() && isReadingData()) {
+                int bytesRead = in.read(b, off, (int) Math.min(len, remaining));
+                if (bytesRead == -1) {
+                    throw new EOFException("Unexpected end of request body");
+                }
+                remaining -= bytesRead;
+                return bytesRead;
+            }
+            if (fill(in) == -1) {
+                throw new EOFException("Unexpected end of request body");
+            }
+        }
+    }
+
+    // 스트림으로 넘긴 바디를 끝까지 읽었다. 다음 요청을 받을 준비를 한다
+    void endBody() {
+        reset();
+    }
+
+    private int fill(InputStream in) throws IOException {
+        ByteBuffer buf = writableBuffer();
+        int bytesRead = in.read(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+        if (bytesRead > 0) {
+            buf.position(buf.position() + bytesRead);
+        }
+        return bytesRead;
+    }
+
+    // 읽기용 버퍼. 남은 공간이 없으면 처리한 바이트를 밀어내고, 그래도 모자라면 키운다.
+    // 헤더를 읽는 중이면 요청 줄부터 남겨 둔다
+    ByteBuffer writableBuffer() throws IOException {
+        int keep = state == State.HEADERS ? headStart : readIndex;
+        if (keep == buffer.position()) {
+            buffer.clear();
+            readIndex = 0;
+            return buffer;
+        }
+        if (buffer.hasRemaining()) {
+            return buffer;
+        }
+        if (keep > 0) {
+            buffer.flip().position(keep);
+            buffer.compact();
+            readIndex -= keep;
+            headStart -= keep;
+            return buffer;
+        }
+        if (buffer.capacity() >= MAX_HEADER_SIZE) {
+            throw new IOException("Request header too large");
+        }
+        ByteBuffer grown = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, MAX_HEADER_SIZE));
+        buffer.flip();
+        grown.put(buffer);
+        if (pool != null) {
+            releaseBuffer();
+        }
+        buffer = grown;
+        return buffer;
+    }
+
+    // 논블로킹 경로용. 버퍼에 쌓인 바이트로 진행할 수 있는 만큼 파싱하고, 바디까지 다 모이면 요청을 반환한다.
+    // 이 경로에서는 바디를 MAX_REQUEST_SIZE 까지만 메모리에 모은다 (멀티파트는 디코더로 바로 넘긴다)
+    HttpRequest parse() throws IOException {
+        if (state != State.BODY && !parseHead()) {
+            return null;
+        }
+        if (framing == Framing.NONE) {
+            return finish(InputStream.nullInputStream(), Map.of());
+        }
+
+        byte[] chunk = scratch();
+        if (isMultipart()) {
+            if (multipart == null) {
+                multipart = new MultipartDecoder(boundary(contentType), fileSizeThreshold, uploadDir);
+            }
+            Map<String, Object> parts;
+            try {
+                int n;
+                while ((n = decodeBody(chunk, 0, chunk.length)) > 0) {
+                    multipart.feed(chunk, 0, n);
+                }
+                if (n == 0) {
+                    return null;
+                }
+                parts = multipart.finish();
+            } catch (IOException | RuntimeException e) {
+                discardMultipart();
+                throw e;
+            }
+            return finish(InputStream.nullInputStream(), parts);
+        }
+
+        if (body == null) {
+            if (contentLength > HttpRequest.MAX_REQUEST_SIZE) {
+                throw new HttpException(HttpStatus.PAYLOAD_TOO_LARGE);
+            }
+            body = new byte[framing == Framing.LENGTH ? (int) contentLength : INITIAL_BUFFER_SIZE];
+        }
+        int n;
+        while (true) {
+            if (bodySize == body.length) {
+                if (bodySize == HttpRequest.MAX_REQUEST_SIZE) {
+                    // 한도까지 찼다. 남은 바이트가 바디 끝인지만 확인한다
+                    n = decodeBody(chunk, 0, 1);
+                    if (n > 0) {
+                        throw new HttpException(HttpStatus.PAYLOAD_TOO_LARGE);
+                    }
+                    break;
+                }
+                body = Arrays.copyOf(body, Math.min(body.length * 2, HttpRequest.MAX_REQUEST_SIZE));
+            }
+            n = decodeBody(body, bodySize, body.length - bodySize);
+            if (n <= 0) {
+                break;
+            }
+            bodySize += n;
+        }
+        return n == 0 ? null : finish(new ByteArrayInputStream(body, 0, bodySize), Map.of());
+    }
+
+    // 버퍼에 있는 바이트만으로 바디를 디코딩한다. 바디가 끝났으면 -1, 입력이 더 필요하면 0
+    private int decodeBody(byte[] dst, int off, int len) throws IOException {
+        while (true) {
+            if (framing == Framing.NONE || chunkState == ChunkState.DONE) {
+                return -1;
+            }
+            if (isReadingData()) {
+                if (remaining == 0) {
+                    if (framing == Framing.LENGTH) {
+                        return -1;
+                    }
+                    chunkState = ChunkState.DATA_END;
+                    continue;
+                }
+                int available = buffer.position() - readIndex;
+                if (available == 0) {
+                    return 0;
+                }
+                int n = (int) Math.min(Math.min(len, available), remaining);
+                System.arraycopy(buffer.array(), buffer.arrayOffset() + readIndex, dst, off, n);
+                readIndex += n;
+                remaining -= n;
+                return n;
+            }
+
+            // 청크 크기 줄, 청크 뒤 CRLF, 트레일러
+            int lineEnd = findLineEnd();
+            if (lineEnd == -1) {
+                return 0;
+            }
+            int lineStart = readIndex;
+            readIndex = lineEnd + 1;
+            scanned = 0;
+            if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            switch (chunkState) {
+                case SIZE -> {
+                    remaining = parseChunkSize(lineStart, lineEnd);
+                    chunkState = remaining == 0 ? ChunkState.TRAILER : ChunkState.DATA;
+                }
+                case DATA_END -> {
+                    if (lineEnd != lineStart) {
+                        throw new IOException("Invalid chunked body");
+                    }
+                    chunkState = ChunkState.SIZE;
+                }
+                case TRAILER -> {
+                    // 트레일러 필드는 쓰지 않으므로 빈 줄까지 버린다
+                    if (lineEnd == lineStart) {
+                        chunkState = ChunkState.DONE;
+                    }
+                }
+                default -> throw new IllegalStateException(chunkState.name());
+            }
+        }
+    }
+
+    private boolean isReadingData() {
+        return framing == Framing.LENGTH || chunkState == ChunkState.DATA;
+    }
+
+    private long parseChunkSize(int start, int end) throws IOException {
+        long size = 0;
+        int digits = 0;
+        for (int i = start; i < end; i++) {
+            int digit = Character.digit(buffer.get(i), 16);
+            if (digit == -1) {
+                // ';' 뒤의 청크 확장은 무시한다
+                break;
+            }
+            if (++digits > 15) {
+                throw new IOException("Chunk size too large");
+            }
+            size = size * 16 + digit;
+        }
+        if (digits == 0) {
+            throw new IOException("Invalid chunk size");
+        }
+        return size;
+    }
+
+    // 요청 라인과 헤더를 파싱한다. 빈 줄까지 읽었으면 true
+    private boolean parseHead() throws IOException {
+        while (state != State.BODY) {
+            int lineEnd = findLineEnd();
+            if (lineEnd == -1) {
+                return false;
+            }
+            int lineStart = readIndex;
+            int next = lineEnd + 1;
+            // LF 만으로 끝난 줄도 허용한다
+            if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            headerSize += next - lineStart;
+            if (headerSize > MAX_HEADER_SIZE) {
+                throw new IOException("Request header too large");
+            }
+            readIndex = next;
+            scanned = 0;
+
+            if (state == State.REQUEST_LINE) {
+                // 요청 사이의 빈 줄은 무시한다
+                if (lineEnd > lineStart) {
+                    beginRequest(lineStart);
+                    parseRequestLine(lineStart, lineEnd);
+                    state = State.HEADERS;
+                } else {
+                    headerSize = 0;
+                }
+            } else if (lineEnd > lineStart) {
+                parseHeader(lineStart, lineEnd);
+            } else {
+                // 헤더 값은 핸들러가 찾을 때 디코딩하도록 원본 바이트만 옮겨 둔다
+                head.copyFrom(buffer.array(), buffer.arrayOffset() + headStart, buffer.arrayOffset() + readIndex);
+                if (framing == Framing.NONE && contentLength > 0) {
+                    framing = Framing.LENGTH;
+                    remaining = contentLength;
+                }
+                state = State.BODY;
+            }
+        }
+        return true;
+    }
+
+    private boolean isMultipart() {
+        return "POST".equalsIgnoreCase(method) && contentType.contains("multipart/form-data");
+    }
+
+    private boolean isForm() {
+        return "POST".equalsIgnoreCase(method) && contentType.contains("application/x-www-form-urlencoded");
+    }
+
+    private byte[] scratch() {
+        if (scratch == null) {
+            scratch = new byte[INITIAL_BUFFER_SIZE];
+        }
+        return scratch;
+    }
+
+    private void discardMultipart() {
+        multipart.discard();
+        multipart = null;
+    }
+
+    private static String boundary(String contentType) throws IOException {
+        int start = contentType.indexOf("boundary=");
+        if (start == -1) {
+            throw new IOException("Missing multipart boundary");
+        }
+        start += "boundary=".length();
+        int end = contentType.indexOf(';', start);
+        String boundary = (end == -1 ? contentType.substring(start) : contentType.substring(start, end)).trim();
+        if (boundary.length() >= 2 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+            boundary = boundary.substring(1, boundary.length() - 1);
+        }
+        return boundary;
+    }
+
+    // 헤더를 다 읽고 바디를 읽는 중이면 true. 블로킹 경로에서는 핸들러가 바디 스트림을 끝까지 읽을 때까지다
+    boolean isReadingBody() {
+        return state == State.BODY;
+    }
+
+    // 요청을 파싱하는 중이 아니고 남은 바이트도 없으면 true
+    boolean isIdle() {
+        return state == State.REQUEST_LINE && readIndex == buffer.position();
+    }
+
+    // 남은 바이트(다음 요청)는 두고 파싱 상태만 비운다
+    private void reset() {
+        state = State.REQUEST_LINE;
+        headerSize = 0;
+        method = null;
+        path = null;
+        version = null;
+        head = null;
+        contentType = "";
+        contentLength = 0;
+        framing = Framing.NONE;
+        chunkState = null;
+        remaining = 0;
+        body = null;
+        bodySize = 0;
+        multipart = null;
+    }
+
+    // 요청 줄을 찾았다. 서버가 돌려준 요청이 있으면 그 RequestHead 를 비워서 다시 쓴다
+    private void beginRequest(int lineStart) {
+        head = recycled != null ? recycled.head() : new RequestHead();
+        head.clear();
+        headStart = lineStart;
+    }
+
+    private int findLineEnd() {
+        byte[] array = buffer.array();
+        int offset = buffer.arrayOffset();
+        int end = buffer.position();
+        for (int i = readIndex + scanned; i < end; i++) {
+            if (array[offset + i] == '\n') {
+                return i;
+            }
+        }
+        scanned = end - readIndex;
+        return -1;
+    }
+
+    private void parseRequestLine(int start, int end) throws IOException {
+        int methodEnd = indexOf((byte) ' ', start, end);
+        int targetEnd = methodEnd == -1 ? -1 : indexOf((byte) ' ', methodEnd + 1, end);
+        if (targetEnd == -1) {
+            throw new IOException("Invalid HTTP request");
+        }
+        method = method(start, methodEnd);
+        int question = indexOf((byte) '?', methodEnd + 1, targetEnd);
+        int pathEnd = question == -1 ? targetEnd : question;
+        try {
+            path = decode(string(methodEnd + 1, pathEnd));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid URL encoding", e);
+        }
+        if (question != -1) {
+            head.setQuery(question + 1 - headStart, targetEnd - headStart);
+        }
+        version = version(targetEnd + 1, end);
+    }
+
+    // 흔한 메서드와 버전은 문자열을 새로 만들지 않는다
+    private String method(int start, int end) {
+        for (String known : METHODS) {
+            if (matches(start, end, known)) {
+                return known;
+            }
+        }
+        return string(start, end);
+    }
+
+    private String version(int start, int end) {
+        if (matches(start, end, "HTTP/1.1")) {
+            return "HTTP/1.1";
+        }
+        if (matches(start, end, "HTTP/1.0")) {
+            return "HTTP/1.0";
+        }
+        return string(start, end);
+    }
+
+    private boolean matches(int start, int end, String s) {
+        if (end - start != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (buffer.get(start + i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matchesIgnoreCase(int start, int end, String s) {
+        if (end - start != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (!RequestHead.equalsIgnoreCase(buffer.get(start + i), s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void parseHeader(int start, int end) throws IOException {
+        int colon = indexOf((byte) ':', start, end);
+        if (colon == -1) {
+            return;
+        }
+        int nameStart = skipSpaces(start, colon);
+        int nameEnd = trimSpaces(nameStart, colon);
+        int valueStart = skipSpaces(colon + 1, end);
+        int valueEnd = trimSpaces(valueStart, end);
+        int id = HeaderNames.lookup(buffer.array(), buffer.arrayOffset() + nameStart, buffer.arrayOffset() + nameEnd);
+        head.addHeader(id, nameStart - headStart, nameEnd - headStart, valueStart - headStart, valueEnd - headStart);
+
+        // 바디 길이와 형식을 정하는 헤더만 여기서 읽는다
+        if (id == HeaderNames.CONTENT_LENGTH) {
+            String value = string(valueStart, valueEnd);
+            try {
+                contentLength = Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid Content-Length: " + value);
+            }
+            if (contentLength < 0) {
+                throw new IOException("Invalid Content-Length: " + value);
+            }
+        } else if (id == HeaderNames.TRANSFER_ENCODING) {
+            // 쉼표로 나눈 마지막 인코딩이 chunked 여야 바디 끝을 안다. 아니면 Content-Length 로 읽을 때
+            // 프록시와 요청 경계가 달라질 수 있으니(request smuggling) 받지 않는다. chunked 는 Content-Length 보다 우선한다
+            int last = valueEnd;
+            while (last > valueStart && buffer.get(last - 1) != ',') {
+                last--;
+            }
+            if (!matchesIgnoreCase(skipSpaces(last, valueEnd), valueEnd, "chunked")) {
+                throw new HttpException(HttpStatus.BAD_REQUEST);
+            }
+            framing = Framing.CHUNKED;
+            chunkState = ChunkState.SIZE;
+        } else if (id == HeaderNames.CONTENT_TYPE) {
+            contentType = string(valueStart, valueEnd);
+        }
+    }
+
+    // 바디까지 다 읽은 요청을 만들고 다음 요청을 받을 준비를 한다
+    private HttpRequest finish(InputStream bodyStream, Map<String, Object> multipartData) throws IOException {
+        HttpRequest request = build(bodyStream, multipartData);
+        reset();
+        return request;
+    }
+
+    private HttpRequest build(InputStream bodyStream, Map<String, Object> multipartData) throws IOException {
+        // 폼 바디는 쿼리처럼 처음 찾을 때 파싱한다
+        byte[] form = null;
+        if (isForm()) {
+            form = bodyStream.readAllBytes();
+            bodyStream = InputStream.nullInputStream();
+        }
+
+        if (recycled != null) {
+            HttpRequest req = recycled.reuse(method, version, path, head, form, multipartData, bodyStream);
+            recycled = null;
+            return req;
+        }
+        return new HttpRequest(method, version, path, head, form, multipartData, bodyStream);
+    }
+
+    private static String decode(String value) {
+        if (value.indexOf('%') == -1 && value.indexOf('+') == -1) {
+            return value;
+        }
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+    private int indexOf(byte b, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int skipSpaces(int start, int end) {
+        while (start < end && buffer.get(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private int trimSpaces(int start, int end) {
+        while (end > start && buffer.get(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private String string(int start, int end) {
+        return new String(buffer.array(), buffer.arrayOffset() + start, end - start, StandardCharsets.UTF_8);
+    }
+}
@@ -1,37 +1,89 @@
 package http;
 
-import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.HashMap;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 public class HttpResponse {
+    private static final byte[] CRLF = {'\r', '\n'};
+
     private OutputStream outputStream;
     private String version;
+    private HttpStatus status;
     private int statusCode;
     private String statusMsg;
-    private Map<String, String> headers;
+    private final HeaderTable headers;
     private byte[] body;
+    private ResponseBodyStream bodyStream;
+    // 파일 바디. 힙에 읽지 않고 transferTo 로 소켓에 바로 보낸다
+    private Path file;
+    private FileChannel fileChannel;
+    // 소켓 채널이 있으면 커널이 파일을 바로 복사한다(sendfile)
+    private WritableByteChannel channel;
+    // 이벤트 루프가 헤더를 보낸 뒤 파일 바디를 직접 보낸다
+    private boolean deferFileBody;
+    private boolean committed;
+    // 서버가 헤더를 보내기 직전에 Connection 헤더 등을 정하도록 건다
+    private Consumer<HttpResponse> beforeCommit;
+    // HTTP/1.0 클라이언트에는 chunked 로 보낼 수 없다
+    private boolean chunkedAllowed = true;
+    // HEAD 요청의 응답. GET 과 같은 헤더를 보내고 바디는 보내지 않는다
+    private boolean omitBody;
 
     public HttpResponse() {
-        this.headers = new HashMap<>();
+        this.headers = new HeaderTable();
     }
 
     public HttpResponse(OutputStream outputStream) {
         this.outputStream = outputStream;
         this.version = "HTTP/1.1";
-        this.headers = new HashMap<>();
+        this.headers = new HeaderTable();
+    }
+
+    // 풀링할 때 같은 연결의 다음 응답에 다시 쓰도록 처음 상태로 되돌린다. 헤더 표는 비워서 다시 쓴다
+    HttpResponse reset(OutputStream outputStream) {
+        closeFile();
+        this.outputStream = outputStream;
+        this.version = "HTTP/1.1";
+        this.status = null;
+        this.statusCode = 0;
+        this.statusMsg = null;
+        this.headers.clear();
+        this.body = null;
+        this.bodyStream = null;
+        this.channel = null;
+        this.deferFileBody = false;
+        this.committed = false;
+        this.beforeCommit = null;
+        this.chunkedAllowed = true;
+        this.omitBody = false;
+        return this;
     }
 
     public HttpResponse setStatus(HttpStatus status) {
+        this.status = status;
         this.statusCode = status.getCode();
         this.statusMsg = status.getMessage();
         return this;
     }
 
+    // 같은 이름(대소문자 무시)의 헤더가 있으면 바꾼다
     public HttpResponse addHeader(String key, String value) {
-        this.headers.put(key, value);
+        this.headers.set(key, value);
+        return this;
+    }
+
+    // 같은 이름의 헤더가 있어도 한 줄 더 보낸다. Set-Cookie 처럼 합칠 수 없는 헤더에 쓴다
+    public HttpResponse appendHeader(String key, String value) {
+        this.headers.add(key, value);
         return this;
     }
 
@@ -41,28 +93,189 @@ public class HttpResponse {
     }
 
     public HttpResponse setBody(byte[] body) {
+        closeFile();
         this.body = body;
-        this.headers.put("Content-Length", String.valueOf(body.length));
+        this.headers.set("Content-Length", String.valueOf(body.length));
         return this;
     }
 
+    // 파일을 바디로 보낸다. 파일은 send() 할 때 열고 보낸 뒤 닫는다
+    public HttpResponse setBody(Path file) throws IOException {
+        long size = Files.size(file);
+        closeFile();
+        this.body = null;
+        this.file = file;
+        this.headers.set("Content-Length", String.valueOf(size));
+        return this;
+    }
+
+    // 채널의 현재 위치부터 끝까지 보낸다. 보낸 뒤 채널을 닫는다
+    public HttpResponse setBody(FileChannel fileChannel) throws IOException {
+        long size = fileChannel.size() - fileChannel.position();
+        closeFile();
+        this.body = null;
+        this.fileChannel = fileChannel;
+        this.headers.set("Content-Length", String.valueOf(size));
+        return this;
+    }
+
+    // 헤더를 바로 보내고 바디를 조금씩 쓸 스트림을 돌려준다. Content-Length 를 정해 두지 않았으면
+    // Transfer-Encoding: chunked 로 보내며, flush() 할 때마다 쓴 만큼 클라이언트로 나간다.
+    // HEAD 요청이면 GET 과 같은 헤더만 보내고 쓴 바이트는 버린다.
+    // 핸들러가 닫지 않아도 핸들러가 끝나면 서버가 닫는다
+    public OutputStream getBodyStream() throws IOException {
+        if (bodyStream != null) {
+            return bodyStream;
+        }
+        if (committed) {
+            throw new IllegalStateException("Response already sent");
+        }
+        body = null;
+        closeFile();
+        String length = headers.get("Content-Length");
+        if (length != null) {
+            writeHead(commit(false));
+            bodyStream = ResponseBodyStream.fixed(outputStream, Long.parseLong(length));
+        } else if (chunkedAllowed) {
+            headers.set("Transfer-Encoding", "chunked");
+            writeHead(commit(false));
+            bodyStream = ResponseBodyStream.chunked(outputStream);
+        } else {
+            // 길이를 알릴 방법이 없으니 연결을 닫아서 끝을 알린다
+            writeHead(commit(true));
+            bodyStream = ResponseBodyStream.fixed(outputStream, -1);
+        }
+        if (omitBody) {
+            // 청크를 보내면 keep-alive 연결에서 다음 응답의 앞부분으로 읽힌다
+            bodyStream = ResponseBodyStream.discarding(outputStream);
+        }
+        return bodyStream;
+    }
+
+    public boolean isCommitted() {
+        return committed;
+    }
+
     public void send() throws IOException {
-        String statusLine = String.format("%s %d %s\r%n", version, statusCode, statusMsg);
-        BufferedOutputStream os = new BufferedOutputStream(outputStream);
-        os.write(statusLine.getBytes());
+        if (bodyStream != null) {
+            bodyStream.close();
+            return;
+        }
+        // keep-alive 연결에서 클라이언트가 응답 끝을 알 수 있도록 바디가 없어도 길이를 보낸다 (204, 304 는 바디가 없다)
+        if (body == null && !hasFileBody()
+                && statusCode != HttpStatus.NO_CONTENT.getCode() && statusCode != HttpStatus.NOT_MODIFIED.getCode()) {
+            headers.setIfAbsent("Content-Length", "0");
+        }
+        HeaderEncoder head = commit(false);
+        if (omitBody) {
+            closeFile();
+            writeHead(head);
+            outputStream.flush();
+            return;
+        }
+        if (outputStream instanceof GatheringOutput gathering) {
+            gathering.write(head.buffer(), head.length(), body);
+        } else {
+            outputStream.write(head.buffer(), 0, head.length());
+            if (body != null) {
+                outputStream.write(body);
+            }
+        }
+        outputStream.flush();
 
-        for (Map.Entry<String, String> header : headers.entrySet()) {
-            String headerLine = header.getKey() + ": " + header.getValue() + " \r\n";
-            os.write(headerLine.getBytes());
+        if (hasFileBody() && !deferFileBody) {
+            try (FileChannel source = fileBody()) {
+                WritableByteChannel target = channel != null ? channel : Channels.newChannel(outputStream);
+                long position = source.position();
+                long end = source.size();
+                while (position < end) {
+                    position += source.transferTo(position, end - position, target);
+                }
+            }
         }
+    }
+
+    boolean hasFileBody() {
+        return file != null || fileChannel != null;
+    }
+
+    // 보낼 파일 채널을 연다. 닫는 것은 호출한 쪽의 몫이다
+    FileChannel fileBody() throws IOException {
+        if (fileChannel == null && file != null) {
+            fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+        }
+        FileChannel opened = fileChannel;
+        fileChannel = null;
+        file = null;
+        return opened;
+    }
+
+    private void closeFile() {
+        file = null;
+        if (fileChannel != null) {
+            try {
+                fileChannel.close();
+            } catch (IOException ignored) {
+                // 읽기만 했으므로 무시한다
+            }
+            fileChannel = null;
+        }
+    }
+
+    void setChannel(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    void deferFileBody() {
+        this.deferFileBody = true;
+    }
 
-        os.write("\r\n".getBytes());
+    // 상태 줄과 헤더를 스레드별 버퍼에 인코딩한다. 버퍼는 다음 응답에서 다시 쓰므로 바로 보내야 한다
+    private HeaderEncoder commit(boolean close) {
+        if (beforeCommit != null) {
+            beforeCommit.accept(this);
+        }
+        if (close) {
+            headers.set("Connection", "close");
+        }
+        committed = true;
 
-        if (body != null) {
-            os.write(body);
+        HeaderEncoder head = HeaderEncoder.get();
+        if (status != null && "HTTP/1.1".equals(version)) {
+            head.write(status.statusLine());
+        } else {
+            head.writeLine(version + " " + statusCode + " " + statusMsg);
+        }
+        if (!headers.contains("Date")) {
+            head.write(HttpDate.headerLine());
+        }
+        for (int i = 0; i < headers.size(); i++) {
+            int id = headers.id(i);
+            if (id != -1) {
+                // 자주 쓰는 이름은 미리 인코딩한 "Name: " 을 그대로 쓴다
+                head.writeHeader(HeaderNames.encoded(id), headers.value(i));
+            } else {
+                head.writeHeader(headers.name(i), headers.value(i));
+            }
         }
+        head.write(CRLF);
+        return head;
+    }
+
+    private void writeHead(HeaderEncoder head) throws IOException {
+        outputStream.write(head.buffer(), 0, head.length());
+    }
 
-        os.flush();
+    void beforeCommit(Consumer<HttpResponse> beforeCommit) {
+        this.beforeCommit = beforeCommit;
+    }
+
+    void setChunkedAllowed(boolean chunkedAllowed) {
+        this.chunkedAllowed = chunkedAllowed;
+    }
+
+    void setOmitBody(boolean omitBody) {
+        this.omitBody = omitBody;
     }
 
     public byte[] getBody() {
@@ -73,15 +286,21 @@ public class HttpResponse {
         return statusCode;
     }
 
+    // 같은 이름이 여러 번 있으면 첫 값
     public String getHeader(String key) {
         return headers.get(key);
     }
 
+    public List<String> getHeaders(String key) {
+        return headers.getAll(key);
+    }
+
     protected OutputStream getOutputStream() {
         return outputStream;
     }
 
+    // 이름마다 값 하나로 모은 복사본. 값이 여러 개면 쉼표로 잇는다
     protected Map<String, String> getHeaders() {
-        return headers;
+        return headers.toMap();
     }
 }
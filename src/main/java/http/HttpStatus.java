@@ -1,20 +1,32 @@
 package http;
 
+import java.nio.charset.StandardCharsets;
+
 public enum HttpStatus {
     OK(200, "OK"),
     NOT_FOUND(404, "Not Found"),
     CREATED(201, "Created"),
     REDIRECT_FOUND(302, "Found"),
+    NOT_MODIFIED(304, "Not Modified"),
     BAD_REQUEST(400, "Bad Request"),
     UNAUTHORIZED(401, "Unauthorized"),
+    METHOD_NOT_ALLOWED(405, "Method Not Allowed"),
+    REQUEST_TIMEOUT(408, "Request Timeout"),
+    PAYLOAD_TOO_LARGE(413, "Payload Too Large"),
+    INTERNAL_SERVER_ERROR(500, "Internal Server Error"),
+    SERVICE_UNAVAILABLE(503, "Service Unavailable"),
+    GATEWAY_TIMEOUT(504, "Gateway Timeout"),
     NO_CONTENT(204, "No Content");
 
     private final int code;
     private final String message;
+    // 응답마다 만들지 않도록 미리 인코딩한 HTTP/1.1 상태 줄
+    private final byte[] statusLine;
 
     HttpStatus(int code, String message) {
         this.code = code;
         this.message = message;
+        this.statusLine = ("HTTP/1.1 " + code + " " + message + "\r\n").getBytes(StandardCharsets.US_ASCII);
     }
 
     public int getCode() {
@@ -24,4 +36,8 @@ public enum HttpStatus {
     public String getMessage() {
         return message;
     }
+
+    byte[] statusLine() {
+        return statusLine;
+    }
 }
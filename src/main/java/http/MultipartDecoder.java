@@ -0,0 +1,330 @@
+package http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+// multipart/form-data 바디를 들어오는 대로 처리한다. 경계는 Boyer-Moore-Horspool 로 찾고,
+// 고정 크기 창만 메모리에 두므로 파일 크기와 상관없이 힙 사용량이 일정하다.
+// 파일 파트는 fileSizeThreshold 까지는 메모리에 두고, 넘으면 FileChannel 로 임시 파일에 쓴다.
+// 메모리에 두는 필드와 작은 파일은 요청 하나에 합쳐 MAX_MEMORY_SIZE, 파트 수는 MAX_PARTS 를 넘으면 413 이다.
+class MultipartDecoder {
+    private static final int WINDOW_SIZE = 16 * 1024;
+    private static final int MAX_PART_HEADER_SIZE = 8 * 1024;
+    private static final int MAX_FIELD_SIZE = 1024 * 1024;
+    private static final int MAX_MEMORY_SIZE = 4 * 1024 * 1024;
+    private static final int MAX_PARTS = 1000;
+
+    private enum State {
+        PREAMBLE, DELIMITER, HEADERS, DATA, END
+    }
+
+    // "\r\n--boundary". 바디 앞에 CRLF 가 있다고 보고 첫 경계도 같은 방식으로 찾는다
+    private final byte[] delimiter;
+    private final int[] skip = new int[256];
+    private final int fileSizeThreshold;
+    private final Path tempDir;
+    private final Map<String, Object> result = new HashMap<>();
+
+    private final byte[] window;
+    private int start;
+    private int end;
+    private State state = State.PREAMBLE;
+
+    private String name;
+    private String filename;
+    private ByteArrayOutputStream memory;
+    private Path spoolFile;
+    private FileChannel spool;
+    private long partSize;
+    // 끝난 파트 중 메모리에 둔 바이트 수
+    private long memorySize;
+    private int parts;
+
+    MultipartDecoder(String boundary, int fileSizeThreshold, Path tempDir) {
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.US_ASCII);
+        this.fileSizeThreshold = fileSizeThreshold;
+        this.tempDir = tempDir;
+        this.window = new byte[Math.max(WINDOW_SIZE, delimiter.length * 4)];
+
+        // 창 끝 바이트를 기준으로 건너뛸 거리
+        for (int i = 0; i < skip.length; i++) {
+            skip[i] = delimiter.length;
+        }
+        for (int i = 0; i < delimiter.length - 1; i++) {
+            skip[delimiter[i] & 0xff] = delimiter.length - 1 - i;
+        }
+
+        window[0] = '\r';
+        window[1] = '\n';
+        end = 2;
+    }
+
+    void feed(byte[] data, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (end == window.length) {
+                compact();
+                if (end == window.length) {
+                    throw new IOException("Invalid multipart body");
+                }
+            }
+            int n = Math.min(length, window.length - end);
+            System.arraycopy(data, offset, window, end, n);
+            end += n;
+            offset += n;
+            length -= n;
+            process();
+        }
+    }
+
+    // 바디를 모두 넣은 뒤 호출한다. 닫는 경계가 없었다면 잘못된 요청이다
+    Map<String, Object> finish() throws IOException {
+        if (state != State.END) {
+            discard();
+            throw new IOException("Incomplete multipart body");
+        }
+        return result;
+    }
+
+    // 처리 중 오류가 나면 이미 만든 임시 파일을 지운다
+    void discard() {
+        closeSpool();
+        deleteSpool();
+        for (Object value : result.values()) {
+            if (value instanceof File file) {
+                file.delete();
+            }
+        }
+    }
+
+    private void compact() {
+        System.arraycopy(window, start, window, 0, end - start);
+        end -= start;
+        start = 0;
+    }
+
+    private void process() throws IOException {
+        while (true) {
+            switch (state) {
+                case PREAMBLE -> {
+                    int found = indexOfDelimiter();
+                    if (found == -1) {
+                        start = Math.max(start, end - delimiter.length + 1);
+                        return;
+                    }
+                    start = found + delimiter.length;
+                    state = State.DELIMITER;
+                }
+                case DELIMITER -> {
+                    // 경계 뒤에는 "--"(끝) 또는 CRLF 가 온다
+                    if (end - start < 2) {
+                        return;
+                    }
+                    if (window[start] == '-' && window[start + 1] == '-') {
+                        start = end;
+                        state = State.END;
+                        return;
+                    }
+                    int lineEnd = indexOf((byte) '\n', start, end);
+                    if (lineEnd == -1) {
+                        return;
+                    }
+                    start = lineEnd + 1;
+                    name = null;
+                    filename = null;
+                    state = State.HEADERS;
+                }
+                case HEADERS -> {
+                    int lineEnd = indexOf((byte) '\n', start, end);
+                    if (lineEnd == -1) {
+                        if (end - start > MAX_PART_HEADER_SIZE) {
+                            throw new IOException("Multipart header too large");
+                        }
+                        return;
+                    }
+                    int lineStart = start;
+                    start = lineEnd + 1;
+                    if (lineEnd > lineStart && window[lineEnd - 1] == '\r') {
+                        lineEnd--;
+                    }
+                    if (lineEnd > lineStart) {
+                        parsePartHeader(new String(window, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8));
+                    } else {
+                        beginPart();
+                        state = State.DATA;
+                    }
+                }
+                case DATA -> {
+                    int found = indexOfDelimiter();
+                    if (found == -1) {
+                        // 경계가 창 끝에 걸쳐 있을 수 있으니 경계 길이 - 1 만큼은 남긴다
+                        int safeEnd = end - delimiter.length + 1;
+                        if (safeEnd > start) {
+                            write(start, safeEnd);
+                            start = safeEnd;
+                        }
+                        return;
+                    }
+                    write(start, found);
+                    endPart();
+                    start = found + delimiter.length;
+                    state = State.DELIMITER;
+                }
+                case END -> {
+                    // 닫는 경계 뒤(epilogue)는 버린다
+                    start = end;
+                    return;
+                }
+            }
+        }
+    }
+
+    private int indexOfDelimiter() {
+        int last = delimiter.length - 1;
+        for (int i = start; i + last < end; i += skip[window[i + last] & 0xff]) {
+            int j = last;
+            while (j >= 0 && window[i + j] == delimiter[j]) {
+                j--;
+            }
+            if (j < 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOf(byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (window[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void parsePartHeader(String line) {
+        int colon = line.indexOf(':');
+        if (colon == -1 || !"Content-Disposition".equalsIgnoreCase(line.substring(0, colon).trim())) {
+            return;
+        }
+        for (String param : line.substring(colon + 1).split(";")) {
+            int eq = param.indexOf('=');
+            if (eq == -1) {
+                continue;
+            }
+            String key = param.substring(0, eq).trim();
+            String value = unquote(param.substring(eq + 1).trim());
+            if ("name".equalsIgnoreCase(key)) {
+                name = value;
+            } else if ("filename".equalsIgnoreCase(key)) {
+                filename = value;
+            }
+        }
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    private void beginPart() {
+        if (++parts > MAX_PARTS) {
+            throw new HttpException(HttpStatus.PAYLOAD_TOO_LARGE);
+        }
+        memory = new ByteArrayOutputStream();
+        partSize = 0;
+    }
+
+    private void write(int from, int to) throws IOException {
+        int length = to - from;
+        if (length == 0 || name == null) {
+            return;
+        }
+        partSize += length;
+
+        if (spool == null && filename != null && partSize > fileSizeThreshold) {
+            startSpool();
+        }
+        if (spool != null) {
+            ByteBuffer src = ByteBuffer.wrap(window, from, length);
+            while (src.hasRemaining()) {
+                spool.write(src);
+            }
+            return;
+        }
+        if (filename == null && partSize > MAX_FIELD_SIZE) {
+            throw new IOException("Multipart field too large: " + name);
+        }
+        if (memorySize + partSize > MAX_MEMORY_SIZE) {
+            throw new HttpException(HttpStatus.PAYLOAD_TOO_LARGE);
+        }
+        memory.write(window, from, length);
+    }
+
+    // 한도를 넘으면 지금까지 모은 바이트부터 임시 파일로 옮긴다
+    private void startSpool() throws IOException {
+        spoolFile = Files.createTempFile(tempDir, "jin-upload-", ".tmp");
+        spool = FileChannel.open(spoolFile, StandardOpenOption.WRITE);
+        ByteBuffer buffered = ByteBuffer.wrap(memory.toByteArray());
+        while (buffered.hasRemaining()) {
+            spool.write(buffered);
+        }
+        memory = null;
+    }
+
+    private void endPart() throws IOException {
+        if (name == null) {
+            return;
+        }
+        Object previous;
+        if (filename == null) {
+            memorySize += partSize;
+            previous = result.put(name, memory.toString(StandardCharsets.UTF_8));
+        } else if (spool != null) {
+            closeSpool();
+            previous = result.put(name, new File(filename, spoolFile, partSize));
+            spoolFile = null;
+        } else {
+            memorySize += partSize;
+            previous = result.put(name, new File(filename, memory.toByteArray(), tempDir));
+        }
+        memory = null;
+        // 같은 이름의 파트는 마지막 것만 남는다. 밀려난 파일은 release() 가 찾지 못하니 여기서 지운다
+        if (previous instanceof File file) {
+            file.delete();
+        }
+    }
+
+    private void closeSpool() {
+        if (spool == null) {
+            return;
+        }
+        try {
+            spool.close();
+        } catch (IOException ignored) {
+            // 지울 파일이라 무시한다
+        }
+        spool = null;
+    }
+
+    private void deleteSpool() {
+        if (spoolFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(spoolFile);
+        } catch (IOException ignored) {
+            // 임시 디렉터리에 남아도 동작에는 문제가 없다
+        }
+        spoolFile = null;
+    }
+}
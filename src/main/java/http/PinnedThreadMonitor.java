@@ -0,0 +1,52 @@
+package http;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+// JFR 의 jdk.VirtualThreadPinned 이벤트 중 서버의 가상 스레드(이름이 threadPrefix 로 시작)에서 발생한 것만 센다.
+// JFR 은 스택 트레이스를 64 프레임에서 자르므로 스택에서 handleRequest 를 찾지 않고 스레드 이름으로 가린다
+class PinnedThreadMonitor implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(PinnedThreadMonitor.class);
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private final String threadPrefix;
+    private final LongAdder pinnedCount = new LongAdder();
+    private final RecordingStream recording;
+
+    PinnedThreadMonitor(String threadPrefix) {
+        this.threadPrefix = threadPrefix;
+        recording = new RecordingStream();
+        recording.onEvent(PINNED_EVENT, this::onPinned);
+    }
+
+    // threshold 보다 짧게 고정된 것은 JFR 이 기록하지 않는다
+    void start(Duration threshold) {
+        recording.enable(PINNED_EVENT).withThreshold(threshold);
+        recording.startAsync();
+    }
+
+    long getPinnedCount() {
+        return pinnedCount.sum();
+    }
+
+    private void onPinned(RecordedEvent event) {
+        RecordedThread thread = event.getThread();
+        String name = thread == null ? null : thread.getJavaName();
+        if (name == null || !name.startsWith(threadPrefix)) {
+            return;
+        }
+        pinnedCount.increment();
+        logger.debug("Virtual thread {} pinned for {} ms", name, event.getDuration().toMillis());
+    }
+
+    @Override
+    public void close() {
+        recording.close();
+    }
+}
@@ -0,0 +1,133 @@
+package http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+
+// 연결 하나의 출력 버퍼. 응답을 다 쓴 뒤의 flush 는 미뤄 두었다가 소켓에서 다음 요청을 읽어야 할 때 보낸다.
+// 파이프라이닝으로 다음 요청이 이미 파서 버퍼에 있으면 여러 응답이 한 번의 write 로 나간다
+class PipelinedOutputStream extends OutputStream implements GatheringOutput {
+    static final int BUFFER_SIZE = 16 * 1024;
+
+    private final OutputStream out;
+    // 소켓 채널. 없으면 버퍼를 거쳐 스트림으로 쓴다
+    private final GatheringByteChannel channel;
+    // 있으면 버퍼를 여기서 빌리고 닫을 때 돌려준다
+    private final BufferPool pool;
+    private byte[] buf;
+    private int count;
+    private boolean deferFlush;
+
+    PipelinedOutputStream(OutputStream out, GatheringByteChannel channel) {
+        this(out, channel, null);
+    }
+
+    PipelinedOutputStream(OutputStream out, GatheringByteChannel channel, BufferPool pool) {
+        this.out = out;
+        this.channel = channel;
+        this.pool = pool;
+        this.buf = pool == null ? new byte[BUFFER_SIZE] : pool.acquire();
+    }
+
+    void deferFlush(boolean deferFlush) {
+        this.deferFlush = deferFlush;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buf.length) {
+            flushBuffer();
+        }
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        // 버퍼보다 큰 쓰기는 복사하지 않고 바로 보낸다
+        if (len >= buf.length) {
+            flushBuffer();
+            out.write(b, off, len);
+            return;
+        }
+        if (len > buf.length - count) {
+            flushBuffer();
+        }
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    // 버퍼에 다 들어가면 모아 두고, 아니면 밀린 응답과 헤더, 바디를 gathering write 한 번으로 보낸다
+    @Override
+    public void write(byte[] head, int headLength, byte[] body) throws IOException {
+        int bodyLength = body == null ? 0 : body.length;
+        if (channel == null || headLength + bodyLength <= buf.length - count) {
+            write(head, 0, headLength);
+            if (body != null) {
+                write(body, 0, bodyLength);
+            }
+            return;
+        }
+        ByteBuffer[] buffers = {
+                ByteBuffer.wrap(buf, 0, count),
+                ByteBuffer.wrap(head, 0, headLength),
+                body == null ? ByteBuffer.allocate(0) : ByteBuffer.wrap(body)
+        };
+        long remaining = count + headLength + bodyLength;
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+        count = 0;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (!deferFlush) {
+            flushBuffer();
+            out.flush();
+        }
+    }
+
+    // 밀린 응답을 모두 보내고 버퍼를 풀에 돌려준다
+    @Override
+    public void close() throws IOException {
+        if (buf == null) {
+            return;
+        }
+        try {
+            flushBuffer();
+        } finally {
+            if (pool != null) {
+                pool.release(buf);
+            }
+            buf = null;
+            out.close();
+        }
+    }
+
+    // 소켓에서 읽기 전에 밀린 응답을 보낸다. 클라이언트가 응답을 기다리는 동안 서버도 요청을 기다리며 멈추지 않도록 한다
+    InputStream flushBeforeRead(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                flushBuffer();
+                return super.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                flushBuffer();
+                return super.read(b, off, len);
+            }
+        };
+    }
+
+    private void flushBuffer() throws IOException {
+        if (count > 0) {
+            out.write(buf, 0, count);
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+// 소켓에서 요청 바디를 Content-Length 나 chunked 경계까지만 읽어 주는 스트림.
+// 끝까지 읽으면 파서가 같은 연결의 다음 요청을 받을 수 있게 된다
+class RequestBodyStream extends InputStream {
+    private final HttpRequestParser parser;
+    private final InputStream in;
+    private boolean done;
+
+    RequestBodyStream(HttpRequestParser parser, InputStream in) {
+        this.parser = parser;
+        this.in = in;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        int n = read(b, 0, 1);
+        return n == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (done) {
+            return -1;
+        }
+        int n = parser.readBody(in, b, off, len);
+        if (n == -1) {
+            done = true;
+            parser.endBody();
+        }
+        return n;
+    }
+
+    // 연결은 서버가 관리하므로 소켓을 닫지 않는다
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,198 @@
+package http;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+// 요청 줄과 헤더의 원본 바이트. 파서는 헤더마다 이름과 값의 위치, 자주 쓰는 이름이면 HeaderNames 번호만 적어 두고,
+// 값은 핸들러가 처음 찾을 때 문자열로 만들어 캐시한다. 풀링할 때는 배열을 다음 요청에 다시 쓴다
+final class RequestHead {
+    private static final int INITIAL_HEADERS = 16;
+
+    private byte[] bytes = new byte[0];
+    private int length;
+    // 헤더마다 이름 시작, 이름 끝, 값 시작, 값 끝
+    private int[] offsets = new int[INITIAL_HEADERS * 4];
+    // 헤더마다 HeaderNames 번호. 표에 없는 이름은 -1
+    private int[] ids = new int[INITIAL_HEADERS];
+    private int count;
+    private String[] values = new String[INITIAL_HEADERS];
+    // 요청 줄의 '?' 뒤 쿼리 문자열 위치. 없으면 queryStart 가 -1
+    private int queryStart = -1;
+    private int queryEnd;
+
+    void clear() {
+        length = 0;
+        Arrays.fill(values, 0, count, null);
+        count = 0;
+        queryStart = -1;
+    }
+
+    void addHeader(int id, int nameStart, int nameEnd, int valueStart, int valueEnd) {
+        if (count * 4 == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            ids = Arrays.copyOf(ids, ids.length * 2);
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        ids[count] = id;
+        int i = count * 4;
+        offsets[i] = nameStart;
+        offsets[i + 1] = nameEnd;
+        offsets[i + 2] = valueStart;
+        offsets[i + 3] = valueEnd;
+        count++;
+    }
+
+    void setQuery(int start, int end) {
+        queryStart = start;
+        queryEnd = end;
+    }
+
+    // 파싱을 마친 헤더 바이트를 옮겨 둔다. 위치는 src[from] 을 0 으로 본 값이다
+    void copyFrom(byte[] src, int from, int to) {
+        length = to - from;
+        if (bytes.length < length) {
+            bytes = new byte[length];
+        }
+        System.arraycopy(src, from, bytes, 0, length);
+    }
+
+    // 이름이 같은(대소문자 무시) 첫 헤더의 값. 없으면 null
+    String header(String name) {
+        int id = HeaderNames.lookup(name);
+        for (int i = 0; i < count; i++) {
+            if (nameEquals(i, id, name)) {
+                return value(i);
+            }
+        }
+        return null;
+    }
+
+    // 이름이 같은 헤더의 값을 온 순서대로 모두
+    List<String> headers(String name) {
+        int id = HeaderNames.lookup(name);
+        List<String> all = new ArrayList<>(1);
+        for (int i = 0; i < count; i++) {
+            if (nameEquals(i, id, name)) {
+                all.add(value(i));
+            }
+        }
+        return all;
+    }
+
+    int size() {
+        return count;
+    }
+
+    // 자주 쓰는 이름은 정해진 표기의 문자열을 돌려준다
+    String name(int index) {
+        if (ids[index] != -1) {
+            return HeaderNames.name(ids[index]);
+        }
+        int i = index * 4;
+        return new String(bytes, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+    }
+
+    String value(int index) {
+        String value = values[index];
+        if (value == null) {
+            int i = index * 4;
+            value = new String(bytes, offsets[i + 2], offsets[i + 3] - offsets[i + 2], StandardCharsets.UTF_8);
+            values[index] = value;
+        }
+        return value;
+    }
+
+    private boolean nameEquals(int index, int id, String name) {
+        // 표에 있는 이름은 번호만 비교한다
+        if (id != -1) {
+            return ids[index] == id;
+        }
+        if (ids[index] != -1) {
+            return false;
+        }
+        int i = index * 4;
+        int start = offsets[i];
+        if (offsets[i + 1] - start != name.length()) {
+            return false;
+        }
+        for (int j = 0; j < name.length(); j++) {
+            if (!equalsIgnoreCase(bytes[start + j], name.charAt(j))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean equalsIgnoreCase(byte b, char c) {
+        if (b == c) {
+            return true;
+        }
+        // ASCII 글자만 대소문자를 바꿔 비교한다
+        int lower = b | 0x20;
+        return lower >= 'a' && lower <= 'z' && lower == (c | 0x20);
+    }
+
+    // 쿼리 문자열을 params 에 더한다. 같은 이름이 여러 번 오면 값을 List 로 모은다
+    void parseQuery(Map<String, Object> params) {
+        if (queryStart != -1) {
+            parseParams(bytes, queryStart, queryEnd, params);
+        }
+    }
+
+    // key=value&key=value 를 읽는다. 디코딩할 문자가 없으면 바이트에서 바로 문자열을 만든다
+    static void parseParams(byte[] src, int from, int to, Map<String, Object> params) {
+        int start = from;
+        while (start < to) {
+            int end = indexOf(src, (byte) '&', start, to);
+            if (end > start) {
+                int eq = indexOf(src, (byte) '=', start, end);
+                if (eq != end) {
+                    addParam(params, decode(src, start, eq), decode(src, eq + 1, end));
+                } else {
+                    addParam(params, decode(src, start, end), "");
+                }
+            }
+            start = end + 1;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void addParam(Map<String, Object> params, String name, String value) {
+        Object previous = params.putIfAbsent(name, value);
+        if (previous == null) {
+            return;
+        }
+        List<String> list;
+        if (previous instanceof List) {
+            list = (List<String>) previous;
+        } else {
+            list = new ArrayList<>(2);
+            list.add((String) previous);
+            params.put(name, list);
+        }
+        list.add(value);
+    }
+
+    private static String decode(byte[] src, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (src[i] == '%' || src[i] == '+') {
+                return URLDecoder.decode(new String(src, start, end - start, StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+            }
+        }
+        return new String(src, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    // 없으면 to
+    private static int indexOf(byte[] src, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (src[i] == b) {
+                return i;
+            }
+        }
+        return to;
+    }
+}
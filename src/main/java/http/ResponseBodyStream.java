@@ -0,0 +1,121 @@
+package http;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+// 헤더를 보낸 뒤 응답 바디를 내보내는 스트림. chunked 면 버퍼가 찰 때나 flush() 때마다 청크 하나를 보내고,
+// 아니면 Content-Length 를 넘지 않는지만 확인하며 그대로 쓴다. close() 는 응답을 끝낼 뿐 소켓은 닫지 않는다
+class ResponseBodyStream extends OutputStream {
+    private static final int CHUNK_SIZE = 8192;
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream out;
+    private final boolean chunked;
+    // 고정 길이일 때 남은 바이트 수. 길이를 모르면 -1
+    private long remaining;
+    private final byte[] buffer;
+    private int count;
+    private boolean closed;
+
+    private ResponseBodyStream(OutputStream out, boolean chunked, long length) {
+        this.out = out;
+        this.chunked = chunked;
+        this.remaining = length;
+        this.buffer = chunked ? new byte[CHUNK_SIZE] : null;
+    }
+
+    static ResponseBodyStream chunked(OutputStream out) {
+        return new ResponseBodyStream(out, true, -1);
+    }
+
+    // length 가 -1 이면 연결을 닫아서 바디 끝을 알린다
+    static ResponseBodyStream fixed(OutputStream out, long length) {
+        return new ResponseBodyStream(out, false, length);
+    }
+
+    // HEAD 응답. 헤더는 이미 보냈고 바디로 쓰는 바이트는 버린다
+    static ResponseBodyStream discarding(OutputStream out) {
+        return fixed(new FilterOutputStream(out) {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }, -1);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Response already finished");
+        }
+        if (!chunked) {
+            if (remaining != -1) {
+                if (len > remaining) {
+                    throw new IOException("Response body exceeds Content-Length");
+                }
+                remaining -= len;
+            }
+            out.write(b, off, len);
+            return;
+        }
+        // 버퍼보다 큰 쓰기는 복사하지 않고 바로 청크로 보낸다
+        if (len >= buffer.length) {
+            writeBuffer();
+            writeChunk(b, off, len);
+            return;
+        }
+        if (len > buffer.length - count) {
+            writeBuffer();
+        }
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (chunked) {
+            writeBuffer();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        if (chunked) {
+            writeBuffer();
+            out.write(LAST_CHUNK);
+        } else if (remaining > 0) {
+            throw new IOException("Response body shorter than Content-Length");
+        }
+        closed = true;
+        out.flush();
+    }
+
+    private void writeBuffer() throws IOException {
+        if (count > 0) {
+            writeChunk(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    private void writeChunk(byte[] b, int off, int len) throws IOException {
+        out.write(Integer.toHexString(len).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+        out.write(b, off, len);
+        out.write(CRLF);
+    }
+}
@@ -1,23 +1,121 @@
 package http;
 
+import http.handler.AsyncHandler;
 import http.handler.Handler;
+import http.handler.Middleware;
+import http.metrics.Metrics;
+import http.handler.StaticFileHandler;
+import http.router.RouteMatch;
 import http.router.Router;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketException;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 public class Server {
     private static final Logger logger = LoggerFactory.getLogger(Server.class);
+    private static final int DEFAULT_IDLE_TIMEOUT = 5000;
+    private static final int DEFAULT_HEADER_TIMEOUT = 10_000;
+    private static final int DEFAULT_BODY_TIMEOUT = 30_000;
+    private static final int DEFAULT_WRITE_TIMEOUT = 30_000;
+    private static final int DEFAULT_MAX_REQUESTS_PER_CONNECTION = 100;
+    private static final long DEFAULT_STATIC_CACHE_SIZE = 32 * 1024 * 1024;
+    private static final int DEFAULT_ASYNC_TIMEOUT = 30_000;
+    private static final int DEFAULT_MAX_QUEUE_SIZE = 1024;
+    private static final int DEFAULT_MAX_QUEUE_TIME = 1000;
+    private static final int DEFAULT_PINNED_THRESHOLD = 20;
+    private static final int DEFAULT_SHUTDOWN_TIMEOUT = 10_000;
+    // 과부하로 거절한 요청에 다시 시도해 보라고 알리는 시간(초)
+    private static final String RETRY_AFTER = "1";
+    private static final byte[] SHED_BODY = (HttpStatus.SERVICE_UNAVAILABLE.getCode() + " "
+            + HttpStatus.SERVICE_UNAVAILABLE.getMessage()).getBytes();
+    // 동기 핸들러는 dispatch 가 끝나면 응답도 정해져 있다
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+    // 풀에 쉬게 둘 버퍼 수. 이보다 많은 연결이 끝나면 남는 버퍼는 GC 에 맡긴다
+    private static final int MAX_POOLED_BUFFERS = 1024;
+    // stop() 이 accept 루프가 끝나기를 기다리는 최대 시간(ms)
+    private static final int ACCEPTOR_EXIT_TIMEOUT = 1000;
     private final int port;
     private final int threadPoolSize;
+    private final int eventLoopCount;
     private final ExecutorService threadPool;
+    private final Semaphore concurrencyLimit;
     private final Router router;
-    private ServerSocket serverSocket;
+    private volatile ServerSocket serverSocket;
+    // 블로킹 서버의 accept 루프가 끝나면 내려간다
+    private final CountDownLatch acceptorExited = new CountDownLatch(1);
+    private volatile EventLoop[] eventLoops;
+    private PinnedThreadMonitor pinnedThreadMonitor;
+    // 다음 요청의 첫 바이트를 기다리는 keep-alive 연결. 받다 만 요청이 없으므로 stop() 시 바로 닫고,
+    // 워커를 기다리는 연결이 있으면 놓아 준다
+    private final Set<SocketTimeout> idleConnections = ConcurrentHashMap.newKeySet();
+    // 열려 있는 연결. 멈출 때 시간 안에 끝나지 않은 연결을 닫는다
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    // 요청을 받을 수 있는 상태. 멈추기 시작하면 가장 먼저 false 가 된다
+    private volatile boolean ready;
+    private int readinessDelay;
+    private int shutdownTimeout = DEFAULT_SHUTDOWN_TIMEOUT;
+    // 파일 감시 스레드를 멈추도록 stop() 시 닫는다
+    private final List<StaticFileHandler> staticFileHandlers = new CopyOnWriteArrayList<>();
+    private int idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private int headerTimeout = DEFAULT_HEADER_TIMEOUT;
+    private int bodyTimeout = DEFAULT_BODY_TIMEOUT;
+    private int writeTimeout = DEFAULT_WRITE_TIMEOUT;
+    // 블로킹 서버의 연결 타임아웃과 워커 큐 검사. nioServer 는 연결 타임아웃용 휠을 이벤트 루프마다 따로 둔다
+    private TimerWheel timeouts;
+    private TimerWheel.Timeout queueCheck;
+    // 워커를 TICK 넘게 기다린 작업이 있다. 그동안은 keep-alive 연결이 쉬면서 워커를 잡지 않는다
+    private volatile boolean starved;
+    private int maxRequestsPerConnection = DEFAULT_MAX_REQUESTS_PER_CONNECTION;
+    private int asyncTimeout = DEFAULT_ASYNC_TIMEOUT;
+    // 블로킹 서버에 비동기 라우트를 처음 걸 때 한 번만 알린다
+    private boolean asyncRouteWarned;
+    private int maxQueueSize = DEFAULT_MAX_QUEUE_SIZE;
+    private int maxQueueTime = DEFAULT_MAX_QUEUE_TIME;
+    private int pinnedThreshold = DEFAULT_PINNED_THRESHOLD;
+    // 워커(가상 스레드 서버는 동시 처리 한도의 자리)를 기다리는 작업 수
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder shedRequests = new LongAdder();
+    private int fileSizeThreshold = HttpRequestParser.DEFAULT_FILE_SIZE_THRESHOLD;
+    private Path uploadDir = HttpRequestParser.DEFAULT_UPLOAD_DIR;
+    private Compression compression;
+    // 풀링을 켜면 연결의 읽기/쓰기 버퍼를 풀에서 빌린다. 꺼져 있으면 null
+    private BufferPool readBuffers;
+    private BufferPool writeBuffers;
+    // 켜지 않으면 null 이고 요청마다 시간을 재지 않는다
+    private volatile Metrics metrics;
+    private final AtomicInteger openConnections = new AtomicInteger();
     String notFoundHtml = """
             <!DOCTYPE html>
             <html lang="en">
@@ -60,10 +158,16 @@ public class Server {
             </html>
             """;
 
-    private Server(int port, int threadPoolSize) {
+    private Server(int port, int threadPoolSize, int eventLoopCount) {
+        this(port, threadPoolSize, eventLoopCount, Executors.newFixedThreadPool(threadPoolSize), null);
+    }
+
+    private Server(int port, int threadPoolSize, int eventLoopCount, ExecutorService threadPool, Semaphore concurrencyLimit) {
         this.port = port;
         this.threadPoolSize = threadPoolSize;
-        this.threadPool = Executors.newFixedThreadPool(this.threadPoolSize);
+        this.eventLoopCount = eventLoopCount;
+        this.threadPool = threadPool;
+        this.concurrencyLimit = concurrencyLimit;
         this.router = new Router();
     }
 
@@ -75,30 +179,567 @@ public class Server {
         addRoute("POST", path, handler);
     }
 
+    // 비동기 핸들러. 람다가 Handler 와 헷갈리지 않도록 이름을 따로 둔다. 시간 제한은 setAsyncTimeout 값을 쓴다.
+    // stage 를 기다리는 동안 워커를 놓는 것은 nioServer 뿐이다. defaultServer 와 virtualThreadServer 는
+    // 연결 스레드가 응답을 보내므로 stage 가 끝날 때까지 그 스레드가 막혀 있다
+    public void getAsync(String path, AsyncHandler handler) {
+        getAsync(path, 0, handler);
+    }
+
+    // timeout(ms) 안에 stage 가 끝나지 않으면 504 로 응답한다
+    public void getAsync(String path, int timeout, AsyncHandler handler) {
+        addRoute("GET", path, asyncRoute(timeout, handler));
+    }
+
+    public void postAsync(String path, AsyncHandler handler) {
+        postAsync(path, 0, handler);
+    }
+
+    public void postAsync(String path, int timeout, AsyncHandler handler) {
+        addRoute("POST", path, asyncRoute(timeout, handler));
+    }
+
+    private AsyncRoute asyncRoute(int timeout, AsyncHandler handler) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout must not be negative: " + timeout);
+        }
+        if (eventLoopCount == 0 && !asyncRouteWarned) {
+            asyncRouteWarned = true;
+            logger.warn("Async routes block the connection thread until the stage completes; use nioServer to release workers");
+        }
+        return new AsyncRoute(handler, timeout);
+    }
+
+    // 모든 라우트에 미들웨어를 건다. 먼저 건 미들웨어가 바깥에서 돈다
+    public void use(Middleware middleware) {
+        router.use("/", middleware);
+    }
+
+    // prefix 아래 라우트에만 미들웨어를 건다
+    public void use(String prefix, Middleware middleware) {
+        router.use(prefix, middleware);
+    }
+
     public void staticFiles(String path, Handler staticHandler) {
         router.staticFiles(path, staticHandler);
     }
 
+    // path 아래 요청을 root 디렉터리의 파일로 응답한다. 작은 파일은 32MB 까지 메모리에 캐시한다
+    public void staticFiles(String path, Path root) {
+        staticFiles(path, root, DEFAULT_STATIC_CACHE_SIZE);
+    }
+
+    // cacheSize 는 메모리에 둘 파일 내용의 전체 바이트 수. 0 이면 캐시하지 않는다
+    public void staticFiles(String path, Path root, long cacheSize) {
+        StaticFileHandler handler = new StaticFileHandler(path, root, cacheSize);
+        staticFileHandlers.add(handler);
+        router.staticFiles(path, handler);
+    }
+
+    // 요청을 받는 중에도 라우트를 바꿀 수 있다. 처리 중인 요청은 바꾸기 전 라우트로 끝난다
+    public boolean removeRoute(String method, String path) {
+        return router.removeRoute(method, path);
+    }
+
+    // 등록된 라우트를 모두 지우고 routes 에서 등록한 라우트로 한 번에 바꾼다
+    public void replaceRoutes(Consumer<Server> routes) {
+        router.replaceRoutes(r -> routes.accept(this));
+    }
+
     public static Server defaultServer(int port, int threadPoolSize) {
-        return new Server(port, threadPoolSize);
+        return new Server(port, threadPoolSize, 0);
+    }
+
+    // 이벤트 루프(기본: 코어당 하나)가 논블로킹으로 읽기/파싱을 하고, 핸들러만 워커 풀에서 실행한다
+    public static Server nioServer(int port, int threadPoolSize) {
+        return nioServer(port, threadPoolSize, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static Server nioServer(int port, int threadPoolSize, int eventLoopCount) {
+        if (eventLoopCount < 1) {
+            throw new IllegalArgumentException("eventLoopCount must be positive: " + eventLoopCount);
+        }
+        return new Server(port, threadPoolSize, eventLoopCount);
+    }
+
+    // 연결마다 가상 스레드를 쓰고, 동시에 처리하는 연결 수는 maxConcurrency 로 제한한다 (Java 21 이상)
+    public static Server virtualThreadServer(int port, int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+        }
+        // 고정된 가상 스레드가 이 서버의 것인지 이름으로 가린다
+        String threadPrefix = "jin-virtual-" + port + "-";
+        Server server = new Server(port, maxConcurrency, 0, newVirtualThreadExecutor(threadPrefix), new Semaphore(maxConcurrency));
+        server.pinnedThreadMonitor = new PinnedThreadMonitor(threadPrefix);
+        return server;
+    }
+
+    // 빌드는 Java 17 기준이라 가상 스레드 API 는 리플렉션으로 찾는다. 스레드 이름은 threadPrefix 에 번호를 붙인다
+    private static ExecutorService newVirtualThreadExecutor(String threadPrefix) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, threadPrefix, 0L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later", e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to create virtual thread executor", e);
+        }
+    }
+
+    // keep-alive 연결에서 다음 요청을 기다리는 최대 시간(ms)
+    public Server setIdleTimeout(int idleTimeout) {
+        if (idleTimeout < 1) {
+            throw new IllegalArgumentException("idleTimeout must be positive: " + idleTimeout);
+        }
+        this.idleTimeout = idleTimeout;
+        return this;
+    }
+
+    // 요청의 첫 바이트부터 헤더 끝까지 받는 최대 시간(ms). 헤더를 조금씩 보내며 연결을 붙잡는 클라이언트를 408 로 끊는다
+    public Server setHeaderTimeout(int headerTimeout) {
+        if (headerTimeout < 1) {
+            throw new IllegalArgumentException("headerTimeout must be positive: " + headerTimeout);
+        }
+        this.headerTimeout = headerTimeout;
+        return this;
+    }
+
+    // 바디를 읽을 때 다음 바이트가 오기까지 기다리는 최대 시간(ms). 넘으면 408 로 응답한다
+    public Server setBodyTimeout(int bodyTimeout) {
+        if (bodyTimeout < 1) {
+            throw new IllegalArgumentException("bodyTimeout must be positive: " + bodyTimeout);
+        }
+        this.bodyTimeout = bodyTimeout;
+        return this;
+    }
+
+    // 응답을 보낼 때 클라이언트가 받지 않고 버티는 최대 시간(ms). 넘으면 연결을 닫는다
+    public Server setWriteTimeout(int writeTimeout) {
+        if (writeTimeout < 1) {
+            throw new IllegalArgumentException("writeTimeout must be positive: " + writeTimeout);
+        }
+        this.writeTimeout = writeTimeout;
+        return this;
+    }
+
+    // 한 연결에서 처리할 최대 요청 수. 1 이면 keep-alive 를 쓰지 않는다
+    public Server setMaxRequestsPerConnection(int maxRequestsPerConnection) {
+        if (maxRequestsPerConnection < 1) {
+            throw new IllegalArgumentException("maxRequestsPerConnection must be positive: " + maxRequestsPerConnection);
+        }
+        this.maxRequestsPerConnection = maxRequestsPerConnection;
+        return this;
+    }
+
+    // 시간을 따로 정하지 않은 비동기 핸들러를 기다리는 최대 시간(ms), 기본 30000
+    public Server setAsyncTimeout(int asyncTimeout) {
+        if (asyncTimeout < 1) {
+            throw new IllegalArgumentException("asyncTimeout must be positive: " + asyncTimeout);
+        }
+        this.asyncTimeout = asyncTimeout;
+        return this;
+    }
+
+    // 워커를 기다리는 연결(defaultServer, virtualThreadServer)이나 요청(nioServer)의 최대 수.
+    // 큐가 차 있으면 기다리게 하지 않고 바로 503 으로 응답한다
+    public Server setMaxQueueSize(int maxQueueSize) {
+        if (maxQueueSize < 1) {
+            throw new IllegalArgumentException("maxQueueSize must be positive: " + maxQueueSize);
+        }
+        this.maxQueueSize = maxQueueSize;
+        return this;
+    }
+
+    // 워커를 이보다 오래(ms) 기다린 작업은 처리하지 않고 503 으로 응답한다. 0 이면 기다린 시간을 보지 않는다
+    public Server setMaxQueueTime(int maxQueueTime) {
+        if (maxQueueTime < 0) {
+            throw new IllegalArgumentException("maxQueueTime must not be negative: " + maxQueueTime);
+        }
+        this.maxQueueTime = maxQueueTime;
+        return this;
+    }
+
+    // virtualThreadServer 가 getPinnedThreadCount() 에 셀 최소 고정 시간(ms), 기본 20. 0 이면 모두 센다.
+    // 짧은 고정까지 JFR 로 기록하면 synchronized 를 많이 쓰는 핸들러에서 이벤트가 많아진다
+    public Server setPinnedThreshold(int pinnedThreshold) {
+        if (pinnedThreshold < 0) {
+            throw new IllegalArgumentException("pinnedThreshold must not be negative: " + pinnedThreshold);
+        }
+        this.pinnedThreshold = pinnedThreshold;
+        return this;
+    }
+
+    // stop(drainTimeout) 이 readiness 를 내린 뒤 새 연결을 그만 받기까지 기다리는 시간(ms).
+    // 로드 밸런서가 헬스 체크로 이 노드를 빼는 동안에도 들어오는 요청은 처리한다. 기본 0
+    public Server setReadinessDelay(int readinessDelay) {
+        if (readinessDelay < 0) {
+            throw new IllegalArgumentException("readinessDelay must not be negative: " + readinessDelay);
+        }
+        this.readinessDelay = readinessDelay;
+        return this;
+    }
+
+    // JVM 이 끝날 때 처리 중인 요청을 기다리는 시간(ms). 기본 10000
+    public Server setShutdownTimeout(int shutdownTimeout) {
+        if (shutdownTimeout < 0) {
+            throw new IllegalArgumentException("shutdownTimeout must not be negative: " + shutdownTimeout);
+        }
+        this.shutdownTimeout = shutdownTimeout;
+        return this;
+    }
+
+    // path 에서 요청을 받을 수 있으면 200, 멈추는 중이면 503 으로 응답한다. 로드 밸런서의 헬스 체크 경로로 쓴다
+    public Server enableReadiness(String path) {
+        get(path, ctx -> {
+            boolean up = isReady();
+            ctx.response().setStatus(up ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE)
+                    .addHeader("Content-Type", "text/plain")
+                    .setBody((up ? "ready" : "draining").getBytes());
+        });
+        return this;
+    }
+
+    // 업로드 파일이 이 크기(byte)를 넘으면 메모리 대신 uploadDir 의 임시 파일로 받는다
+    public Server setFileSizeThreshold(int fileSizeThreshold) {
+        if (fileSizeThreshold < 0) {
+            throw new IllegalArgumentException("fileSizeThreshold must not be negative: " + fileSizeThreshold);
+        }
+        this.fileSizeThreshold = fileSizeThreshold;
+        return this;
+    }
+
+    public Server setUploadDir(Path uploadDir) {
+        this.uploadDir = uploadDir;
+        return this;
+    }
+
+    // 응답 압축을 켠다. null 이면 끈다
+    public Server setCompression(Compression compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    // 연결마다 새로 만들던 읽기/쓰기 버퍼를 풀에서 빌려 쓰고, 요청·응답 객체는 같은 연결의 다음 요청에 비워서 다시 쓴다.
+    // 핸들러가 끝난 뒤에 Context 를 쓰면 IllegalStateException 을 던진다. 서버를 시작하기 전에 정한다
+    public Server setPooling(boolean pooling) {
+        if (pooling) {
+            readBuffers = new BufferPool(HttpRequestParser.INITIAL_BUFFER_SIZE, MAX_POOLED_BUFFERS);
+            writeBuffers = new BufferPool(PipelinedOutputStream.BUFFER_SIZE, MAX_POOLED_BUFFERS);
+        } else {
+            readBuffers = null;
+            writeBuffers = null;
+        }
+        return this;
+    }
+
+    // 라우트별 지연 시간과 워커 큐 길이, 열린 연결 수를 모은다. getMetrics() 를 핸들러로 등록하면 Prometheus 로 내보낸다
+    public Server enableMetrics() {
+        Metrics enabled = new Metrics();
+        enabled.gauge("jin_open_connections", "Open client connections", openConnections::get);
+        if (threadPool instanceof ThreadPoolExecutor pool) {
+            enabled.gauge("jin_worker_queue_length", "Requests waiting for a worker thread", () -> pool.getQueue().size());
+            enabled.gauge("jin_worker_active_threads", "Worker threads running a handler", pool::getActiveCount);
+        }
+        enabled.counter("jin_shed_requests_total", "Requests answered with 503 because the worker queue was full or too slow",
+                shedRequests::sum);
+        this.metrics = enabled;
+        return this;
+    }
+
+    // 메트릭을 켜고 path 에서 Prometheus 텍스트 형식으로 내보낸다
+    public Server enableMetrics(String path) {
+        enableMetrics();
+        get(path, metrics);
+        return this;
+    }
+
+    // 켜지 않았으면 null
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    // 메트릭을 켰을 때만 시간을 잰다
+    long startTimer() {
+        return metrics == null ? 0 : System.nanoTime();
+    }
+
+    // dispatch 부터 응답을 다 쓸 때까지 걸린 시간을 라우트와 상태 코드 종류별로 남긴다
+    void recordRequest(HttpRequest req, HttpResponse res, long start) {
+        Metrics enabled = metrics;
+        if (enabled != null) {
+            RouteMatch match = req.routeMatch();
+            enabled.record(req.getMethod(), match == null ? Metrics.UNMATCHED : match.getPattern(),
+                    res.getStatusCode(), System.nanoTime() - start);
+        }
+    }
+
+    // 워커 큐가 차 있으면 shed 를 바로 실행하고, 아니면 task 를 큐에 넣는다. 큐에서 maxQueueTime 을 넘게 기다린 작업도
+    // task 대신 shed 를 실행한다. 과부하일 때 요청이 큐에 끝없이 쌓여 지연 시간과 메모리가 늘어나는 대신 빨리 거절한다.
+    // 큐가 찼을 때는 호출한 스레드(accept, 이벤트 루프)에서, 기다린 시간이 지났을 때는 타이머 스레드에서 shed 가 돌므로
+    // 막히지 않아야 한다
+    void submit(Runnable task, Runnable shed) {
+        if (queued.get() >= maxQueueSize) {
+            shed.run();
+            return;
+        }
+        queued.incrementAndGet();
+        try {
+            threadPool.execute(new QueuedTask(task, shed));
+        } catch (RejectedExecutionException e) {
+            // 서버를 멈추는 중이다
+            queued.decrementAndGet();
+            shed.run();
+        }
+    }
+
+    // 기다린 시간이 maxQueueTime 안이면 처리한다. 가상 스레드 서버는 남은 시간 동안 동시 처리 한도에 자리가 나기를 기다린다
+    private boolean admit(long enqueued) {
+        long left = maxQueueTime == 0 ? Long.MAX_VALUE
+                : TimeUnit.MILLISECONDS.toNanos(maxQueueTime) - (System.nanoTime() - enqueued);
+        if (concurrencyLimit == null) {
+            return left > 0;
+        }
+        try {
+            if (maxQueueTime == 0) {
+                concurrencyLimit.acquire();
+                return true;
+            }
+            return concurrencyLimit.tryAcquire(left, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // 워커를 기다리는 작업. 워커가 큐에서 꺼내거나 checkQueue() 가 기다린 시간이 지나 큐에서 빼낸 쪽만 실행한다
+    private final class QueuedTask implements Runnable {
+        private final Runnable task;
+        private final Runnable shed;
+        private final long enqueued = System.nanoTime();
+
+        QueuedTask(Runnable task, Runnable shed) {
+            this.task = task;
+            this.shed = shed;
+        }
+
+        @Override
+        public void run() {
+            boolean admitted = admit(enqueued);
+            queued.decrementAndGet();
+            // execute() 로 넣었으니 여기서 잡지 않으면 예외가 로그 대신 stderr 로 가고 워커 스레드가 죽는다.
+            // 응답을 보내기 시작한 뒤 핸들러가 던진 예외가 여기까지 온다
+            try {
+                if (admitted) {
+                    task.run();
+                } else {
+                    shed.run();
+                }
+            } catch (RuntimeException e) {
+                logger.error("Error Handling Request", e);
+            }
+        }
+
+        void shed() {
+            queued.decrementAndGet();
+            shed.run();
+        }
+    }
+
+    // 타이머 스레드에서 TICK 마다 돈다. maxQueueTime 이 지난 작업은 워커가 꺼낼 때까지 두지 않고 바로 503 으로 응답한다.
+    // 블로킹 서버의 워커(가상 스레드 서버는 동시 처리 한도의 자리)는 keep-alive 연결이 쉬는 동안에도 잡혀 있으므로,
+    // 워커를 TICK 넘게 기다린 연결이 있으면 그만큼 쉬는 연결을 닫아 워커를 돌려받는다
+    private void checkQueue() {
+        // 다시 걸지 않으면 타이머 스레드가 살아 있어도 큐를 더 보지 않는다
+        try {
+            int waiting = 0;
+            if (threadPool instanceof ThreadPoolExecutor pool) {
+                long now = System.nanoTime();
+                long limit = maxQueueTime == 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(maxQueueTime);
+                long tick = TimeUnit.MILLISECONDS.toNanos(TimerWheel.TICK);
+                BlockingQueue<Runnable> queue = pool.getQueue();
+                for (Runnable runnable : queue) {
+                    // 이벤트 루프가 넘긴 비동기 응답은 건너뛴다
+                    if (!(runnable instanceof QueuedTask task)) {
+                        continue;
+                    }
+                    long waited = now - task.enqueued;
+                    if (waited >= limit) {
+                        // 그 사이 워커가 꺼냈으면 워커가 shed 한다
+                        if (queue.remove(task)) {
+                            task.shed();
+                        }
+                    } else if (waited >= tick) {
+                        waiting++;
+                    } else {
+                        // 뒤는 더 늦게 들어왔다
+                        break;
+                    }
+                }
+            } else if (concurrencyLimit != null) {
+                waiting = concurrencyLimit.getQueueLength();
+            }
+
+            starved = waiting > 0;
+            for (SocketTimeout idle : idleConnections) {
+                if (waiting-- == 0) {
+                    break;
+                }
+                idle.release();
+            }
+        } finally {
+            queueCheck.expireAfter(TimerWheel.TICK);
+        }
+    }
+
+    // 연결 타임아웃과 워커 큐를 타이머 스레드 하나가 본다
+    private void startTimeouts() {
+        timeouts = newTimerWheel();
+        queueCheck = timeouts.newTimeout(this::checkQueue);
+        queueCheck.expireAfter(TimerWheel.TICK);
+        timeouts.start("jin-timeouts");
+    }
+
+    // 과부하로 처리하지 않은 요청의 응답
+    void shed(HttpResponse res) {
+        shedRequests.increment();
+        res.setStatus(HttpStatus.SERVICE_UNAVAILABLE)
+                .addHeader("Content-Type", "text/plain")
+                .addHeader("Retry-After", RETRY_AFTER)
+                .setBody(SHED_BODY);
     }
+
+    // 과부하로 503 을 보낸 요청 수
+    public long getShedCount() {
+        return shedRequests.sum();
+    }
+
+    void connectionOpened() {
+        openConnections.incrementAndGet();
+    }
+
+    void connectionClosed() {
+        openConnections.decrementAndGet();
+    }
+
+    boolean isPooling() {
+        return readBuffers != null;
+    }
+
+    int getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    int getHeaderTimeout() {
+        return headerTimeout;
+    }
+
+    int getBodyTimeout() {
+        return bodyTimeout;
+    }
+
+    int getWriteTimeout() {
+        return writeTimeout;
+    }
+
+    // 타이머 휠은 가장 짧은 타임아웃 안쪽으로만 칸을 잡는다
+    TimerWheel newTimerWheel() {
+        return new TimerWheel(Math.min(Math.min(idleTimeout, headerTimeout), Math.min(bodyTimeout, writeTimeout)));
+    }
+
+    HttpRequestParser newParser() {
+        return new HttpRequestParser(fileSizeThreshold, uploadDir, readBuffers);
+    }
+
+    // 풀링하면 연결마다 응답 객체 하나를 비워서 다시 쓴다
+    HttpResponse newResponse(HttpResponse previous, OutputStream output) {
+        return isPooling() && previous != null ? previous.reset(output) : new HttpResponse(output);
+    }
+
     private void addRoute(String method, String path, Handler handler) {
         router.addRoute(method, path, handler);
     }
 
     public void start() {
+        if (eventLoopCount > 0) {
+            startEventLoops();
+            return;
+        }
+
         try {
-            serverSocket = new ServerSocket(port);
-            Runtime.getRuntime().addShutdownHook(new Thread(threadPool::shutdown));
+            // 채널로 만든 소켓이어야 파일 바디를 transferTo 로 바로 보낼 수 있다
+            ServerSocketChannel serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+            ready = true;
+            serverSocket = serverChannel.socket();
+            Runtime.getRuntime().addShutdownHook(new Thread(this::stopOnExit));
+            // 연결마다 setSoTimeout 이나 ScheduledFuture 를 두지 않고 스레드 하나가 모든 연결의 타임아웃을 본다
+            startTimeouts();
 
             // init MIME
             MIME.init();
 
+            if (pinnedThreadMonitor != null) {
+                pinnedThreadMonitor.start(Duration.ofMillis(pinnedThreshold));
+            }
+
             logger.info("Listening for connection on port {} ....", port);
 
             while (!Thread.currentThread().isInterrupted()) {
+                // 가상 스레드 서버는 동시 처리 한도에 자리가 날 때까지 연결의 스레드가 기다린다
                 Socket clientSocket = serverSocket.accept();
-                threadPool.submit(() -> handleRequest(clientSocket));
+                submit(() -> handleRequest(clientSocket), () -> shed(clientSocket));
+            }
+        } catch (IOException e) {
+            logger.error("Error Starting Server", e);
+        } finally {
+            acceptorExited.countDown();
+        }
+    }
+
+    // 요청을 읽지 않고 503 을 보낸 뒤 닫는다. 이미 도착한 요청 바이트는 버려서 닫을 때 RST 로 응답이 사라지지 않게 한다
+    private void shed(Socket clientSocket) {
+        try (clientSocket) {
+            HttpResponse res = new HttpResponse(clientSocket.getOutputStream());
+            shed(res);
+            res.addHeader("Connection", "close");
+            res.send();
+            clientSocket.shutdownOutput();
+            InputStream input = clientSocket.getInputStream();
+            input.skip(input.available());
+        } catch (IOException e) {
+            logger.debug("Error Shedding Connection", e);
+        }
+    }
+
+    private void startEventLoops() {
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            eventLoops = new EventLoop[eventLoopCount];
+            for (int i = 0; i < eventLoopCount; i++) {
+                eventLoops[i] = new EventLoop(this, threadPool, "jin-event-loop-" + i);
+                eventLoops[i].start();
+            }
+            startTimeouts();
+
+            serverChannel.bind(new InetSocketAddress(port));
+            ready = true;
+            serverSocket = serverChannel.socket();
+            Runtime.getRuntime().addShutdownHook(new Thread(this::stopOnExit));
+
+            // init MIME
+            MIME.init();
+
+            logger.info("Listening for connection on port {} with {} event loops ....", port, eventLoopCount);
+
+            // accept 는 이 스레드에서 처리하고, 연결은 라운드 로빈으로 이벤트 루프에 넘긴다
+            int next = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                SocketChannel channel = serverChannel.accept();
+                eventLoops[next].register(channel);
+                next = (next + 1) % eventLoops.length;
             }
         } catch (IOException e) {
             logger.error("Error Starting Server", e);
@@ -106,28 +747,225 @@ public class Server {
     }
 
     private void handleRequest(Socket clientSocket) {
-        try (clientSocket; var input = clientSocket.getInputStream(); var output = clientSocket.getOutputStream()) {
-            HttpRequest req = HttpRequest.from(input);
-            HttpResponse res = new HttpResponse(output);
+        // 닫을 때 밀린 응답을 먼저 보내도록 output 을 마지막에 연다
+        HttpRequestParser parser = newParser();
+        SocketTimeout timeout = new SocketTimeout(this, clientSocket, timeouts);
+        connectionOpened();
+        connections.add(clientSocket);
+        try (clientSocket; var socketInput = clientSocket.getInputStream();
+             var output = new PipelinedOutputStream(clientSocket.getOutputStream(), clientSocket.getChannel(), writeBuffers)) {
+            // 쉬는 연결로 표시하기 전에 모아 둔 응답을 보내야 멈출 때 응답째 닫지 않는다
+            var input = output.flushBeforeRead(timeout.watch(socketInput, parser));
+            HttpResponse res = null;
 
-            Context ctx = new Context(req, res);
+            for (int served = 1; ; served++) {
+                HttpRequest req;
+                try {
+                    // 멈추는 중에도 이미 받은 요청(큐에서 기다린 연결, 파이프라이닝)은 Connection: close 로 응답한다
+                    timeout.awaitRequest(!parser.isIdle());
+                    req = parser.read(input);
+                } catch (EOFException e) {
+                    // 클라이언트가 연결을 닫았거나 유휴 시간이 지났다
+                    return;
+                } catch (SocketException | AsynchronousCloseException e) {
+                    // 멈추면서 쉬고 있던 연결을 닫았거나 타임아웃으로 닫혔다. 채널 소켓은 읽는 중에 닫히면 AsynchronousCloseException
+                    if (serverSocket.isClosed() || timeout.isExpired()) {
+                        return;
+                    }
+                    throw e;
+                } catch (HttpException e) {
+                    // 바디를 다 읽지 못했거나 헤더를 기다리다 시간이 지났으니 응답 후 연결을 닫는다
+                    res = newResponse(res, output);
+                    reject(res, e);
+                    res.addHeader("Connection", "close");
+                    res.send();
+                    return;
+                }
 
-            Handler handler = router.getHandlers(req.getMethod(), req.getPath());
+                res = newResponse(res, output);
+                res.setChannel(clientSocket.getChannel());
+                boolean keepAlive;
+                long start = startTimer();
+                try {
+                    timeout.handling();
+                    prepare(req, res, served);
+                    // 이 서버는 연결 스레드가 응답을 보내므로 비동기 핸들러도 여기서 기다린다
+                    dispatch(req, res).join();
+                    timeout.writing();
+                    // 파이프라이닝된 응답은 모아 두었다가 다음에 소켓을 읽을 때 한 번에 보낸다.
+                    // 파일 바디는 소켓 채널로 바로 나가므로 그 전에 헤더를 보내야 한다
+                    output.deferFlush(!res.hasFileBody());
+                    res.send();
+                    output.deferFlush(false);
+                    recordRequest(req, res, start);
 
-            logger.info(req.getRequestLine());
+                    keepAlive = keepAlive(req, res);
+                } finally {
+                    req.release();
+                    parser.recycle(req);
+                }
 
-            if (handler != null) {
-                handler.handle(ctx);
+                if (!keepAlive) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            if (timeout.isExpired()) {
+                logger.debug("Connection Timed Out", e);
             } else {
-                res.setStatus(HttpStatus.NOT_FOUND);
-                res.addHeader("Content-Type", "text/html");
-                res.setBody(notFoundHtml.getBytes());
+                logger.error("Error Handling Request", e);
+            }
+        } finally {
+            timeout.cancel();
+            parser.close();
+            connections.remove(clientSocket);
+            connectionClosed();
+            if (concurrencyLimit != null) {
+                concurrencyLimit.release();
             }
+        }
+    }
 
-            res.send();
-        } catch (IOException e) {
+    // 핸들러를 실행하고 응답이 정해지면 완료되는 future 를 돌려준다. 동기 핸들러면 이미 완료되어 있다.
+    // 비동기 핸들러의 오류와 시간 초과는 응답 상태로 바꾸고, 응답을 이미 보내기 시작했으면 future 가 예외로 끝난다
+    CompletableFuture<Void> dispatch(HttpRequest req, HttpResponse res) {
+        Context ctx = new Context(req, res);
+
+        RouteMatch match = router.match(req.getMethod(), req.getPath());
+
+        logger.info(req.getRequestLine());
+
+        if (match == null) {
+            res.setStatus(HttpStatus.NOT_FOUND);
+            res.addHeader("Content-Type", "text/html");
+            res.setBody(notFoundHtml.getBytes());
+            return DONE;
+        }
+
+        req.setRouteMatch(match);
+        boolean async = false;
+        try {
+            // 미들웨어가 이어진 체인. 비동기 라우트면 끝에서 stage 를 ctx 에 남긴다
+            match.getHandler().handle(ctx);
+            async = ctx.asyncRoute() != null;
+        } catch (HttpException e) {
+            if (res.isCommitted()) {
+                throw e;
+            }
+            reject(res, e);
+        } catch (RuntimeException e) {
+            // 비동기 핸들러의 오류처럼 500 으로 응답한다. 헤더를 이미 보냈으면 연결을 닫을 수밖에 없다
+            if (res.isCommitted()) {
+                throw e;
+            }
             logger.error("Error Handling Request", e);
+            reject(res, new HttpException(HttpStatus.INTERNAL_SERVER_ERROR));
+        } finally {
+            if (isPooling() && !async) {
+                ctx.release();
+            }
+        }
+        return async ? dispatchAsync(ctx.asyncRoute(), ctx, res) : DONE;
+    }
+
+    // stage 를 기다리는 동안 호출한 스레드는 바로 돌아간다. 완료 콜백은 stage 를 끝낸 스레드나 시간 초과 타이머에서 돈다
+    private CompletableFuture<Void> dispatchAsync(AsyncRoute route, Context ctx, HttpResponse res) {
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        ctx.asyncStage().whenComplete((value, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else {
+                result.complete(value);
+            }
+        });
+
+        int timeout = route.timeout() > 0 ? route.timeout() : asyncTimeout;
+        return result.orTimeout(timeout, TimeUnit.MILLISECONDS).handle((value, e) -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            // 시간이 지나도 핸들러는 계속 돌 수 있으니 Context 를 닫아 늦게 쓰는 응답이 섞이지 않게 한다
+            if (isPooling() || cause instanceof TimeoutException) {
+                ctx.release();
+            }
+            if (cause == null) {
+                return null;
+            }
+            if (res.isCommitted()) {
+                throw new CompletionException(cause);
+            }
+            if (cause instanceof HttpException httpException) {
+                reject(res, httpException);
+            } else if (cause instanceof TimeoutException) {
+                reject(res, new HttpException(HttpStatus.GATEWAY_TIMEOUT));
+            } else {
+                logger.error("Error Handling Request", cause);
+                reject(res, new HttpException(HttpStatus.INTERNAL_SERVER_ERROR));
+            }
+            return null;
+        });
+    }
+
+    void reject(HttpResponse res, HttpException e) {
+        // 바디를 기다리다 시간이 지났으면 남은 바디를 버릴 수 없으니 연결을 닫는다
+        if (e.getStatus() == HttpStatus.REQUEST_TIMEOUT) {
+            res.addHeader("Connection", "close");
+        }
+        res.setStatus(e.getStatus());
+        res.addHeader("Content-Type", "text/plain");
+        res.setBody(e.getMessage().getBytes());
+    }
+
+    // 헤더를 보내기 직전에 요청과 핸들러가 정한 Connection 헤더, 연결당 요청 한도를 보고
+    // 연결 유지 여부를 정해 응답에 알린다. 스트리밍 응답은 핸들러 중간에 헤더가 나간다
+    void prepare(HttpRequest req, HttpResponse res, int served) {
+        res.setChunkedAllowed(!"HTTP/1.0".equals(req.getVersion()));
+        res.setOmitBody("HEAD".equals(req.getMethod()));
+        res.beforeCommit(r -> {
+            boolean keepAlive = req.isKeepAlive()
+                    && served < maxRequestsPerConnection
+                    && !"close".equalsIgnoreCase(r.getHeader("Connection"))
+                    && ready;
+            r.addHeader("Connection", keepAlive ? "keep-alive" : "close");
+            if (compression != null) {
+                compression.apply(req, r);
+            }
+        });
+    }
+
+    // 응답을 보낸 뒤 연결을 유지할지 정한다. 핸들러가 읽지 않은 바디는 MAX_REQUEST_SIZE 까지만 버리고,
+    // 그보다 크면 연결을 닫는다
+    boolean keepAlive(HttpRequest req, HttpResponse res) throws IOException {
+        if (!"keep-alive".equals(res.getHeader("Connection"))) {
+            return false;
+        }
+        try {
+            return req.discardBody(HttpRequest.MAX_REQUEST_SIZE);
+        } catch (HttpException e) {
+            // 버리던 바디가 bodyTimeout 안에 오지 않았다
+            return false;
+        }
+    }
+
+    // 다음 요청의 첫 바이트를 기다리기 시작한다. 멈추기 시작했거나 워커를 기다리는 연결이 있으면 기다리지 않고 false
+    boolean enterIdle(SocketTimeout connection) {
+        if (starved) {
+            return false;
+        }
+        idleConnections.add(connection);
+        // stop() 이 쉬는 연결을 닫은 뒤에 들어왔으면 스스로 닫는다
+        if (serverSocket.isClosed()) {
+            idleConnections.remove(connection);
+            return false;
         }
+        return true;
+    }
+
+    void leaveIdle(SocketTimeout connection) {
+        idleConnections.remove(connection);
+    }
+
+    // 요청 처리 중 캐리어 스레드에 고정(pinned)된 가상 스레드 수. 가상 스레드 서버가 아니면 0
+    public long getPinnedThreadCount() {
+        return pinnedThreadMonitor == null ? 0 : pinnedThreadMonitor.getPinnedCount();
     }
 
     public boolean isConnected() {
@@ -138,8 +976,108 @@ public class Server {
         return serverSocket != null || serverSocket.isClosed();
     }
 
+    // 요청을 받을 수 있는 상태. 멈추기 시작하면 false
+    public boolean isReady() {
+        return ready && isConnected();
+    }
+
+    // 처리 중인 요청을 기다리지 않고 멈춘다. 이미 워커에서 돌던 요청은 끝까지 돈다
     public void stop() throws IOException {
+        ready = false;
+        serverSocket.close();
+        awaitAcceptor();
+        for (SocketTimeout idleConnection : idleConnections) {
+            idleConnection.close();
+        }
+        for (StaticFileHandler handler : staticFileHandlers) {
+            handler.close();
+        }
+        shutdownWorkers();
+    }
+
+    // 요청을 끊지 않고 멈춘다. readiness 를 내리고 readinessDelay 동안은 그대로 처리한 뒤 새 연결을 그만 받는다.
+    // 쉬고 있는 keep-alive 연결은 바로 닫고, 처리 중인 요청은 Connection: close 로 응답한 뒤 닫는다.
+    // drainTimeout(ms) 이 지나도 끝나지 않은 연결은 강제로 닫는다. 모두 제때 끝났으면 true
+    public boolean stop(int drainTimeout) throws IOException, InterruptedException {
+        ready = false;
+        if (readinessDelay > 0) {
+            Thread.sleep(readinessDelay);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeout);
         serverSocket.close();
+        awaitAcceptor();
+        for (SocketTimeout idleConnection : idleConnections) {
+            idleConnection.close();
+        }
+
+        // 이벤트 루프가 끝나기 전에 워커를 멈추면 비동기 핸들러의 응답을 보낼 수 없다
+        boolean drained = true;
+        EventLoop[] loops = eventLoops;
+        if (loops != null) {
+            for (EventLoop eventLoop : loops) {
+                eventLoop.drain();
+            }
+            for (EventLoop eventLoop : loops) {
+                drained &= eventLoop.awaitTermination(remaining(deadline));
+            }
+        }
+        threadPool.shutdown();
+        drained &= threadPool.awaitTermination(remaining(deadline), TimeUnit.NANOSECONDS);
+
+        if (!drained) {
+            logger.warn("Closing connections still in flight after {} ms", drainTimeout);
+            threadPool.shutdownNow();
+            for (Socket connection : connections) {
+                connection.close();
+            }
+        }
+        for (StaticFileHandler handler : staticFileHandlers) {
+            handler.close();
+        }
+        shutdownWorkers();
+        return drained;
+    }
+
+    // 막혀 있던 accept 는 소켓을 닫아도 깨어나서 돌아갈 때까지 포트를 쥐고 있다.
+    // 기다리지 않으면 stop() 직후 같은 포트로 다시 시작할 때 bind 가 실패한다
+    private void awaitAcceptor() {
+        if (eventLoopCount > 0) {
+            return;
+        }
+        try {
+            acceptorExited.await(ACCEPTOR_EXIT_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long remaining(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    // JVM 이 끝날 때 처리 중인 요청을 마저 보낸다
+    private void stopOnExit() {
+        try {
+            stop(shutdownTimeout);
+        } catch (IOException e) {
+            logger.error("Error Stopping Server", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void shutdownWorkers() {
         threadPool.shutdown();
+        if (timeouts != null) {
+            timeouts.stop();
+        }
+        if (pinnedThreadMonitor != null) {
+            pinnedThreadMonitor.close();
+        }
+        if (eventLoops != null) {
+            for (EventLoop eventLoop : eventLoops) {
+                eventLoop.shutdown();
+            }
+        }
     }
 }
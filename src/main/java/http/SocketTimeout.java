@@ -0,0 +1,152 @@
+package http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+
+// 블로킹 연결 하나의 타임아웃. 워커는 단계가 바뀔 때 만료 시각만 바꾸고, 만료되면 타이머 스레드가 읽기를 끊는다(shutdownInput).
+// 헤더나 바디를 기다리다 끊긴 워커는 408 로 응답하고 연결을 닫는다. 그래도 끝나지 않거나 응답을 보내다 멈춘 연결은
+// 타이머 스레드가 소켓을 닫는다
+final class SocketTimeout {
+    private enum Phase {
+        // 다음 요청의 첫 바이트를 기다린다
+        IDLE,
+        // 요청 줄과 헤더를 다 받을 때까지
+        HEADER,
+        // 바디를 읽는 중. 읽을 때마다 다시 건다
+        BODY,
+        // 핸들러가 도는 중. 타임아웃이 없다
+        REQUEST,
+        WRITE,
+        // 읽기를 끊었다. 워커가 응답을 보내고 닫을 때까지 기다린다
+        CLOSING
+    }
+
+    private final Server server;
+    private final Socket socket;
+    private final TimerWheel.Timeout timeout;
+    private volatile Phase phase = Phase.IDLE;
+    private volatile Phase expired;
+
+    SocketTimeout(Server server, Socket socket, TimerWheel wheel) {
+        this.server = server;
+        this.socket = socket;
+        this.timeout = wheel.newTimeout(this::expire);
+    }
+
+    // 다음 요청을 기다린다. 이미 받아 둔 바이트가 있으면 헤더를 읽는 중이다
+    void awaitRequest(boolean partial) {
+        if (partial) {
+            phase = Phase.HEADER;
+            timeout.expireAfter(server.getHeaderTimeout());
+        } else {
+            phase = Phase.IDLE;
+            timeout.expireAfter(server.getIdleTimeout());
+        }
+    }
+
+    void handling() {
+        phase = Phase.REQUEST;
+        timeout.clear();
+    }
+
+    void writing() {
+        phase = Phase.WRITE;
+        timeout.expireAfter(server.getWriteTimeout());
+    }
+
+    boolean isExpired() {
+        return expired != null;
+    }
+
+    void cancel() {
+        timeout.cancel();
+    }
+
+    // 첫 바이트가 오면 헤더 타임아웃으로 바꾸고, 바디는 읽을 때마다 bodyTimeout 안에 바이트가 와야 한다.
+    // 헤더나 바디를 읽다 시간이 지나면 -1 대신 408 을 던진다
+    InputStream watch(InputStream in, HttpRequestParser parser) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                int n = read(b, 0, 1);
+                return n == -1 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (parser.isReadingBody()) {
+                    phase = Phase.BODY;
+                    timeout.expireAfter(server.getBodyTimeout());
+                    int n = readOrTimeout(b, off, len);
+                    phase = Phase.REQUEST;
+                    timeout.clear();
+                    return n;
+                }
+                int n;
+                if (phase == Phase.IDLE && in.available() == 0) {
+                    // 받은 바이트가 하나도 없을 때만 쉬는 연결이다. 멈추는 중이거나 워커가 모자라면 기다리지 않고 연결을 끝낸다
+                    if (!server.enterIdle(SocketTimeout.this)) {
+                        return -1;
+                    }
+                    try {
+                        n = readOrTimeout(b, off, len);
+                    } finally {
+                        server.leaveIdle(SocketTimeout.this);
+                    }
+                } else {
+                    n = readOrTimeout(b, off, len);
+                }
+                if (n > 0 && phase == Phase.IDLE) {
+                    phase = Phase.HEADER;
+                    timeout.expireAfter(server.getHeaderTimeout());
+                }
+                return n;
+            }
+
+            private int readOrTimeout(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n == -1 && (expired == Phase.HEADER || expired == Phase.BODY)) {
+                    throw new HttpException(HttpStatus.REQUEST_TIMEOUT);
+                }
+                return n;
+            }
+        };
+    }
+
+    // 워커를 기다리는 연결에 워커를 넘기도록 쉬는 연결을 유휴 시간이 지난 것처럼 끝낸다. 타이머 스레드에서 돈다
+    void release() {
+        if (phase == Phase.IDLE) {
+            expire();
+        }
+    }
+
+    // stop() 이 쉬는 연결을 닫는다
+    void close() throws IOException {
+        socket.close();
+    }
+
+    // 타이머 스레드에서 돈다
+    private void expire() {
+        Phase current = phase;
+        if (current == Phase.REQUEST) {
+            // 만료와 동시에 핸들러로 넘어갔다
+            return;
+        }
+        expired = current;
+        try {
+            if (current == Phase.WRITE || current == Phase.CLOSING) {
+                socket.close();
+                return;
+            }
+            // 막혀 있는 읽기를 -1 로 끝낸다. 응답을 보내고 닫을 시간은 writeTimeout 만큼 준다
+            phase = Phase.CLOSING;
+            timeout.expireAfter(server.getWriteTimeout());
+            socket.shutdownInput();
+        } catch (IOException e) {
+            // 이미 닫혔다
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+// 연결 타임아웃용 해시 타이머 휠. 연결마다 Timeout 하나를 휠에 넣어 두고 단계가 바뀔 때는 만료 시각만 바꾼다.
+// 휠은 한 스레드(타이머 스레드나 이벤트 루프)만 돌리며, 칸에 닿은 Timeout 이 아직 만료되지 않았으면 다시 넣는다.
+// 칸에는 horizon(가장 짧은 타임아웃) 안쪽으로만 넣으므로 그 뒤에 정한 만료 시각은 늘 칸보다 늦다.
+// 그래서 다른 스레드가 만료 시각을 바꿀 때 휠을 건드리거나 락을 잡지 않는다
+final class TimerWheel {
+    private static final Logger logger = LoggerFactory.getLogger(TimerWheel.class);
+    static final long TICK = 100;
+    private static final int WHEEL_SIZE = 512;
+    private static final long NONE = Long.MAX_VALUE;
+    private static final AtomicLongFieldUpdater<Timeout> DEADLINE =
+            AtomicLongFieldUpdater.newUpdater(Timeout.class, "deadline");
+
+    private final Timeout[] wheel = new Timeout[WHEEL_SIZE];
+    private final long horizon;
+    private final long origin = System.nanoTime();
+    // 다른 스레드가 만든 Timeout. 다음 advance() 에서 휠에 넣는다
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    // 마지막 advance() 의 시각(origin 부터 ms). 만료 시각은 이 값으로 계산해 nanoTime 을 부르지 않는다
+    private volatile long now;
+    // 다음에 돌 칸의 시각
+    private long nextTick = TICK;
+    private Thread thread;
+
+    // horizon 은 가장 짧은 타임아웃(ms)
+    TimerWheel(long horizon) {
+        this.horizon = Math.max(TICK, Math.min(horizon, (WHEEL_SIZE - 1) * TICK));
+    }
+
+    // 만료되면 휠을 돌리는 스레드에서 task 를 실행한다. 어느 스레드에서나 부를 수 있다
+    Timeout newTimeout(Runnable task) {
+        Timeout timeout = new Timeout(this, task);
+        added.add(timeout);
+        return timeout;
+    }
+
+    // 휠을 돌릴 스레드가 따로 없으면 TICK 마다 advance() 하는 데몬 스레드를 띄운다
+    void start(String name) {
+        thread = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                advance();
+                try {
+                    Thread.sleep(TICK);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void stop() {
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    // 지금까지 지난 칸을 돈다. 휠을 돌리는 스레드만 부른다
+    void advance() {
+        long current = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - origin);
+        now = current;
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            schedule(timeout, current);
+        }
+
+        while (nextTick <= current) {
+            int slot = (int) (nextTick / TICK) & (WHEEL_SIZE - 1);
+            Timeout head = wheel[slot];
+            wheel[slot] = null;
+            nextTick += TICK;
+            while (head != null) {
+                Timeout next = head.next;
+                head.next = null;
+                if (!head.cancelled) {
+                    long deadline = head.deadline;
+                    // 만료를 처리하는 사이에 다른 스레드가 다시 걸었으면 그 시각을 따른다
+                    if (deadline <= current && DEADLINE.compareAndSet(head, deadline, NONE)) {
+                        // 칸은 이미 비웠으니 예외가 새면 같은 칸의 다른 Timeout 과 타이머 스레드를 잃는다
+                        try {
+                            head.task.run();
+                        } catch (RuntimeException e) {
+                            logger.error("Error Running Timeout", e);
+                        }
+                    }
+                    if (!head.cancelled) {
+                        schedule(head, current);
+                    }
+                }
+                head = next;
+            }
+        }
+    }
+
+    private void schedule(Timeout timeout, long current) {
+        long at = Math.min(timeout.deadline, current + horizon);
+        // 늦게 돌더라도 이미 지난 칸에는 넣지 않는다
+        long tick = Math.max((at + TICK - 1) / TICK * TICK, nextTick);
+        int slot = (int) (tick / TICK) & (WHEEL_SIZE - 1);
+        timeout.next = wheel[slot];
+        wheel[slot] = timeout;
+    }
+
+    // 연결 하나의 만료 시각. 휠은 TICK 단위로 돌므로 최대 TICK 만큼 늦게 만료된다
+    static final class Timeout {
+        private final TimerWheel wheel;
+        private final Runnable task;
+        private volatile long deadline = NONE;
+        private volatile boolean cancelled;
+        // 같은 칸의 다음 Timeout. 휠을 돌리는 스레드만 쓴다
+        private Timeout next;
+
+        private Timeout(TimerWheel wheel, Runnable task) {
+            this.wheel = wheel;
+            this.task = task;
+        }
+
+        // 지금부터 millis 뒤에 만료된다. 전에 건 시각은 버린다
+        void expireAfter(long millis) {
+            deadline = wheel.now + millis;
+        }
+
+        // 만료되지 않게 한다
+        void clear() {
+            deadline = NONE;
+        }
+
+        // 연결이 끝났다. 휠은 다음에 이 칸을 돌 때 버린다
+        void cancel() {
+            cancelled = true;
+        }
+    }
+}
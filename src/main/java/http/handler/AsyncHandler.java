@@ -0,0 +1,13 @@
+package http.handler;
+
+
+import http.Context;
+
+import java.util.concurrent.CompletionStage;
+
+// 다른 서비스의 응답을 기다리는 핸들러. 기다리는 동안 워커를 잡고 있지 않도록 응답을 다 정하면 완료되는 stage 를 돌려준다.
+// 서버는 stage 가 완료되면 응답을 보내고, 라우트의 시간 안에 끝나지 않으면 504 로 응답한다
+@FunctionalInterface
+public interface AsyncHandler {
+    CompletionStage<?> handle(Context ctx);
+}
@@ -0,0 +1,12 @@
+package http.handler;
+
+
+import http.Context;
+
+// 핸들러 앞뒤에서 도는 공통 처리(인증, CORS, 시간 측정 등). 다음 단계로 넘기려면 next.handle(ctx) 를 부르고,
+// 부르지 않으면 그 자리에서 응답을 끝낸다. next 는 라우트를 등록할 때 미리 이어 둔 체인이다.
+// 비동기 라우트에서는 next.handle 이 핸들러를 시작만 하고 돌아오므로, 그 뒤에서 응답을 고치면 핸들러와 겹친다
+@FunctionalInterface
+public interface Middleware {
+    void handle(Context ctx, Handler next);
+}
@@ -0,0 +1,212 @@
+package http.handler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+// 정적 파일 내용을 전체 크기 maxBytes 까지 LRU 로 메모리에 둔다. 파일이 바뀌면 WatchService 로 알아채고 지운다.
+// 한 파일이 maxEntrySize 를 넘으면 내용은 두지 않고 ETag 와 Last-Modified 만 만든다
+class StaticFileCache implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(StaticFileCache.class);
+    private static final long MAX_ENTRY_SIZE = 1024 * 1024;
+    static final DateTimeFormatter HTTP_DATE = DateTimeFormatter
+            .ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+            .withZone(ZoneOffset.UTC);
+
+    record Entry(byte[] content, String etag, Instant lastModified, String lastModifiedText) {
+    }
+
+    private final long maxBytes;
+    private final long maxEntrySize;
+    // 접근 순서로 정렬해 가장 오래 안 쓴 항목부터 내보낸다
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    // 무효화할 때마다 올린다. 읽는 동안 파일이 바뀌었으면 읽은 내용을 넣지 않는다
+    private long generation;
+
+    private final WatchService watcher;
+    private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+
+    StaticFileCache(Path root, long maxBytes) {
+        WatchService watchService = null;
+        if (maxBytes > 0) {
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+                registerAll(watchService, root);
+            } catch (IOException e) {
+                // 바뀐 파일을 알 수 없으면 캐시하지 않는다
+                logger.warn("Static file cache disabled for {}", root, e);
+                closeQuietly(watchService);
+                watchService = null;
+            }
+        }
+        this.watcher = watchService;
+        this.maxBytes = watcher == null ? 0 : maxBytes;
+        this.maxEntrySize = Math.min(MAX_ENTRY_SIZE, this.maxBytes);
+
+        if (watcher != null) {
+            Thread thread = new Thread(this::watch, "jin-static-watcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    Entry get(Path file) throws IOException {
+        long loadedGeneration;
+        synchronized (this) {
+            Entry entry = entries.get(file);
+            if (entry != null) {
+                return entry;
+            }
+            loadedGeneration = generation;
+        }
+
+        Entry entry = load(file);
+        if (entry.content() != null) {
+            put(file, entry, loadedGeneration);
+        }
+        return entry;
+    }
+
+    private Entry load(Path file) throws IOException {
+        // HTTP 날짜는 초 단위라 비교할 수 있도록 버린다
+        Instant lastModified = Files.getLastModifiedTime(file).toInstant().truncatedTo(ChronoUnit.SECONDS);
+        long length = Files.size(file);
+        if (length > maxEntrySize) {
+            String etag = "\"" + Long.toHexString(lastModified.getEpochSecond()) + "-" + Long.toHexString(length) + "\"";
+            return new Entry(null, etag, lastModified, HTTP_DATE.format(lastModified));
+        }
+        byte[] content = Files.readAllBytes(file);
+        return new Entry(content, strongEtag(content), lastModified, HTTP_DATE.format(lastModified));
+    }
+
+    private synchronized void put(Path file, Entry entry, long loadedGeneration) {
+        if (loadedGeneration != generation) {
+            return;
+        }
+        Entry previous = entries.put(file, entry);
+        if (previous != null) {
+            size -= previous.content().length;
+        }
+        size += entry.content().length;
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (size > maxBytes && eldest.hasNext()) {
+            size -= eldest.next().content().length;
+            eldest.remove();
+        }
+    }
+
+    // changed 와 그 아래 경로의 항목을 지운다
+    private synchronized void invalidate(Path changed) {
+        generation++;
+        Iterator<Map.Entry<Path, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, Entry> entry = it.next();
+            if (entry.getKey().startsWith(changed)) {
+                size -= entry.getValue().content().length;
+                it.remove();
+            }
+        }
+    }
+
+    private synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+        size = 0;
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    private void watch() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watcher.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = watchedDirs.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || dir == null) {
+                    invalidateAll();
+                    continue;
+                }
+                Path changed = dir.resolve((Path) event.context());
+                invalidate(changed);
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(changed)) {
+                    try {
+                        registerAll(watcher, changed);
+                    } catch (IOException e) {
+                        logger.warn("Failed to watch {}", changed, e);
+                    }
+                }
+            }
+            if (!key.reset()) {
+                watchedDirs.remove(key);
+            }
+        }
+    }
+
+    private void registerAll(WatchService watchService, Path root) throws IOException {
+        try (Stream<Path> dirs = Files.walk(root)) {
+            for (Path dir : (Iterable<Path>) dirs.filter(Files::isDirectory)::iterator) {
+                WatchKey key = dir.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                watchedDirs.put(key, dir);
+            }
+        }
+    }
+
+    private static String strongEtag(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            return "\"" + HexFormat.of().formatHex(digest, 0, 16) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(watcher);
+    }
+
+    private static void closeQuietly(WatchService watchService) {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.debug("Error Closing {}", watchService, e);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package http.handler;
+
+import http.Compression;
+import http.Context;
+import http.HttpRequest;
+import http.HttpResponse;
+import http.HttpStatus;
+import http.MIME;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+// prefix 아래 요청을 root 디렉터리의 파일로 응답한다. 작은 파일은 메모리 캐시에서 보내고,
+// 큰 파일은 힙에 읽지 않고 FileChannel.transferTo 로 보낸다. ETag 나 날짜가 맞는 조건부 요청에는 304 로 응답한다.
+// 옆에 미리 압축한 .gz 파일이 있으면 gzip 을 받는 클라이언트에게 그 파일을 보낸다.
+// HEAD 는 GET 과 같은 응답을 만들고 서버가 바디를 빼고 보낸다. 다른 메소드는 405 로 응답한다
+public class StaticFileHandler implements Handler, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(StaticFileHandler.class);
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+    private static final String INDEX_FILE = "index.html";
+    private static final String ALLOWED_METHODS = "GET, HEAD";
+
+    private final String prefix;
+    private final Path root;
+    private final StaticFileCache cache;
+
+    // cacheSize 는 메모리에 둘 파일 내용의 전체 바이트 수. 0 이면 캐시하지 않는다
+    public StaticFileHandler(String prefix, Path root, long cacheSize) {
+        this.prefix = prefix;
+        this.root = root.toAbsolutePath().normalize();
+        this.cache = new StaticFileCache(this.root, cacheSize);
+    }
+
+    @Override
+    public void handle(Context ctx) {
+        HttpResponse res = ctx.response();
+        String method = ctx.request().getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            res.setStatus(HttpStatus.METHOD_NOT_ALLOWED)
+                    .addHeader("Allow", ALLOWED_METHODS);
+            return;
+        }
+
+        Path file = resolve(ctx.request().getPath());
+        if (file == null) {
+            res.setStatus(HttpStatus.NOT_FOUND);
+            return;
+        }
+
+        try {
+            StaticFileCache.Entry entry = cache.get(file);
+            String etag = entry.etag();
+
+            // 미리 압축해 둔 .gz 파일이 있으면 gzip 을 받는 클라이언트에게 그대로 보낸다
+            Path gzipFile = file.resolveSibling(file.getFileName() + ".gz");
+            StaticFileCache.Entry gzipEntry = null;
+            if (Files.isRegularFile(gzipFile)) {
+                res.addHeader("Vary", "Accept-Encoding");
+                String encoding = Compression.negotiate(ctx.request().getHeader("Accept-Encoding").orElse(null));
+                if (Compression.GZIP.equals(encoding)) {
+                    gzipEntry = cache.get(gzipFile);
+                    etag = Compression.etag(etag, Compression.GZIP);
+                }
+            }
+
+            // 304 에도 Content-Type 을 보내야 서버 압축이 200 과 같은 Vary 와 ETag 를 붙인다
+            res.addHeader("ETag", etag)
+                    .addHeader("Last-Modified", entry.lastModifiedText())
+                    .addHeader("Content-Type", contentType(file));
+            if (isNotModified(ctx.request(), entry)) {
+                res.setStatus(HttpStatus.NOT_MODIFIED);
+                return;
+            }
+
+            res.setStatus(HttpStatus.OK);
+            if (gzipEntry != null) {
+                res.addHeader("Content-Encoding", Compression.GZIP);
+                file = gzipFile;
+                entry = gzipEntry;
+            }
+            if (entry.content() != null) {
+                res.setBody(entry.content());
+            } else {
+                res.setBody(file);
+            }
+        } catch (IOException e) {
+            logger.error("Failed to load static file {}", file, e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // If-None-Match 가 있으면 ETag 로만 판단하고, 없을 때만 If-Modified-Since 를 본다
+    private static boolean isNotModified(HttpRequest req, StaticFileCache.Entry entry) {
+        String ifNoneMatch = req.getHeader("If-None-Match").orElse(null);
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || Compression.stripEncoding(tag).equals(entry.etag())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        String ifModifiedSince = req.getHeader("If-Modified-Since").orElse(null);
+        if (ifModifiedSince == null) {
+            return false;
+        }
+        try {
+            Instant since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return !entry.lastModified().isAfter(since);
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void close() {
+        cache.close();
+    }
+
+    // root 밖을 가리키는 경로(../ 등)는 null 을 반환한다
+    private Path resolve(String path) {
+        String relative = path.substring(Math.min(prefix.length(), path.length()));
+        while (relative.startsWith("/")) {
+            relative = relative.substring(1);
+        }
+
+        Path file;
+        try {
+            file = root.resolve(relative).normalize();
+        } catch (InvalidPathException e) {
+            return null;
+        }
+        if (!file.startsWith(root)) {
+            return null;
+        }
+        if (Files.isDirectory(file)) {
+            file = file.resolve(INDEX_FILE);
+        }
+        return Files.isRegularFile(file) ? file : null;
+    }
+
+    private static String contentType(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String type = dot == -1 ? null : MIME.getMIMEType(name.substring(dot + 1).toLowerCase());
+        return type != null ? type : DEFAULT_CONTENT_TYPE;
+    }
+}
@@ -0,0 +1,106 @@
+package http.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// HDR 히스토그램처럼 2의 거듭제곱 구간마다 같은 수의 칸을 두는 지연 시간 히스토그램(마이크로초).
+// 칸 너비가 구간 시작값의 1/8 이라 어떤 값이든 12.5% 안쪽 오차로 센다.
+// 스레드마다 정해진 줄(stripe)의 칸을 원자적으로 올리므로 잠금이 없고, 여러 스레드가 같은 칸을 두고 다투지 않는다
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // 2^28µs(약 268초) 이상은 마지막 칸에 넣는다
+    private static final int MAX_EXPONENT = 27;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    // 줄마다 칸 뒤에 나노초 합계를 둔다
+    private static final int SUM = BUCKETS;
+    private static final int STRIPES = stripes();
+
+    private final AtomicLongArray[] stripes = new AtomicLongArray[STRIPES];
+
+    public LatencyHistogram() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS + 1);
+        }
+    }
+
+    public void record(long nanos) {
+        long id = Thread.currentThread().getId();
+        AtomicLongArray stripe = stripes[(int) (id ^ (id >>> 16)) & (STRIPES - 1)];
+        stripe.getAndIncrement(index(Math.max(nanos, 0) / 1000));
+        stripe.getAndAdd(SUM, nanos);
+    }
+
+    // 칸마다 센 수. 기록 중에 읽으면 칸끼리는 조금 어긋날 수 있다
+    public long[] counts() {
+        long[] counts = new long[BUCKETS];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+        }
+        return counts;
+    }
+
+    public long count() {
+        long count = 0;
+        for (long c : counts()) {
+            count += c;
+        }
+        return count;
+    }
+
+    public long sumNanos() {
+        long sum = 0;
+        for (AtomicLongArray stripe : stripes) {
+            sum += stripe.get(SUM);
+        }
+        return sum;
+    }
+
+    // quantile(0~1) 번째 값이 든 칸의 상한(µs). 기록이 없으면 0
+    public long valueAtQuantile(double quantile) {
+        long[] counts = counts();
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    static int index(long micros) {
+        long value = Math.min(micros, MAX_VALUE);
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    // index 칸에 드는 값의 상한(µs, 포함하지 않음)
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index + 1;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+        return (sub + 1) << shift;
+    }
+
+    private static int stripes() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        return Integer.highestOneBit(Math.max(1, processors - 1)) << 1;
+    }
+}
@@ -0,0 +1,137 @@
+package http.metrics;
+
+import http.Context;
+import http.HttpStatus;
+import http.handler.Handler;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+// 라우트와 상태 코드 종류(2xx, 4xx 등)마다 지연 시간 히스토그램을 두고, 게이지와 함께 Prometheus 텍스트 형식으로 내보낸다.
+// 핸들러로 등록하면 그 경로에서 내보낸다. 기록은 맵 조회 두 번과 원자적 덧셈 두 번이다
+public class Metrics implements Handler {
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    // 라우트에 맞지 않은 요청(404)의 route 라벨
+    public static final String UNMATCHED = "unmatched";
+    private static final int STATUS_CLASSES = 5;
+    // Prometheus 로 내보낼 le 경계(초). 히스토그램 칸 경계와 맞지 않으면 상한이 경계 이하인 칸까지만 센다
+    private static final double[] BOUNDS = {0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    // le 라벨 값. double 을 그대로 쓰면 5.0E-4 처럼 지수 표기가 나오므로 소수로 적는다. 합계도 같은 방식으로 적는다
+    private static final String[] BOUND_LABELS = new String[BOUNDS.length];
+
+    static {
+        for (int i = 0; i < BOUNDS.length; i++) {
+            BOUND_LABELS[i] = BigDecimal.valueOf(BOUNDS[i]).stripTrailingZeros().toPlainString();
+        }
+    }
+
+    // type 은 Prometheus TYPE 으로 내보낼 gauge 또는 counter
+    private record Gauge(String help, String type, LongSupplier value) {
+    }
+
+    // 메서드 -> 라우트 -> 상태 코드 종류. 요청마다 문자열을 만들지 않도록 두 단계로 찾는다
+    private final Map<String, Map<String, AtomicReferenceArray<LatencyHistogram>>> routes = new ConcurrentHashMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+
+    public void record(String method, String route, int status, long nanos) {
+        histogram(knownMethod(method), route, status).record(nanos);
+    }
+
+    // 없으면 만든다
+    public LatencyHistogram histogram(String method, String route, int status) {
+        Map<String, AtomicReferenceArray<LatencyHistogram>> byRoute = routes.get(method);
+        if (byRoute == null) {
+            byRoute = routes.computeIfAbsent(method, k -> new ConcurrentHashMap<>());
+        }
+        AtomicReferenceArray<LatencyHistogram> byClass = byRoute.get(route);
+        if (byClass == null) {
+            byClass = byRoute.computeIfAbsent(route, k -> new AtomicReferenceArray<>(STATUS_CLASSES));
+        }
+        int statusClass = Math.min(Math.max(status / 100, 1), STATUS_CLASSES) - 1;
+        LatencyHistogram histogram = byClass.get(statusClass);
+        if (histogram == null) {
+            byClass.compareAndSet(statusClass, null, new LatencyHistogram());
+            histogram = byClass.get(statusClass);
+        }
+        return histogram;
+    }
+
+    // 내보낼 때마다 value 를 읽는다. 같은 이름이면 바꾼다
+    public void gauge(String name, String help, LongSupplier value) {
+        gauges.put(name, new Gauge(help, "gauge", value));
+    }
+
+    // 줄지 않는 값. 이름은 _total 로 끝나게 짓는다
+    public void counter(String name, String help, LongSupplier value) {
+        gauges.put(name, new Gauge(help, "counter", value));
+    }
+
+    public String scrape() {
+        StringBuilder out = new StringBuilder(1024);
+        gauges.forEach((name, gauge) -> {
+            out.append("# HELP ").append(name).append(' ').append(gauge.help()).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(gauge.type()).append('\n');
+            out.append(name).append(' ').append(gauge.value().getAsLong()).append('\n');
+        });
+
+        out.append("# HELP jin_request_duration_seconds Time from dispatch to the response being written\n");
+        out.append("# TYPE jin_request_duration_seconds histogram\n");
+        routes.forEach((method, byRoute) -> byRoute.forEach((route, byClass) -> {
+            for (int i = 0; i < STATUS_CLASSES; i++) {
+                LatencyHistogram histogram = byClass.get(i);
+                if (histogram != null) {
+                    String labels = "method=\"" + escape(method) + "\",route=\"" + escape(route) + "\",status=\"" + (i + 1) + "xx\"";
+                    writeHistogram(out, labels, histogram);
+                }
+            }
+        }));
+        return out.toString();
+    }
+
+    private static void writeHistogram(StringBuilder out, String labels, LatencyHistogram histogram) {
+        long[] counts = histogram.counts();
+        long cumulative = 0;
+        int bucket = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            long boundMicros = Math.round(BOUNDS[i] * 1_000_000);
+            while (bucket < counts.length && LatencyHistogram.upperBound(bucket) <= boundMicros) {
+                cumulative += counts[bucket++];
+            }
+            out.append("jin_request_duration_seconds_bucket{").append(labels).append(",le=\"").append(BOUND_LABELS[i]).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        long total = cumulative;
+        while (bucket < counts.length) {
+            total += counts[bucket++];
+        }
+        out.append("jin_request_duration_seconds_bucket{").append(labels).append(",le=\"+Inf\"} ").append(total).append('\n');
+        out.append("jin_request_duration_seconds_sum{").append(labels).append("} ")
+                .append(BigDecimal.valueOf(histogram.sumNanos(), 9).stripTrailingZeros().toPlainString()).append('\n');
+        out.append("jin_request_duration_seconds_count{").append(labels).append("} ").append(total).append('\n');
+    }
+
+    // 클라이언트가 보낸 아무 메서드나 라벨로 쓰면 시계열이 끝없이 늘어난다
+    private static String knownMethod(String method) {
+        return switch (method) {
+            case "GET", "POST", "PUT", "DELETE", "PATCH", "HEAD", "OPTIONS" -> method;
+            default -> "OTHER";
+        };
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    @Override
+    public void handle(Context ctx) {
+        ctx.response()
+                .setStatus(HttpStatus.OK)
+                .addHeader("Content-Type", CONTENT_TYPE)
+                .setBody(scrape().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,178 @@
+package http.router;
+
+import http.handler.Handler;
+
+import java.util.Arrays;
+
+// 라디크스 트리의 노드. 정적 자식은 공통 접두사로 압축한 간선(prefix)으로 잇고,
+// :param 자식과 *wildcard 자식은 따로 하나씩 둔다
+final class Node {
+    String prefix;
+    // 정적 자식의 첫 글자. children 과 같은 순서다
+    char[] indices = new char[0];
+    Node[] children = new Node[0];
+    Node param;
+    Node wildcard;
+    // 변수 자식이면 변수 이름
+    String name;
+    // 여기서 끝나는 라우트
+    Route route;
+
+    Node(String prefix) {
+        this.prefix = prefix;
+    }
+
+    // s 를 정적 간선으로 붙인다. 간선 중간에서 갈라지면 간선을 나눈다
+    Node insertStatic(String s) {
+        Node node = this;
+        while (!s.isEmpty()) {
+            int i = node.indexOf(s.charAt(0));
+            if (i == -1) {
+                return node.addChild(new Node(s));
+            }
+            Node child = node.children[i];
+            int common = commonPrefix(child.prefix, s);
+            if (common < child.prefix.length()) {
+                Node split = new Node(child.prefix.substring(0, common));
+                child.prefix = child.prefix.substring(common);
+                split.indices = new char[]{child.prefix.charAt(0)};
+                split.children = new Node[]{child};
+                node.children[i] = split;
+                child = split;
+            }
+            node = child;
+            s = s.substring(common);
+        }
+        return node;
+    }
+
+    Node insertParam(String paramName) {
+        if (param == null) {
+            param = new Node("");
+            param.name = paramName;
+        } else if (!param.name.equals(paramName)) {
+            throw new IllegalArgumentException("Conflicting path parameter :" + paramName + " and :" + param.name);
+        }
+        return param;
+    }
+
+    Node insertWildcard(String paramName) {
+        if (wildcard == null) {
+            wildcard = new Node("");
+            wildcard.name = paramName;
+        } else if (!wildcard.name.equals(paramName)) {
+            throw new IllegalArgumentException("Conflicting wildcard *" + paramName + " and *" + wildcard.name);
+        }
+        return wildcard;
+    }
+
+    // path 의 pos 부터 맞는 라우트를 찾는다. 정적 간선, :param, *wildcard 순으로 시도하고 막히면 되돌아간다.
+    // 변수 위치는 찾은 뒤 되돌아오면서 채우므로 찾았을 때만 배열을 만든다
+    RouteMatch find(String path, int pos, int depth) {
+        int length = path.length();
+        if (pos == length && route != null) {
+            return route.match(path);
+        }
+        if (pos < length) {
+            int i = indexOf(path.charAt(pos));
+            if (i != -1) {
+                Node child = children[i];
+                if (path.startsWith(child.prefix, pos)) {
+                    RouteMatch match = child.find(path, pos + child.prefix.length(), depth);
+                    if (match != null) {
+                        return match;
+                    }
+                }
+            }
+            if (param != null) {
+                int end = path.indexOf('/', pos);
+                if (end == -1) {
+                    end = length;
+                }
+                if (end > pos) {
+                    RouteMatch match = param.find(path, end, depth + 1);
+                    if (match != null) {
+                        match.bounds[depth * 2] = pos;
+                        match.bounds[depth * 2 + 1] = end;
+                        return match;
+                    }
+                }
+            }
+        }
+        if (wildcard != null && wildcard.route != null) {
+            RouteMatch match = wildcard.route.match(path);
+            match.bounds[depth * 2] = pos;
+            match.bounds[depth * 2 + 1] = length;
+            return match;
+        }
+        return null;
+    }
+
+    // 정적 간선만 따라가며 route 가 있는 가장 깊은 노드의 라우트를 돌려준다 (가장 긴 접두사)
+    Route longestPrefix(String path) {
+        Node node = this;
+        int pos = 0;
+        Route longest = null;
+        while (true) {
+            if (node.route != null) {
+                longest = node.route;
+            }
+            if (pos == path.length()) {
+                return longest;
+            }
+            int i = node.indexOf(path.charAt(pos));
+            if (i == -1 || !path.startsWith(node.children[i].prefix, pos)) {
+                return longest;
+            }
+            node = node.children[i];
+            pos += node.prefix.length();
+        }
+    }
+
+    private int indexOf(char c) {
+        for (int i = 0; i < indices.length; i++) {
+            if (indices[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Node addChild(Node child) {
+        indices = Arrays.copyOf(indices, indices.length + 1);
+        indices[indices.length - 1] = child.prefix.charAt(0);
+        children = Arrays.copyOf(children, children.length + 1);
+        children[children.length - 1] = child;
+        return child;
+    }
+
+    private static int commonPrefix(String a, String b) {
+        int max = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < max && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    // 트리에 등록된 라우트
+    static final class Route {
+        final Handler handler;
+        final String[] names;
+        // 등록한 경로 그대로. 메트릭 라벨로 쓴다
+        final String pattern;
+        // 변수가 없는 라우트는 결과를 미리 만들어 두고 같이 쓴다
+        private final RouteMatch shared;
+
+        Route(Handler handler, String[] names, String pattern) {
+            this.handler = handler;
+            this.names = names;
+            this.pattern = pattern;
+            this.shared = names.length == 0 ? new RouteMatch(handler, names, pattern, null, null) : null;
+        }
+
+        RouteMatch match(String path) {
+            return shared != null ? shared : new RouteMatch(handler, names, pattern, path, new int[names.length * 2]);
+        }
+    }
+}
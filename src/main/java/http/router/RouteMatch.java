@@ -0,0 +1,40 @@
+package http.router;
+
+import http.handler.Handler;
+
+// 경로에 맞은 핸들러와 경로 변수. 변수 값은 요청 경로의 위치만 들고 있다가 꺼낼 때 잘라낸다
+public final class RouteMatch {
+    private final Handler handler;
+    private final String[] names;
+    private final String pattern;
+    private final String path;
+    // 변수마다 [시작, 끝) 위치
+    final int[] bounds;
+
+    RouteMatch(Handler handler, String[] names, String pattern, String path, int[] bounds) {
+        this.handler = handler;
+        this.names = names;
+        this.pattern = pattern;
+        this.path = path;
+        this.bounds = bounds;
+    }
+
+    public Handler getHandler() {
+        return handler;
+    }
+
+    // 등록한 경로(/users/:id 등). 정적 파일 라우트는 접두사
+    public String getPattern() {
+        return pattern;
+    }
+
+    // :name 이나 *name 에 맞은 값. 없는 이름이면 null
+    public String getParam(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return path.substring(bounds[i * 2], bounds[i * 2 + 1]);
+            }
+        }
+        return null;
+    }
+}
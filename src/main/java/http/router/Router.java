@@ -1,54 +1,313 @@
 package http.router;
 
 import http.handler.Handler;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import http.handler.Middleware;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
+// 메서드마다 라디크스 트리를 두고 요청 경로 길이에 비례하는 시간에 핸들러를 찾는다.
+// 경로에는 /users/:id 처럼 한 세그먼트에 맞는 변수와 /files/*path 처럼 나머지 전부에 맞는 변수를 쓸 수 있다.
+// 라우트에 없으면 staticFiles 로 등록한 접두사 중 가장 긴 것에 맞는 핸들러를 쓴다.
+//
+// 등록한 라우트는 바꿀 때마다 새 RouteTable 로 컴파일해 한 번에 바꿔 끼운다(copy-on-write).
+// 조회는 volatile 필드 하나만 읽고 그 뒤로는 바뀌지 않는 구조만 따라가므로 잠금이 없고,
+// 서버가 요청을 받는 중에 라우트를 더하거나 빼도 조회가 깨지지 않는다.
+//
+// 미들웨어도 컴파일할 때 라우트마다 맞는 것만 골라 핸들러 하나로 미리 이어 둔다.
+// 요청마다 목록을 훑거나 체인 객체를 만들지 않고, 맞은 라우트의 핸들러를 부르면 체인 전체가 돈다.
+// /:section/report 나 staticFiles("/") 처럼 접두사 안팎의 요청을 함께 받는 라우트에서만 요청 경로를 보고 건다
 public class Router {
-    private static final Logger logger = LoggerFactory.getLogger(Router.class);
+    // 경로가 prefix 아래인 라우트에만 거는 미들웨어. prefix 가 "/" 면 모든 라우트에 건다
+    private record Use(String prefix, Middleware middleware) {
+        boolean appliesTo(String path) {
+            if (prefix.equals("/") || path.equals(prefix)) {
+                return true;
+            }
+            return path.startsWith(prefix.endsWith("/") ? prefix : prefix + "/");
+        }
 
-    private final Map<String, Map<String, Handler>> routes;
-    private final Map<String, Handler> staticRoutes;
+        // 라우트에 맞는 요청이 모두 prefix 아래이면 true. 경로 변수 앞의 고정된 부분만으로 정해진다
+        boolean appliesToAll(String pattern) {
+            return appliesTo(pattern.substring(0, nextParam(pattern, 0)));
+        }
 
+        // 라우트에 맞는 요청 중 일부가 prefix 아래일 수 있으면 true. 고정된 부분이 prefix 를 덮는 경우다
+        boolean appliesToSome(String pattern) {
+            String fixed = pattern.substring(0, nextParam(pattern, 0));
+            return fixed.length() < pattern.length() && (prefix + "/").startsWith(fixed);
+        }
 
-    public Router() {
-        routes = new ConcurrentHashMap<>();
-        staticRoutes = new ConcurrentHashMap<>();
+        // staticFiles 는 접두사로 시작하는 모든 경로를 받으므로 prefix 가 mount 아래이거나 mount 가 prefix 아래이면 요청을 봐야 한다
+        boolean appliesToMount(String mount) {
+            return appliesTo(mount) || prefix.startsWith(mount);
+        }
     }
 
 
-    public void addRoute(String method, String path, Handler handler) {
-        routes.computeIfAbsent(method, k -> new HashMap<>()).put(path, handler);
+    // 등록 순서대로 둔 라우트 정의. 바꿀 때는 복사본을 고친 뒤 컴파일에 성공해야 바꿔 끼운다
+    private Map<String, Map<String, Handler>> routes = new LinkedHashMap<>();
+    private Map<String, Handler> staticRoutes = new LinkedHashMap<>();
+    // 등록 순서대로. 먼저 등록한 미들웨어가 바깥에서 돈다
+    private List<Use> middleware = List.of();
+    private volatile RouteTable table = RouteTable.compile(routes, staticRoutes, middleware);
+    // batch 안에서는 끝날 때 한 번만 컴파일한다
+    private int batchDepth;
+
+    public synchronized void addRoute(String method, String path, Handler handler) {
+        Map<String, Map<String, Handler>> next = copy(routes);
+        next.computeIfAbsent(method, k -> new LinkedHashMap<>()).put(path, handler);
+        publish(next, staticRoutes);
     }
 
-    public void staticFiles(String path, Handler staticHandler) {
-        staticRoutes.put(path, staticHandler);
+    // 없는 라우트면 false
+    public synchronized boolean removeRoute(String method, String path) {
+        Map<String, Handler> methodRoutes = routes.get(method);
+        if (methodRoutes == null || !methodRoutes.containsKey(path)) {
+            return false;
+        }
+        Map<String, Map<String, Handler>> next = copy(routes);
+        next.get(method).remove(path);
+        publish(next, staticRoutes);
+        return true;
+    }
+
+    public synchronized void staticFiles(String path, Handler staticHandler) {
+        Map<String, Handler> next = new LinkedHashMap<>(staticRoutes);
+        next.put(path, staticHandler);
+        publish(routes, next);
+    }
+
+    public synchronized boolean removeStaticFiles(String path) {
+        if (!staticRoutes.containsKey(path)) {
+            return false;
+        }
+        Map<String, Handler> next = new LinkedHashMap<>(staticRoutes);
+        next.remove(path);
+        publish(routes, next);
+        return true;
+    }
+
+    // prefix 아래 라우트(정적 파일 포함)에 미들웨어를 건다. 이미 등록한 라우트와 나중에 등록할 라우트 모두에 걸린다
+    public synchronized void use(String prefix, Middleware middleware) {
+        if (!prefix.startsWith("/")) {
+            throw new IllegalArgumentException("Middleware prefix must start with '/': " + prefix);
+        }
+        List<Use> next = new ArrayList<>(this.middleware);
+        next.add(new Use(prefix, middleware));
+        this.middleware = List.copyOf(next);
+        publish(routes, staticRoutes);
+    }
+
+    // 여러 변경을 모아 한 번에 반영한다. 조회하는 쪽은 변경 전이나 후의 라우트만 본다
+    public synchronized void batch(Consumer<Router> changes) {
+        Map<String, Map<String, Handler>> savedRoutes = routes;
+        Map<String, Handler> savedStaticRoutes = staticRoutes;
+        List<Use> savedMiddleware = middleware;
+        batchDepth++;
+        try {
+            changes.accept(this);
+            if (batchDepth == 1) {
+                table = RouteTable.compile(routes, staticRoutes, middleware);
+            }
+        } catch (RuntimeException e) {
+            // 하나라도 잘못되면 batch 전체를 버린다
+            routes = savedRoutes;
+            staticRoutes = savedStaticRoutes;
+            middleware = savedMiddleware;
+            throw e;
+        } finally {
+            batchDepth--;
+        }
+    }
+
+    // 등록된 라우트를 모두 지우고 routes 가 등록한 라우트로 한 번에 바꾼다. 미들웨어는 그대로 둔다
+    public synchronized void replaceRoutes(Consumer<Router> newRoutes) {
+        batch(router -> {
+            routes = new LinkedHashMap<>();
+            staticRoutes = new LinkedHashMap<>();
+            newRoutes.accept(router);
+        });
+    }
+
+    // 맞는 라우트가 없으면 null
+    public RouteMatch match(String method, String path) {
+        return table.match(method, path);
     }
 
     public Handler getHandlers(String method, String path) {
-        Map<String, Handler> methodRoutes = routes.get(method);
-        if (methodRoutes != null && methodRoutes.containsKey(path)) {
-            return methodRoutes.get(path);
+        RouteMatch match = match(method, path);
+        return match == null ? null : match.getHandler();
+    }
+
+    private void publish(Map<String, Map<String, Handler>> nextRoutes, Map<String, Handler> nextStaticRoutes) {
+        // 잘못된 라우트면 여기서 예외가 나고 기존 라우트가 그대로 남는다
+        RouteTable compiled = batchDepth == 0 ? RouteTable.compile(nextRoutes, nextStaticRoutes, middleware) : null;
+        routes = nextRoutes;
+        staticRoutes = nextStaticRoutes;
+        if (compiled != null) {
+            table = compiled;
+        }
+    }
+
+    private static Map<String, Map<String, Handler>> copy(Map<String, Map<String, Handler>> routes) {
+        Map<String, Map<String, Handler>> copy = new LinkedHashMap<>();
+        routes.forEach((method, methodRoutes) -> copy.put(method, new LinkedHashMap<>(methodRoutes)));
+        return copy;
+    }
+
+    // 컴파일한 라우트. 만든 뒤에는 바꾸지 않는다
+    private static final class RouteTable {
+        // 변수가 없는 라우트는 경로를 그대로 키로 찾는다
+        private final Map<String, Map<String, RouteMatch>> exact;
+        private final Map<String, Node> trees;
+        private final Node staticTree;
+
+        private RouteTable(Map<String, Map<String, RouteMatch>> exact, Map<String, Node> trees, Node staticTree) {
+            this.exact = exact;
+            this.trees = trees;
+            this.staticTree = staticTree;
         }
 
-        // 정적 파일 라우트 확인
-        for (Map.Entry<String, Handler> entry : staticRoutes.entrySet()) {
-            if (path.startsWith(entry.getKey())) {
-                String resourcePath = entry.getValue() + path;
+        static RouteTable compile(Map<String, Map<String, Handler>> routes, Map<String, Handler> staticRoutes, List<Use> middleware) {
+            Map<String, Map<String, RouteMatch>> exact = new HashMap<>();
+            Map<String, Node> trees = new HashMap<>();
+            routes.forEach((method, methodRoutes) -> methodRoutes.forEach((path, route) -> {
+                Handler handler = chain(middleware, path, route, false);
+                if (nextParam(path, 0) == path.length()) {
+                    exact.computeIfAbsent(method, k -> new HashMap<>())
+                            .put(path, new Node.Route(handler, new String[0], path).match(path));
+                } else {
+                    insert(trees.computeIfAbsent(method, k -> new Node("")), path, handler);
+                }
+            }));
+
+            Node staticTree = new Node("");
+            staticRoutes.forEach((path, handler) ->
+                    staticTree.insertStatic(path).route = new Node.Route(chain(middleware, path, handler, true), new String[0], path));
+            return new RouteTable(exact, trees, staticTree);
+        }
 
-                try {
-                    return entry.getValue();
-                } catch (Exception e) {
-                    logger.error("Failed to load static file {}", resourcePath, e);
-                    return null;
+        // path 에 맞는 미들웨어로 handler 를 안쪽부터 감싼다. 맞는 미들웨어가 없으면 handler 를 그대로 쓴다.
+        // 라우트에 맞는 요청 중 일부만 prefix 아래이면 요청 경로를 보고 미들웨어를 부를지 정한다
+        private static Handler chain(List<Use> middleware, String path, Handler handler, boolean mount) {
+            Handler next = handler;
+            for (int i = middleware.size() - 1; i >= 0; i--) {
+                Use use = middleware.get(i);
+                Middleware current = use.middleware();
+                Handler inner = next;
+                if (use.prefix().equals("/") || !mount && use.appliesToAll(path)) {
+                    next = ctx -> current.handle(ctx, inner);
+                } else if (mount ? use.appliesToMount(path) : use.appliesToSome(path)) {
+                    next = ctx -> {
+                        if (use.appliesTo(normalize(ctx.request().getPath()))) {
+                            current.handle(ctx, inner);
+                        } else {
+                            inner.handle(ctx);
+                        }
+                    };
                 }
             }
+            return next;
         }
 
-        return null;
+        RouteMatch match(String method, String path) {
+            RouteMatch match = find(method, path);
+            // HEAD 라우트가 없으면 GET 라우트가 응답하고 서버가 바디를 뺀다
+            if (match == null && "HEAD".equals(method)) {
+                match = find("GET", path);
+            }
+            if (match != null) {
+                return match;
+            }
+
+            Node.Route staticRoute = staticTree.longestPrefix(path);
+            return staticRoute == null ? null : staticRoute.match(path);
+        }
+
+        private RouteMatch find(String method, String path) {
+            Map<String, RouteMatch> methodRoutes = exact.get(method);
+            if (methodRoutes != null) {
+                RouteMatch match = methodRoutes.get(path);
+                if (match != null) {
+                    return match;
+                }
+            }
+
+            Node root = trees.get(method);
+            return root == null ? null : root.find(path, 0, 0);
+        }
+
+        private static void insert(Node node, String path, Handler handler) {
+            List<String> names = new ArrayList<>();
+
+            int pos = 0;
+            while (pos < path.length()) {
+                int param = nextParam(path, pos);
+                node = node.insertStatic(path.substring(pos, param));
+                if (param == path.length()) {
+                    break;
+                }
+                int end = path.indexOf('/', param);
+                if (end == -1) {
+                    end = path.length();
+                }
+                String name = path.substring(param + 1, end);
+                if (name.isEmpty()) {
+                    throw new IllegalArgumentException("Empty path parameter name: " + path);
+                }
+                if (names.contains(name)) {
+                    throw new IllegalArgumentException("Duplicate path parameter " + name + ": " + path);
+                }
+                names.add(name);
+                if (path.charAt(param) == '*') {
+                    if (end != path.length()) {
+                        throw new IllegalArgumentException("Wildcard must be the last segment: " + path);
+                    }
+                    node = node.insertWildcard(name);
+                } else {
+                    node = node.insertParam(name);
+                }
+                pos = end;
+            }
+
+            node.route = new Node.Route(handler, names.toArray(new String[0]), path);
+        }
+    }
+
+    // 빈 세그먼트와 . , .. 를 정리한다. /x/../admin 이나 //admin 으로 접두사 검사를 비켜 가지 못하게 한다
+    static String normalize(String path) {
+        if (path.indexOf("//") == -1 && path.indexOf("/.") == -1) {
+            return path;
+        }
+        List<String> segments = new ArrayList<>();
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty() || segment.equals(".")) {
+                continue;
+            }
+            if (segment.equals("..")) {
+                if (!segments.isEmpty()) {
+                    segments.remove(segments.size() - 1);
+                }
+            } else {
+                segments.add(segment);
+            }
+        }
+        return "/" + String.join("/", segments);
+    }
+
+    // 세그먼트 맨 앞의 : 나 * 위치. 없으면 path 길이
+    private static int nextParam(String path, int from) {
+        for (int i = from; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if ((c == ':' || c == '*') && (i == 0 || path.charAt(i - 1) == '/')) {
+                return i;
+            }
+        }
+        return path.length();
     }
 }
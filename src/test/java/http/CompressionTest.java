@@ -0,0 +1,149 @@
+package http;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CompressionTest {
+
+    private static final byte[] HTML = "<p>jin</p>".repeat(500).getBytes();
+
+    @Test
+    @DisplayName("Accept-Encoding 협상")
+    void testNegotiate() {
+        assertEquals("gzip", Compression.negotiate("gzip, deflate, br"));
+        assertEquals("deflate", Compression.negotiate("gzip;q=0, deflate"));
+        assertEquals("gzip", Compression.negotiate("*"));
+        // * 는 목록에 이름이 없는 인코딩에만 쓴다
+        assertEquals("deflate", Compression.negotiate("gzip;q=0, *"));
+        assertNull(Compression.negotiate("gzip;q=0, deflate;q=0, *"));
+        assertNull(Compression.negotiate("br"));
+        assertNull(Compression.negotiate(null));
+    }
+
+    @Test
+    @DisplayName("gzip 으로 압축하고 Vary, Content-Encoding, ETag 를 맞춤")
+    void testGzip() throws IOException {
+        HttpResponse res = html().addHeader("ETag", "\"abc\"");
+
+        new Compression().apply(request("gzip"), res);
+
+        assertEquals("gzip", res.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", res.getHeader("Vary"));
+        assertEquals("\"abc-gzip\"", res.getHeader("ETag"));
+        assertEquals(String.valueOf(res.getBody().length), res.getHeader("Content-Length"));
+        assertArrayEquals(HTML, new GZIPInputStream(new ByteArrayInputStream(res.getBody())).readAllBytes());
+    }
+
+    @Test
+    @DisplayName("deflate 로 압축")
+    void testDeflate() throws IOException {
+        HttpResponse res = html();
+
+        new Compression().apply(request("deflate"), res);
+
+        assertEquals("deflate", res.getHeader("Content-Encoding"));
+        assertArrayEquals(HTML, new InflaterInputStream(new ByteArrayInputStream(res.getBody())).readAllBytes());
+    }
+
+    @Test
+    @DisplayName("강한 ETag 가 같으면 압축 결과를 재사용")
+    void testCachedByEtag() {
+        Compression compression = new Compression();
+        HttpResponse first = html().addHeader("ETag", "\"abc\"");
+        HttpResponse second = html().addHeader("ETag", "\"abc\"");
+
+        compression.apply(request("gzip"), first);
+        compression.apply(request("gzip"), second);
+
+        assertSame(first.getBody(), second.getBody());
+    }
+
+    @Test
+    @DisplayName("다른 URL 이 같은 ETag 를 써도 다른 바디의 압축 결과를 돌려주지 않음")
+    void testCacheChecksBody() throws IOException {
+        Compression compression = new Compression();
+        byte[] other = "<p>other</p>".repeat(500).getBytes();
+        HttpResponse first = html().addHeader("ETag", "\"1\"");
+        HttpResponse second = new HttpResponse(new ByteArrayOutputStream())
+                .addHeader("Content-Type", "text/html")
+                .addHeader("ETag", "\"1\"")
+                .setBody(other);
+
+        compression.apply(request("gzip"), first);
+        compression.apply(request("gzip"), second);
+
+        assertArrayEquals(HTML, new GZIPInputStream(new ByteArrayInputStream(first.getBody())).readAllBytes());
+        assertArrayEquals(other, new GZIPInputStream(new ByteArrayInputStream(second.getBody())).readAllBytes());
+    }
+
+    @Test
+    @DisplayName("압축한 ETag 로 온 조건부 요청의 304 에 같은 ETag 와 Vary 를 붙임")
+    void testNotModified() {
+        HttpResponse res = new HttpResponse(new ByteArrayOutputStream())
+                .setStatus(HttpStatus.NOT_MODIFIED)
+                .addHeader("Content-Type", "text/html")
+                .addHeader("ETag", "\"abc\"");
+
+        new Compression().apply(request("gzip", "\"abc-gzip\""), res);
+
+        assertEquals("\"abc-gzip\"", res.getHeader("ETag"));
+        assertEquals("Accept-Encoding", res.getHeader("Vary"));
+        assertNull(res.getHeader("Content-Encoding"));
+    }
+
+    @Test
+    @DisplayName("작은 바디, 목록에 없는 타입, gzip 을 받지 않는 요청은 압축하지 않음")
+    void testSkip() {
+        HttpResponse small = new HttpResponse(new ByteArrayOutputStream())
+                .addHeader("Content-Type", "text/html")
+                .setBody("<p>jin</p>".getBytes());
+        new Compression().apply(request("gzip"), small);
+        assertNull(small.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", small.getHeader("Vary"));
+
+        HttpResponse image = new HttpResponse(new ByteArrayOutputStream())
+                .addHeader("Content-Type", "image/png")
+                .setBody(HTML);
+        new Compression().apply(request("gzip"), image);
+        assertNull(image.getHeader("Content-Encoding"));
+        assertNull(image.getHeader("Vary"));
+
+        HttpResponse identity = html();
+        new Compression().apply(request(null), identity);
+        assertSame(HTML, identity.getBody());
+    }
+
+    private static HttpResponse html() {
+        return new HttpResponse(new ByteArrayOutputStream())
+                .addHeader("Content-Type", "text/html; charset=utf-8")
+                .setBody(HTML);
+    }
+
+    private static HttpRequest request(String acceptEncoding) {
+        return request(acceptEncoding, null);
+    }
+
+    private static HttpRequest request(String acceptEncoding, String ifNoneMatch) {
+        Map<String, String> headers = new HashMap<>();
+        if (acceptEncoding != null) {
+            headers.put("Accept-Encoding", acceptEncoding);
+        }
+        if (ifNoneMatch != null) {
+            headers.put("If-None-Match", ifNoneMatch);
+        }
+        return new HttpRequest("GET", "HTTP/1.1", "", "/", new HashMap<>(), headers, new HashMap<>(), new HashMap<>());
+    }
+}
@@ -0,0 +1,287 @@
+package http;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HttpRequestParserTest {
+
+    private static final String FORM_REQUEST = "POST /users?page=1 HTTP/1.1\r\n"
+            + "Host: localhost:8080\r\n"
+            + "Content-Type: application/x-www-form-urlencoded\r\n"
+            + "Cookie: sid=abc; theme=dark\r\n"
+            + "Content-Length: 48\r\n"
+            + "\r\n"
+            + "userId=javajigi&name=%EB%B0%95%EC%9E%AC%EC%84%B1";
+
+    @Test
+    @DisplayName("요청 라인, 헤더, 쿠키, 쿼리, 폼 바디 파싱")
+    void testParseFormRequest() throws IOException {
+        HttpRequest request = new HttpRequestParser().read(new ByteArrayInputStream(FORM_REQUEST.getBytes()));
+
+        assertEquals("POST", request.getMethod());
+        assertEquals("/users", request.getPath());
+        assertEquals("HTTP/1.1", request.getVersion());
+        assertEquals("localhost:8080", request.getHeader("Host").orElseThrow());
+        assertEquals("abc", request.getCookie("sid").orElseThrow());
+        assertEquals("dark", request.getCookie("theme").orElseThrow());
+        assertEquals("1", request.getQuery("page"));
+        assertEquals("javajigi", request.getQuery("userId"));
+        assertEquals("박재성", request.getQuery("name"));
+    }
+
+    @Test
+    @DisplayName("한 바이트씩 들어와도 같은 결과")
+    void testParseByteByByte() throws IOException {
+        InputStream oneByteAtATime = new ByteArrayInputStream(FORM_REQUEST.getBytes()) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+
+        HttpRequest request = new HttpRequestParser().read(oneByteAtATime);
+
+        assertEquals("/users", request.getPath());
+        assertEquals("박재성", request.getQuery("name"));
+    }
+
+    @Test
+    @DisplayName("연속된 요청은 남은 바이트에서 이어서 파싱")
+    void testParseBackToBackRequests() throws IOException {
+        String requests = "POST /echo HTTP/1.1\r\nContent-Length: 5\r\n\r\nhello"
+                + "GET /second HTTP/1.1\r\n\r\n";
+        HttpRequestParser parser = new HttpRequestParser();
+        InputStream is = new ByteArrayInputStream(requests.getBytes());
+
+        // 바디는 다음 요청을 읽기 전에 읽어야 한다
+        HttpRequest first = parser.read(is);
+        assertEquals("hello", first.getBody());
+        HttpRequest second = parser.read(is);
+
+        assertEquals("/second", second.getPath());
+        assertThrows(EOFException.class, () -> parser.read(is));
+    }
+
+    @Test
+    @DisplayName("헤더가 끝나지 않으면 요청을 만들지 않음")
+    void testIncompleteRequest() throws IOException {
+        HttpRequestParser parser = new HttpRequestParser();
+        parser.writableBuffer().put("GET / HTTP/1.1\r\nHost: local".getBytes());
+
+        assertNull(parser.parse());
+
+        parser.writableBuffer().put("host\r\n\r\n".getBytes());
+        assertEquals("localhost", parser.parse().getHeader("Host").orElseThrow());
+    }
+
+    @Test
+    @DisplayName("잘못된 Content-Length")
+    void testInvalidContentLength() {
+        String request = "POST / HTTP/1.1\r\nContent-Length: abc\r\n\r\n";
+
+        assertThrows(IOException.class, () -> new HttpRequestParser().read(new ByteArrayInputStream(request.getBytes())));
+    }
+
+    @Test
+    @DisplayName("잘못된 퍼센트 인코딩")
+    void testInvalidEncoding() throws IOException {
+        String path = "GET /%E HTTP/1.1\r\n\r\n";
+        assertThrows(IOException.class, () -> new HttpRequestParser().read(new ByteArrayInputStream(path.getBytes())));
+
+        // 쿼리는 처음 찾을 때 디코딩하므로 그때 400 으로 응답한다
+        String query = "GET /?q=%E HTTP/1.1\r\n\r\n";
+        HttpRequest request = new HttpRequestParser().read(new ByteArrayInputStream(query.getBytes()));
+        HttpException e = assertThrows(HttpException.class, () -> request.getQuery("q"));
+        assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+    }
+
+    @Test
+    @DisplayName("같은 이름의 쿼리와 폼 필드를 모두 꺼내고, 헤더는 대소문자 없이 찾음")
+    void testLazyHeadersAndMultiValuedQuery() throws IOException {
+        String request = "POST /search?tag=a&tag=b&q=jin HTTP/1.1\r\n"
+                + "content-type: application/x-www-form-urlencoded\r\n"
+                + "X-Trace:   abc  \r\n"
+                + "Cookie: sid=1; theme=dark\r\n"
+                + "Content-Length: 5\r\n\r\n"
+                + "tag=c";
+
+        HttpRequest parsed = new HttpRequestParser().read(new ByteArrayInputStream(request.getBytes()));
+
+        assertEquals("/search", parsed.getPath());
+        assertEquals("abc", parsed.getHeader("x-trace").orElseThrow());
+        assertEquals("dark", parsed.getCookie("theme").orElseThrow());
+        assertEquals("a", parsed.getQuery("tag"));
+        assertEquals(List.of("a", "b", "c"), parsed.getQueries("tag"));
+        assertEquals(List.of("jin"), parsed.getQueries("q"));
+        assertEquals(List.of(), parsed.getQueries("none"));
+    }
+
+    @Test
+    @DisplayName("같은 이름의 헤더를 온 순서대로 모두 돌려줌")
+    void testMultiValuedHeaders() throws IOException {
+        String request = "GET / HTTP/1.1\r\n"
+                + "accept: text/html\r\n"
+                + "X-Forwarded-For: 10.0.0.1\r\n"
+                + "ACCEPT: application/json\r\n"
+                + "x-tag: a\r\n"
+                + "X-Tag: b\r\n\r\n";
+
+        HttpRequest parsed = new HttpRequestParser().read(new ByteArrayInputStream(request.getBytes()));
+
+        assertEquals("text/html", parsed.getHeader("Accept").orElseThrow());
+        assertEquals(List.of("text/html", "application/json"), parsed.getHeaders("Accept"));
+        assertEquals(List.of("a", "b"), parsed.getHeaders("X-TAG"));
+        assertEquals("10.0.0.1", parsed.getHeader("x-forwarded-for").orElseThrow());
+        assertEquals(List.of(), parsed.getHeaders("Host"));
+    }
+
+    @Test
+    @DisplayName("버퍼를 밀어내도 헤더 원본이 남아 있음")
+    void testHeadersSurviveCompaction() throws IOException {
+        // 첫 요청의 바디를 다 읽으면 버퍼에는 둘째 요청의 앞부분만 남고, 긴 헤더가 버퍼를 넘게 만든다
+        String longValue = "v".repeat(10_000);
+        String requests = "GET /first HTTP/1.1\r\nX-A: 1\r\n\r\n"
+                + "GET /second HTTP/1.1\r\nX-Long: " + longValue + "\r\nX-B: 2\r\n\r\n";
+        HttpRequestParser parser = new HttpRequestParser();
+        InputStream in = new ByteArrayInputStream(requests.getBytes());
+
+        HttpRequest first = parser.read(in);
+        HttpRequest second = parser.read(in);
+
+        assertEquals("1", first.getHeader("X-A").orElseThrow());
+        assertEquals(longValue, second.getHeader("X-Long").orElseThrow());
+        assertEquals("2", second.getHeader("X-B").orElseThrow());
+    }
+
+    @Test
+    @DisplayName("chunked 바디를 스트림으로 읽고 다음 요청으로 이어감")
+    void testChunkedBodyStream() throws IOException {
+        String requests = "PUT /upload HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"
+                + "5\r\nhello\r\n7;ext=1\r\n, world\r\n0\r\nX-Trailer: 1\r\n\r\n"
+                + "GET /next HTTP/1.1\r\n\r\n";
+        HttpRequestParser parser = new HttpRequestParser();
+        InputStream is = new ByteArrayInputStream(requests.getBytes());
+
+        HttpRequest request = parser.read(is);
+        assertEquals("hello, world", new String(request.getBodyStream().readAllBytes()));
+        assertEquals("/next", parser.read(is).getPath());
+    }
+
+    @Test
+    @DisplayName("마지막 인코딩이 chunked 가 아닌 Transfer-Encoding 은 400, Content-Length 와 함께 오면 연결을 닫음")
+    void testTransferEncodingFraming() throws IOException {
+        for (String encoding : new String[]{"xchunked", "gzip,notchunked", "gzip", "chunked, gzip"}) {
+            String request = "POST /echo HTTP/1.1\r\nTransfer-Encoding: " + encoding + "\r\nContent-Length: 3\r\n\r\nabc";
+            HttpException e = assertThrows(HttpException.class,
+                    () -> new HttpRequestParser().read(new ByteArrayInputStream(request.getBytes())));
+            assertEquals(HttpStatus.BAD_REQUEST, e.getStatus());
+        }
+
+        String request = "POST /echo HTTP/1.1\r\nContent-Length: 100\r\nTransfer-Encoding: gzip, Chunked\r\n\r\n"
+                + "3\r\nabc\r\n0\r\n\r\n";
+        HttpRequest parsed = new HttpRequestParser().read(new ByteArrayInputStream(request.getBytes()));
+        assertEquals("abc", new String(parsed.getBodyStream().readAllBytes()));
+        assertFalse(parsed.isKeepAlive());
+    }
+
+    @Test
+    @DisplayName("큰 바디는 메모리에 모으지 않고 스트림으로 읽음")
+    void testLargeBodyStream() throws IOException {
+        int size = 5 * 1024 * 1024;
+        String head = "POST /ingest HTTP/1.1\r\nContent-Type: application/octet-stream\r\nContent-Length: " + size + "\r\n\r\n";
+        InputStream body = new InputStream() {
+            private int position;
+
+            @Override
+            public int read() {
+                return position < size ? (position++ % 251) : -1;
+            }
+        };
+        InputStream is = new SequenceInputStream(new ByteArrayInputStream(head.getBytes()), body);
+
+        HttpRequest request = new HttpRequestParser().read(is);
+        InputStream stream = request.getBodyStream();
+        long total = 0;
+        int b;
+        while ((b = stream.read()) != -1) {
+            assertEquals(total % 251, b);
+            total++;
+        }
+        assertEquals(size, total);
+    }
+
+    @Test
+    @DisplayName("MAX_REQUEST_SIZE 를 넘는 바디를 getBody() 로 읽으면 413")
+    void testBodyTooLarge() throws IOException {
+        int size = HttpRequest.MAX_REQUEST_SIZE + 1;
+        String request = "POST /echo HTTP/1.1\r\nContent-Length: " + size + "\r\n\r\n" + "a".repeat(size);
+
+        HttpRequest parsed = new HttpRequestParser().read(new ByteArrayInputStream(request.getBytes()));
+
+        HttpException e = assertThrows(HttpException.class, parsed::getBody);
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, e.getStatus());
+    }
+
+    @Test
+    @DisplayName("논블로킹 파싱은 chunked 바디를 모아서 반환")
+    void testParseChunkedBody() throws IOException {
+        HttpRequestParser parser = new HttpRequestParser();
+        parser.writableBuffer().put("POST /echo HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n3\r\nabc\r\n".getBytes());
+        assertNull(parser.parse());
+
+        parser.writableBuffer().put("0\r\n\r\n".getBytes());
+        assertEquals("abc", parser.parse().getBody());
+    }
+
+    @Test
+    @DisplayName("멀티파트 바디가 중간에 끊기면 임시 파일을 남기지 않음")
+    void testTruncatedMultipartLeavesNoFiles(@TempDir Path uploadDir) throws IOException {
+        String head = truncatedMultipart();
+
+        HttpRequestParser blocking = new HttpRequestParser(16, uploadDir);
+        assertThrows(EOFException.class, () -> blocking.read(new ByteArrayInputStream(head.getBytes())));
+        assertEquals(0, countFiles(uploadDir));
+
+        // 논블로킹 경로는 바디를 기다리는 중에 연결이 끊기면 close() 에서 지운다
+        HttpRequestParser nonBlocking = new HttpRequestParser(16, uploadDir);
+        nonBlocking.writableBuffer().put(head.getBytes());
+        assertNull(nonBlocking.parse());
+        assertEquals(1, countFiles(uploadDir));
+        nonBlocking.close();
+        assertEquals(0, countFiles(uploadDir));
+    }
+
+    // 임시 파일로 받을 만큼 큰 파일 파트를 보내다 끊긴 요청
+    private static String truncatedMultipart() {
+        String part = "--jin\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"a.bin\"\r\n"
+                + "\r\n"
+                + "x".repeat(1000);
+        return "POST /upload HTTP/1.1\r\n"
+                + "Content-Type: multipart/form-data; boundary=jin\r\n"
+                + "Content-Length: 4096\r\n"
+                + "\r\n"
+                + part;
+    }
+
+    private static long countFiles(Path dir) throws IOException {
+        try (var files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+}
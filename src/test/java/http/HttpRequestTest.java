@@ -10,10 +10,13 @@ import org.junit.jupiter.params.provider.MethodSource;
 
 import java.io.*;
 import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Random;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 class HttpRequestTest {
     InputStream is;
@@ -89,6 +92,19 @@ class HttpRequestTest {
         assertEquals("/", request.getPath());
     }
 
+    @Test
+    @DisplayName("생성자로 만든 요청의 쿠키")
+    void cookiesFromConstructedRequest() {
+        HttpRequest request = new HttpRequest("GET", "HTTP/1.1", null, "/", null,
+                Map.of("Cookie", "session=abc; theme=dark"), null, null);
+
+        assertEquals(Optional.of("abc"), request.getCookie("session"));
+        assertEquals(Optional.of("dark"), request.getCookie("theme"));
+        assertEquals(Optional.empty(), request.getCookie("missing"));
+        assertNull(request.getMultipartFile("file"));
+        request.release();
+    }
+
     @Test
     @DisplayName("멀티파트 요청 성능 테스트")
     @Disabled
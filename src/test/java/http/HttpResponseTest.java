@@ -7,8 +7,14 @@ import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.List;
 import java.util.Map;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 class HttpResponseTest {
 
     private static final int ITERATIONS = 100000;
@@ -105,6 +111,87 @@ class HttpResponseTest {
         System.out.println("Unbuffered Duration: " + unbufferedDuration / 100000 + " ms");
     }
 
+    @Test
+    @DisplayName("Content-Length 없이 스트림으로 쓰면 chunked 로 보냄")
+    void testChunkedBodyStream() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        HttpResponse response = new HttpResponse(output).setStatus(HttpStatus.OK);
+
+        OutputStream body = response.getBodyStream();
+        body.write("hello".getBytes());
+        body.flush();
+        // flush 하면 헤더와 첫 청크가 바로 나간다
+        assertTrue(output.toString().endsWith("\r\n\r\n5\r\nhello\r\n"));
+
+        body.write(", world".getBytes());
+        response.send();
+
+        String sent = output.toString();
+        assertTrue(sent.contains("Transfer-Encoding: chunked"));
+        assertTrue(sent.endsWith("5\r\nhello\r\n7\r\n, world\r\n0\r\n\r\n"));
+    }
+
+    @Test
+    @DisplayName("Content-Length 를 정해 두면 그 길이만큼만 쓸 수 있음")
+    void testFixedLengthBodyStream() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        HttpResponse response = new HttpResponse(output)
+                .setStatus(HttpStatus.OK)
+                .addHeader("Content-Length", "3");
+
+        OutputStream body = response.getBodyStream();
+        body.write("abc".getBytes());
+
+        assertThrows(IOException.class, () -> body.write('d'));
+        response.send();
+        assertTrue(output.toString().endsWith("\r\n\r\nabc"));
+        assertFalse(output.toString().contains("Transfer-Encoding"));
+    }
+
+    @Test
+    @DisplayName("상태 줄과 헤더를 공백 없이 CRLF 로 끝내고 Date 헤더를 붙임")
+    void testSerializedHead() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new HttpResponse(output)
+                .setStatus(HttpStatus.OK)
+                .addHeader("Content-Type", "text/plain")
+                .setBody("hi".getBytes())
+                .send();
+
+        String sent = output.toString();
+        assertTrue(sent.startsWith("HTTP/1.1 200 OK\r\n"));
+        assertTrue(sent.contains("\r\nContent-Type: text/plain\r\n"));
+        assertTrue(sent.matches("(?s).*\r\nDate: \\w{3}, \\d{2} \\w{3} \\d{4} \\d{2}:\\d{2}:\\d{2} GMT\r\n.*"));
+        assertFalse(sent.contains(" \r\n"));
+        assertTrue(sent.endsWith("\r\n\r\nhi"));
+    }
+
+    @Test
+    @DisplayName("헤더 이름은 대소문자를 가리지 않고, appendHeader 는 같은 이름을 한 줄 더 보냄")
+    void testHeaderTable() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        HttpResponse response = new HttpResponse(output)
+                .setStatus(HttpStatus.OK)
+                .addHeader("content-type", "text/plain")
+                .addHeader("Content-Type", "text/html")
+                .addHeader("X-Custom", "1")
+                .addHeader("x-custom", "2")
+                .appendHeader("Set-Cookie", "a=1")
+                .appendHeader("set-cookie", "b=2");
+
+        assertEquals("text/html", response.getHeader("CONTENT-TYPE"));
+        assertEquals("2", response.getHeader("X-CUSTOM"));
+        assertEquals(List.of("a=1", "b=2"), response.getHeaders("Set-Cookie"));
+
+        response.send();
+        String sent = output.toString();
+        // 자주 쓰는 이름은 정해진 표기로 나간다
+        assertTrue(sent.contains("\r\nContent-Type: text/html\r\n"));
+        assertFalse(sent.contains("text/plain"));
+        assertTrue(sent.contains("\r\nX-Custom: 2\r\n"));
+        assertTrue(sent.contains("\r\nSet-Cookie: a=1\r\nSet-Cookie: b=2\r\n"));
+    }
+
     void setResponse(HttpResponse response) {
         // 상태 코드 설정 (사용자 생성 성공을 가정)
         response.setStatus(HttpStatus.CREATED);
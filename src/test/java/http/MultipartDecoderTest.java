@@ -0,0 +1,173 @@
+package http;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MultipartDecoderTest {
+    private static final String BOUNDARY = "----WebKitFormBoundaryABC123";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("필드와 작은 파일은 메모리에서 처리하고, 경로가 필요하면 업로드 디렉터리에 씀")
+    void testSmallParts() throws IOException {
+        byte[] content = "hello jin".getBytes();
+        byte[] body = multipartBody(content);
+
+        Map<String, Object> result = decode(body, body.length, 1024);
+
+        assertEquals("This is a test file upload", result.get("description"));
+        File file = (File) result.get("file");
+        assertEquals("test.bin", file.getName());
+        assertEquals(content.length, file.getSize());
+        try (InputStream is = file.getInputStream()) {
+            assertArrayEquals(content, is.readAllBytes());
+        }
+        try (var files = Files.list(tempDir)) {
+            assertEquals(0, files.count());
+        }
+
+        // 경로를 달라고 하면 업로드 디렉터리에 내려쓴다
+        assertTrue(file.getPath().startsWith(tempDir));
+        assertArrayEquals(content, Files.readAllBytes(file.getPath()));
+        file.delete();
+    }
+
+    @Test
+    @DisplayName("한도를 넘는 파일은 임시 파일로 받고, 경계가 조각에 걸쳐도 찾음")
+    void testSpoolLargeFile() throws IOException {
+        byte[] content = new byte[200 * 1024];
+        new Random(1).nextBytes(content);
+        byte[] body = multipartBody(content);
+
+        // 경계가 여러 조각에 걸치도록 작게 나눠 넣는다
+        Map<String, Object> result = decode(body, 7, 1024);
+
+        File file = (File) result.get("file");
+        assertEquals(content.length, file.getSize());
+        assertTrue(file.getPath().startsWith(tempDir));
+        assertArrayEquals(content, Files.readAllBytes(file.getPath()));
+
+        Path target = tempDir.resolve("moved.bin");
+        file.transferTo(target);
+        assertArrayEquals(content, Files.readAllBytes(target));
+        assertEquals("This is a test file upload", result.get("description"));
+    }
+
+    @Test
+    @DisplayName("요청이 끝나면 옮기지 않은 임시 파일을 지움")
+    void testReleaseDeletesTempFile() throws IOException {
+        byte[] content = new byte[4096];
+        byte[] body = multipartBody(content);
+        File file = (File) decode(body, body.length, 1024).get("file");
+        Path spooled = file.getPath();
+
+        file.delete();
+
+        assertFalse(Files.exists(spooled));
+    }
+
+    @Test
+    @DisplayName("닫는 경계가 없으면 오류")
+    void testIncompleteBody() throws IOException {
+        byte[] body = multipartBody(new byte[4096]);
+        MultipartDecoder decoder = new MultipartDecoder(BOUNDARY, 1024, tempDir);
+        decoder.feed(body, 0, body.length - 10);
+
+        assertThrows(IOException.class, decoder::finish);
+        try (var files = Files.list(tempDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    @DisplayName("같은 이름의 파일 파트가 다시 오면 앞 파트의 임시 파일을 지움")
+    void testRepeatedPartName() throws IOException {
+        String part = "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"%s\"\r\n\r\n"
+                + "x".repeat(4096) + "\r\n";
+        byte[] body = (String.format(part, "a.bin") + String.format(part, "b.bin") + "--" + BOUNDARY + "--\r\n").getBytes();
+
+        File file = (File) decode(body, body.length, 1024).get("file");
+
+        assertEquals("b.bin", file.getName());
+        try (var files = Files.list(tempDir)) {
+            assertEquals(1, files.count());
+        }
+        file.delete();
+    }
+
+    @Test
+    @DisplayName("메모리에 두는 파트의 합이나 파트 수가 한도를 넘으면 413")
+    void testInMemoryLimit() throws IOException {
+        String field = "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"f%d\"\r\n\r\n%s\r\n";
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 5; i++) {
+            large.append(String.format(field, i, "x".repeat(1000 * 1000)));
+        }
+        StringBuilder many = new StringBuilder();
+        for (int i = 0; i < 1001; i++) {
+            many.append(String.format(field, i, ""));
+        }
+
+        for (StringBuilder parts : new StringBuilder[]{large, many}) {
+            byte[] body = (parts + "--" + BOUNDARY + "--\r\n").getBytes();
+            HttpException e = assertThrows(HttpException.class, () -> decode(body, body.length, 1024));
+            assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, e.getStatus());
+        }
+    }
+
+    @Test
+    @DisplayName("HttpRequest.from 으로 멀티파트 요청 파싱")
+    void testParseMultipartRequest() throws IOException {
+        byte[] content = "image".getBytes();
+        byte[] body = multipartBody(content);
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        request.write(("POST /upload HTTP/1.1\r\n"
+                + "Content-Type: multipart/form-data; boundary=" + BOUNDARY + "\r\n"
+                + "Content-Length: " + body.length + "\r\n\r\n").getBytes());
+        request.write(body);
+
+        HttpRequest req = HttpRequest.from(new java.io.ByteArrayInputStream(request.toByteArray()));
+
+        assertEquals("test.bin", ((File) req.getMultipartFile("file")).getName());
+        assertEquals("This is a test file upload", req.getMultipartFile("description"));
+    }
+
+    private Map<String, Object> decode(byte[] body, int chunkSize, int threshold) throws IOException {
+        MultipartDecoder decoder = new MultipartDecoder(BOUNDARY, threshold, tempDir);
+        for (int offset = 0; offset < body.length; offset += chunkSize) {
+            decoder.feed(body, offset, Math.min(chunkSize, body.length - offset));
+        }
+        return decoder.finish();
+    }
+
+    private static byte[] multipartBody(byte[] content) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"test.bin\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n").getBytes());
+        body.write(content);
+        body.write(("\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"description\"\r\n\r\n"
+                + "This is a test file upload\r\n"
+                + "--" + BOUNDARY + "--\r\n").getBytes());
+        return body.toByteArray();
+    }
+}
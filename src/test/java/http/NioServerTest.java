@@ -0,0 +1,457 @@
+package http;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NioServerTest {
+
+    private static final int THREAD_POOL_SIZE = 2;
+    private final int PORT = 9001;
+    private Server server;
+    private ExecutorService executorService;
+
+    @BeforeEach
+    void setUp() {
+        server = Server.nioServer(PORT, THREAD_POOL_SIZE, 2);
+        executorService = Executors.newSingleThreadExecutor();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        executorService.shutdownNow();
+        server.stop();
+    }
+
+    @Test
+    @DisplayName("이벤트 루프 서버 요청 처리")
+    void testServerStartAndHandleRequest() throws IOException {
+        server.post("/echo", ctx -> ctx.response()
+                .setStatus(HttpStatus.OK)
+                .addHeader("Content-Type", "text/plain")
+                .setBody(ctx.request().getBody().getBytes()));
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        URL url = new URL("http://localhost:" + PORT + "/echo");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "text/plain");
+        try (OutputStream os = connection.getOutputStream()) {
+            os.write("hello jin".getBytes());
+        }
+
+        assertEquals(HttpStatus.OK.getCode(), connection.getResponseCode());
+        try (InputStream is = connection.getInputStream()) {
+            assertEquals("hello jin", new String(is.readAllBytes()));
+        }
+
+        connection.disconnect();
+    }
+
+    @Test
+    @DisplayName("느린 클라이언트가 워커를 점유하지 않음")
+    void testSlowClientDoesNotBlockWorkers() throws IOException {
+        server.get("/test", ctx -> ctx.response()
+                .setStatus(HttpStatus.OK)
+                .setBody("ok".getBytes()));
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        // 워커 수보다 많은 연결이 헤더를 반쯤만 보내고 멈춰 있어도 다른 요청은 처리되어야 한다
+        Socket[] slowClients = new Socket[THREAD_POOL_SIZE * 4];
+        for (int i = 0; i < slowClients.length; i++) {
+            slowClients[i] = new Socket("localhost", PORT);
+            slowClients[i].getOutputStream().write("GET /test HTTP/1.1\r\nHost: localhost".getBytes());
+        }
+
+        try {
+            URL url = new URL("http://localhost:" + PORT + "/test");
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setReadTimeout(5000);
+            assertEquals(HttpStatus.OK.getCode(), connection.getResponseCode());
+            connection.disconnect();
+        } finally {
+            for (Socket slowClient : slowClients) {
+                slowClient.close();
+            }
+        }
+
+        assertTrue(server.isConnected());
+    }
+
+    @Test
+    @DisplayName("이벤트 루프 서버에서 핸들러가 던진 예외는 500 으로 응답하고 연결을 유지")
+    void testHandlerError() throws IOException {
+        server.get("/fail", ctx -> {
+            throw new IllegalStateException("boom");
+        });
+        server.get("/test", ctx -> ctx.response().setStatus(HttpStatus.OK).setBody("ok".getBytes()));
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.setSoTimeout(5000);
+            OutputStream os = socket.getOutputStream();
+            InputStream is = socket.getInputStream();
+
+            os.write("GET /fail HTTP/1.1\r\n\r\n".getBytes());
+            Map<String, String> response = ServerTest.readResponse(is);
+            assertTrue(response.get("status").startsWith("HTTP/1.1 500"));
+            assertEquals("keep-alive", response.get("Connection"));
+
+            // 같은 연결로 다음 요청을 처리한다
+            os.write("GET /test HTTP/1.1\r\n\r\n".getBytes());
+            assertEquals("ok", ServerTest.readResponse(is).get("body"));
+        }
+    }
+
+    @Test
+    @DisplayName("이벤트 루프 서버 keep-alive")
+    void testKeepAlive() throws IOException {
+        server.get("/test", ctx -> ctx.response()
+                .setStatus(HttpStatus.OK)
+                .setBody("ok".getBytes()));
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            OutputStream os = socket.getOutputStream();
+            InputStream is = socket.getInputStream();
+
+            os.write("GET /test HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes());
+            assertEquals("keep-alive", ServerTest.readResponse(is).get("Connection"));
+
+            os.write("GET /test HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n".getBytes());
+            assertEquals("ok", ServerTest.readResponse(is).get("body"));
+            assertEquals(-1, is.read());
+        }
+    }
+
+    @Test
+    @DisplayName("이벤트 루프 서버 파이프라이닝")
+    void testPipelining() throws IOException {
+        server.get("/echo/:n", ctx -> ctx.response()
+                .setStatus(HttpStatus.OK)
+                .setBody(ctx.param("n").getBytes()));
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.setSoTimeout(5000);
+            StringBuilder requests = new StringBuilder();
+            for (int i = 1; i <= 20; i++) {
+                requests.append("GET /echo/").append(i).append(" HTTP/1.1\r\n\r\n");
+            }
+            socket.getOutputStream().write(requests.toString().getBytes());
+            InputStream is = socket.getInputStream();
+
+            // 워커 풀에서 처리해도 응답은 요청 순서대로 온다
+            for (int i = 1; i <= 20; i++) {
+                assertEquals(String.valueOf(i), ServerTest.readResponse(is).get("body"));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("풀링한 이벤트 루프 서버는 파이프라이닝된 요청마다 제 헤더를 봄")
+    void testPooling() throws IOException {
+        server.setPooling(true);
+        server.get("/trace", ctx -> ctx.response()
+                .setStatus(HttpStatus.OK)
+                .setBody(ctx.request().getHeader("X-Trace").orElse("none").getBytes()));
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(("GET /trace HTTP/1.1\r\nX-Trace: a\r\n\r\n"
+                    + "GET /trace HTTP/1.1\r\n\r\n"
+                    + "GET /trace HTTP/1.1\r\nX-Trace: c\r\n\r\n").getBytes());
+            InputStream is = socket.getInputStream();
+
+            assertEquals("a", ServerTest.readResponse(is).get("body"));
+            assertEquals("none", ServerTest.readResponse(is).get("body"));
+            assertEquals("c", ServerTest.readResponse(is).get("body"));
+        }
+    }
+
+    @Test
+    @DisplayName("비동기 핸들러를 기다리는 동안 워커를 놓고, 시간이 지나면 504 로 응답")
+    void testAsyncHandler() throws Exception {
+        // 워커(2)보다 많은 요청이 모두 도착해야 응답이 끝난다. 기다리는 동안 워커를 잡고 있으면 끝나지 않는다
+        int requests = THREAD_POOL_SIZE * 2;
+        List<CompletableFuture<Void>> waiting = new ArrayList<>();
+        server.getAsync("/fanout", ctx -> {
+            CompletableFuture<Void> downstream = new CompletableFuture<>();
+            synchronized (waiting) {
+                waiting.add(downstream);
+                if (waiting.size() == requests) {
+                    waiting.forEach(f -> f.complete(null));
+                }
+            }
+            return downstream.thenRun(() -> ctx.response().setStatus(HttpStatus.OK).setBody("done".getBytes()));
+        });
+        server.getAsync("/slow", 100, ctx -> new CompletableFuture<>());
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        ExecutorService clients = Executors.newFixedThreadPool(requests);
+        try {
+            List<Future<String>> responses = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                responses.add(clients.submit(() -> {
+                    HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + PORT + "/fanout").openConnection();
+                    connection.setReadTimeout(5000);
+                    try (InputStream is = connection.getInputStream()) {
+                        return new String(is.readAllBytes());
+                    }
+                }));
+            }
+            for (Future<String> response : responses) {
+                assertEquals("done", response.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + PORT + "/slow").openConnection();
+        connection.setReadTimeout(5000);
+        assertEquals(HttpStatus.GATEWAY_TIMEOUT.getCode(), connection.getResponseCode());
+    }
+
+    @Test
+    @DisplayName("라우트별 지연 시간과 게이지를 Prometheus 형식으로 내보냄")
+    void testMetrics() throws IOException {
+        server.enableMetrics("/metrics");
+        server.get("/users/:id", ctx -> ctx.response().setStatus(HttpStatus.OK).setBody(ctx.param("id").getBytes()));
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(("GET /users/1 HTTP/1.1\r\n\r\n"
+                    + "GET /users/2 HTTP/1.1\r\n\r\n"
+                    + "GET /nothing HTTP/1.1\r\n\r\n").getBytes());
+            InputStream is = socket.getInputStream();
+            for (int i = 0; i < 3; i++) {
+                ServerTest.readResponse(is);
+            }
+
+            socket.getOutputStream().write("GET /metrics HTTP/1.1\r\n\r\n".getBytes());
+            Map<String, String> response = ServerTest.readResponse(is);
+            assertTrue(response.get("Content-Type").startsWith("text/plain; version=0.0.4"));
+            String body = response.get("body");
+            assertTrue(body.contains("jin_request_duration_seconds_count{method=\"GET\",route=\"/users/:id\",status=\"2xx\"} 2\n"), body);
+            assertTrue(body.contains("jin_request_duration_seconds_count{method=\"GET\",route=\"unmatched\",status=\"4xx\"} 1\n"), body);
+            assertTrue(body.contains("route=\"/users/:id\",status=\"2xx\",le=\"+Inf\"} 2\n"), body);
+            assertTrue(body.contains("jin_open_connections 1\n"), body);
+            assertTrue(body.contains("jin_worker_queue_length 0\n"), body);
+        }
+    }
+
+    @Test
+    @DisplayName("워커 큐에서 maxQueueTime 보다 오래 기다린 요청은 처리하지 않고 503 으로 응답")
+    void testQueueTimeShedding() throws Exception {
+        server = Server.nioServer(PORT, 1, 1).setMaxQueueTime(100);
+        CountDownLatch entered = new CountDownLatch(1);
+        AtomicBoolean finished = new AtomicBoolean();
+        server.get("/slow", ctx -> {
+            entered.countDown();
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finished.set(true);
+            ctx.response().setStatus(HttpStatus.OK).setBody("slow".getBytes());
+        });
+        server.get("/fast", ctx -> ctx.response().setStatus(HttpStatus.OK).setBody("fast".getBytes()));
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        try (Socket slow = new Socket("localhost", PORT); Socket queued = new Socket("localhost", PORT)) {
+            slow.setSoTimeout(5000);
+            queued.setSoTimeout(5000);
+            slow.getOutputStream().write("GET /slow HTTP/1.1\r\n\r\n".getBytes());
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+            queued.getOutputStream().write("GET /fast HTTP/1.1\r\n\r\n".getBytes());
+
+            // 워커가 비기 전에 응답한다
+            Map<String, String> response = ServerTest.readResponse(queued.getInputStream());
+            assertTrue(response.get("status").startsWith("HTTP/1.1 503"));
+            assertEquals("1", response.get("Retry-After"));
+            assertFalse(finished.get());
+            assertEquals("slow", ServerTest.readResponse(slow.getInputStream()).get("body"));
+
+            // 큐가 비면 다시 처리한다
+            OutputStream os = slow.getOutputStream();
+            os.write("GET /fast HTTP/1.1\r\n\r\n".getBytes());
+            assertEquals("fast", ServerTest.readResponse(slow.getInputStream()).get("body"));
+        }
+        assertEquals(1, server.getShedCount());
+    }
+
+    @Test
+    @DisplayName("멈출 때 쉬고 있는 연결은 닫고, 처리 중인 요청은 끝까지 보낸 뒤 닫음")
+    void testGracefulShutdown() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        server.get("/slow", ctx -> {
+            entered.countDown();
+            try {
+                Thread.sleep(300);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ctx.response().setStatus(HttpStatus.OK).setBody("slow".getBytes());
+        });
+        server.get("/test", ctx -> ctx.response().setStatus(HttpStatus.OK).setBody("ok".getBytes()));
+        server.post("/echo", ctx -> ctx.response().setStatus(HttpStatus.OK).setBody(ctx.request().getBody().getBytes()));
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        try (Socket idle = new Socket("localhost", PORT); Socket busy = new Socket("localhost", PORT);
+             Socket partial = new Socket("localhost", PORT)) {
+            idle.setSoTimeout(5000);
+            busy.setSoTimeout(5000);
+            partial.setSoTimeout(5000);
+            idle.getOutputStream().write("GET /test HTTP/1.1\r\n\r\n".getBytes());
+            assertEquals("ok", ServerTest.readResponse(idle.getInputStream()).get("body"));
+            partial.getOutputStream().write("POST /echo HTTP/1.1\r\nContent-Length: 5\r\n".getBytes());
+
+            busy.getOutputStream().write("GET /slow HTTP/1.1\r\n\r\n".getBytes());
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Boolean> stopped = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return server.stop(5000);
+                } catch (IOException | InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            assertEquals(-1, idle.getInputStream().read());
+            // 헤더를 받던 연결은 닫지 않고 끝까지 받아서 응답한다
+            partial.getOutputStream().write("\r\nabcde".getBytes());
+            Map<String, String> response = ServerTest.readResponse(partial.getInputStream());
+            assertEquals("abcde", response.get("body"));
+            assertEquals("close", response.get("Connection"));
+
+            response = ServerTest.readResponse(busy.getInputStream());
+            assertEquals("slow", response.get("body"));
+            assertEquals("close", response.get("Connection"));
+            assertEquals(-1, busy.getInputStream().read());
+            assertTrue(stopped.get(5, TimeUnit.SECONDS));
+        }
+        assertFalse(server.isReady());
+    }
+
+    @Test
+    @DisplayName("이벤트 루프 서버에서 헤더나 바디를 보내다 멈춘 연결은 408 로 응답하고 닫음")
+    void testRequestTimeouts() throws IOException {
+        server.setHeaderTimeout(300).setBodyTimeout(300);
+        server.post("/echo", ctx -> ctx.response().setStatus(HttpStatus.OK).setBody(ctx.request().getBody().getBytes()));
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        for (String partial : new String[]{"GET /echo HTTP/1.1\r\nHost: loc", "POST /echo HTTP/1.1\r\nContent-Length: 10\r\n\r\nabc"}) {
+            try (Socket socket = new Socket("localhost", PORT)) {
+                socket.setSoTimeout(5000);
+                socket.getOutputStream().write(partial.getBytes());
+                InputStream is = socket.getInputStream();
+                Map<String, String> response = ServerTest.readResponse(is);
+                assertTrue(response.get("status").startsWith("HTTP/1.1 408"));
+                assertEquals("close", response.get("Connection"));
+                assertEquals(-1, is.read());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("정적 파일은 이벤트 루프가 transferTo 로 보냄")
+    void testStaticFiles(@TempDir Path root) throws IOException {
+        byte[] image = new byte[1024 * 1024];
+        new Random(2).nextBytes(image);
+        Files.write(root.resolve("big.png"), image);
+        server.staticFiles("/assets", root);
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.setSoTimeout(5000);
+            OutputStream os = socket.getOutputStream();
+            InputStream is = socket.getInputStream();
+
+            // 같은 연결에서 두 번 받아 파일 뒤에 다음 응답이 이어지는지 확인한다
+            for (int i = 0; i < 2; i++) {
+                os.write("GET /assets/big.png HTTP/1.1\r\n\r\n".getBytes());
+                Map<String, String> headers = ServerTest.readHeaders(is);
+                assertEquals("image/png", headers.get("Content-Type"));
+                assertArrayEquals(image, is.readNBytes(Integer.parseInt(headers.get("Content-Length"))));
+            }
+        }
+    }
+}
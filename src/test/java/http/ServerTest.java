@@ -4,16 +4,39 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.HttpURLConnection;
+import java.net.Socket;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ServerTest {
 
@@ -96,4 +119,781 @@ class ServerTest {
 
         connection.disconnect();
     }
+
+    @Test
+    @DisplayName("핸들러가 던진 예외는 500 으로 응답하고 연결을 유지")
+    void testHandlerError() throws IOException {
+        server.get("/fail", ctx -> {
+            throw new IllegalStateException("boom");
+        });
+        server.get("/test", ctx -> ctx.response().setStatus(HttpStatus.OK).setBody("ok".getBytes()));
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.setSoTimeout(5000);
+            OutputStream os = socket.getOutputStream();
+            InputStream is = socket.getInputStream();
+
+            os.write("GET /fail HTTP/1.1\r\n\r\n".getBytes());
+            Map<String, String> response = readResponse(is);
+            assertTrue(response.get("status").startsWith("HTTP/1.1 500"));
+            assertEquals("keep-alive", response.get("Connection"));
+
+            // 같은 연결로 다음 요청을 처리한다
+            os.write("GET /test HTTP/1.1\r\n\r\n".getBytes());
+            assertEquals("ok", readResponse(is).get("body"));
+        }
+    }
+
+    @Test
+    @DisplayName("keep-alive 연결에서 여러 요청 처리")
+    void testKeepAlive() throws IOException {
+        server.setMaxRequestsPerConnection(3);
+        server.get("/test", ctx -> ctx.response()
+                .setStatus(HttpStatus.OK)
+                .setBody("ok".getBytes()));
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            OutputStream os = socket.getOutputStream();
+            InputStream is = socket.getInputStream();
+
+            for (int i = 1; i <= 3; i++) {
+                os.write("GET /test HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes());
+                Map<String, String> headers = readResponse(is);
+                assertEquals("ok", headers.get("body"));
+                assertEquals(i < 3 ? "keep-alive" : "close", headers.get("Connection"));
+            }
+
+            // 요청 한도에 닿으면 서버가 연결을 닫는다
+            assertEquals(-1, is.read());
+        }
+    }
+
+    @Test
+    @DisplayName("파이프라이닝된 요청에 순서대로 응답")
+    void testPipelining() throws IOException {
+        server.get("/echo/:n", ctx -> ctx.response()
+                .setStatus(HttpStatus.OK)
+                .setBody(ctx.param("n").getBytes()));
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.setSoTimeout(5000);
+            // 응답을 기다리지 않고 세 요청을 한 번에 보낸다
+            socket.getOutputStream().write(("GET /echo/1 HTTP/1.1\r\n\r\n"
+                    + "GET /echo/2 HTTP/1.1\r\n\r\n"
+                    + "GET /echo/3 HTTP/1.1\r\nConnection: close\r\n\r\n").getBytes());
+            InputStream is = socket.getInputStream();
+
+            for (int i = 1; i <= 3; i++) {
+                assertEquals(String.valueOf(i), readResponse(is).get("body"));
+            }
+            assertEquals(-1, is.read());
+        }
+    }
+
+    @Test
+    @DisplayName("출력 버퍼보다 큰 바디도 헤더와 함께 보냄")
+    void testLargeBody() throws IOException {
+        byte[] large = new byte[100 * 1024];
+        new Random(3).nextBytes(large);
+        server.get("/large", ctx -> ctx.response()
+                .setStatus(HttpStatus.OK)
+                .setBody(large));
+        server.get("/small", ctx -> ctx.response()
+                .setStatus(HttpStatus.OK)
+                .setBody("ok".getBytes()));
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.setSoTimeout(5000);
+            // 앞 응답이 버퍼에 남아 있을 때 큰 응답이 그 뒤에 이어지는지 확인한다
+            socket.getOutputStream().write(("GET /small HTTP/1.1\r\n\r\n"
+                    + "GET /large HTTP/1.1\r\n\r\n").getBytes());
+            InputStream is = socket.getInputStream();
+
+            assertEquals("ok", readResponse(is).get("body"));
+            Map<String, String> headers = readHeaders(is);
+            assertArrayEquals(large, is.readNBytes(Integer.parseInt(headers.get("Content-Length"))));
+        }
+    }
+
+    @Test
+    @DisplayName("풀링하면 객체를 다시 쓰되 이전 요청의 값은 남지 않고, 끝난 Context 는 쓸 수 없음")
+    void testPooling() throws IOException {
+        AtomicReference<Context> leaked = new AtomicReference<>();
+        server.setPooling(true);
+        server.get("/echo", ctx -> {
+            leaked.set(ctx);
+            String value = ctx.request().getQuery("q") + "," + ctx.request().getHeader("X-Trace").orElse("none");
+            ctx.response().setStatus(HttpStatus.OK).setBody(value.getBytes());
+        });
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.setSoTimeout(5000);
+            OutputStream os = socket.getOutputStream();
+            InputStream is = socket.getInputStream();
+
+            os.write("GET /echo?q=1 HTTP/1.1\r\nX-Trace: a\r\n\r\n".getBytes());
+            assertEquals("1,a", readResponse(is).get("body"));
+            os.write("GET /echo HTTP/1.1\r\n\r\n".getBytes());
+            assertEquals("null,none", readResponse(is).get("body"));
+        }
+
+        assertThrows(IllegalStateException.class, () -> leaked.get().request());
+    }
+
+    @Test
+    @DisplayName("HTTP/1.0 요청은 keep-alive 헤더가 없으면 연결을 닫음")
+    void testHttp10Close() throws IOException {
+        server.get("/test", ctx -> ctx.response()
+                .setStatus(HttpStatus.OK)
+                .setBody("ok".getBytes()));
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.getOutputStream().write("GET /test HTTP/1.0\r\n\r\n".getBytes());
+            InputStream is = socket.getInputStream();
+            Map<String, String> headers = readResponse(is);
+
+            assertEquals("close", headers.get("Connection"));
+            assertEquals(-1, is.read());
+        }
+    }
+
+    @Test
+    @DisplayName("유휴 시간이 지나면 keep-alive 연결을 닫음")
+    void testIdleTimeout() throws IOException {
+        server.setIdleTimeout(200);
+        server.get("/test", ctx -> ctx.response()
+                .setStatus(HttpStatus.OK)
+                .setBody("ok".getBytes()));
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write("GET /test HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes());
+            InputStream is = socket.getInputStream();
+            assertTrue(readResponse(is).get("status").contains("200"));
+
+            assertEquals(-1, is.read());
+        }
+    }
+
+    @Test
+    @DisplayName("핸들러가 바디를 스트림으로 읽고, 읽지 않은 바디는 버린 뒤 연결을 유지")
+    void testStreamingBody() throws IOException {
+        server.post("/count", ctx -> {
+            try {
+                long size = ctx.request().getBodyStream().transferTo(OutputStream.nullOutputStream());
+                ctx.response().setStatus(HttpStatus.OK).setBody(String.valueOf(size).getBytes());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        server.post("/ignore", ctx -> ctx.response()
+                .setStatus(HttpStatus.OK)
+                .setBody("ignored".getBytes()));
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.setSoTimeout(5000);
+            OutputStream os = socket.getOutputStream();
+            InputStream is = socket.getInputStream();
+
+            os.write("POST /count HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n4\r\nabcd\r\n3\r\nefg\r\n0\r\n\r\n".getBytes());
+            assertEquals("7", readResponse(is).get("body"));
+
+            os.write("POST /ignore HTTP/1.1\r\nContent-Length: 5\r\n\r\nhello".getBytes());
+            Map<String, String> ignored = readResponse(is);
+            assertEquals("ignored", ignored.get("body"));
+            assertEquals("keep-alive", ignored.get("Connection"));
+
+            os.write("POST /count HTTP/1.1\r\nContent-Length: 3\r\n\r\nxyz".getBytes());
+            assertEquals("3", readResponse(is).get("body"));
+        }
+    }
+
+    @Test
+    @DisplayName("스트리밍 응답은 chunked 로 보내고, HTTP/1.0 에는 연결을 닫아 끝을 알리며, HEAD 에는 헤더만 보냄")
+    void testStreamingResponse() throws IOException {
+        server.get("/export", ctx -> {
+            try {
+                OutputStream body = ctx.response().setStatus(HttpStatus.OK).getBodyStream();
+                for (int i = 0; i < 1000; i++) {
+                    body.write(("line " + i + "\n").getBytes());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        server.get("/ping", ctx -> ctx.response().setStatus(HttpStatus.OK).setBody("pong".getBytes()));
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        String expected = IntStream.range(0, 1000)
+                .mapToObj(i -> "line " + i + "\n")
+                .collect(Collectors.joining());
+
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + PORT + "/export").openConnection();
+        assertEquals("chunked", connection.getHeaderField("Transfer-Encoding"));
+        try (InputStream is = connection.getInputStream()) {
+            assertEquals(expected, new String(is.readAllBytes()));
+        }
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write("GET /export HTTP/1.0\r\n\r\n".getBytes());
+            String response = new String(socket.getInputStream().readAllBytes());
+            assertTrue(response.contains("Connection: close"));
+            assertTrue(response.endsWith("\r\n\r\n" + expected));
+        }
+
+        // 청크가 따라오면 다음 응답의 상태 줄이 어긋난다
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.setSoTimeout(5000);
+            OutputStream os = socket.getOutputStream();
+            InputStream is = socket.getInputStream();
+            os.write("HEAD /export HTTP/1.1\r\n\r\n".getBytes());
+            Map<String, String> head = readHeaders(is);
+            assertTrue(head.get("status").startsWith("HTTP/1.1 200"));
+            assertEquals("chunked", head.get("Transfer-Encoding"));
+
+            os.write("GET /ping HTTP/1.1\r\n\r\n".getBytes());
+            Map<String, String> next = readResponse(is);
+            assertTrue(next.get("status").startsWith("HTTP/1.1 200"));
+            assertEquals("pong", next.get("body"));
+        }
+    }
+
+    @Test
+    @DisplayName("정적 파일을 MIME 타입과 함께 보내고, HEAD 에는 헤더만, 다른 메소드는 405, 루트 밖 경로는 거부")
+    void testStaticFiles(@TempDir Path dir) throws IOException {
+        Path root = Files.createDirectory(dir.resolve("public"));
+        byte[] script = new byte[256 * 1024];
+        new Random(1).nextBytes(script);
+        Files.write(root.resolve("app.js"), script);
+        Files.writeString(dir.resolve("secret.txt"), "secret");
+        server.staticFiles("/static", root);
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.setSoTimeout(5000);
+            OutputStream os = socket.getOutputStream();
+            InputStream is = socket.getInputStream();
+
+            os.write("GET /static/app.js HTTP/1.1\r\n\r\n".getBytes());
+            Map<String, String> headers = readHeaders(is);
+            assertEquals("application/javascript", headers.get("Content-Type"));
+            assertArrayEquals(script, is.readNBytes(Integer.parseInt(headers.get("Content-Length"))));
+
+            // HEAD 는 같은 헤더만 보낸다. 바디가 오면 다음 응답을 읽을 수 없다
+            os.write("HEAD /static/app.js HTTP/1.1\r\n\r\n".getBytes());
+            Map<String, String> head = readHeaders(is);
+            assertTrue(head.get("status").contains("200"));
+            assertEquals(String.valueOf(script.length), head.get("Content-Length"));
+            assertEquals(headers.get("ETag"), head.get("ETag"));
+
+            os.write("POST /static/app.js HTTP/1.1\r\nContent-Length: 0\r\n\r\n".getBytes());
+            Map<String, String> post = readResponse(is);
+            assertTrue(post.get("status").contains("405"));
+            assertEquals("GET, HEAD", post.get("Allow"));
+
+            os.write("GET /static/../secret.txt HTTP/1.1\r\n\r\n".getBytes());
+            assertTrue(readResponse(is).get("status").contains("404"));
+
+            os.write("GET /static/%2e%2e/secret.txt HTTP/1.1\r\n\r\n".getBytes());
+            assertTrue(readResponse(is).get("status").contains("404"));
+        }
+    }
+
+    @Test
+    @DisplayName("정적 파일 조건부 요청에 304 로 응답")
+    void testStaticFilesNotModified(@TempDir Path root) throws IOException {
+        Files.writeString(root.resolve("index.html"), "<h1>jin</h1>");
+        server.staticFiles("/", root);
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.setSoTimeout(5000);
+            OutputStream os = socket.getOutputStream();
+            InputStream is = socket.getInputStream();
+
+            os.write("GET /index.html HTTP/1.1\r\n\r\n".getBytes());
+            Map<String, String> first = readResponse(is);
+            assertEquals("<h1>jin</h1>", first.get("body"));
+            String etag = first.get("ETag");
+            String lastModified = first.get("Last-Modified");
+
+            os.write(("GET /index.html HTTP/1.1\r\nIf-None-Match: " + etag + "\r\n\r\n").getBytes());
+            Map<String, String> byEtag = readHeaders(is);
+            assertTrue(byEtag.get("status").contains("304"));
+            assertEquals(etag, byEtag.get("ETag"));
+
+            os.write(("GET / HTTP/1.1\r\nIf-Modified-Since: " + lastModified + "\r\n\r\n").getBytes());
+            assertTrue(readHeaders(is).get("status").contains("304"));
+
+            os.write("GET /index.html HTTP/1.1\r\nIf-None-Match: \"stale\"\r\n\r\n".getBytes());
+            assertEquals("<h1>jin</h1>", readResponse(is).get("body"));
+        }
+    }
+
+    @Test
+    @DisplayName("압축을 켜면 정적 파일은 .gz 파일을, 핸들러 응답은 압축해서 보내고 304 에도 같은 ETag 를 붙임")
+    void testCompression(@TempDir Path root) throws IOException {
+        String css = "body { color: red; }\n".repeat(200);
+        Files.writeString(root.resolve("app.css"), css);
+        Files.writeString(root.resolve("plain.css"), css);
+        // 미리 압축한 파일이라는 것을 알 수 있도록 다른 내용을 넣는다
+        try (OutputStream gz = new GZIPOutputStream(Files.newOutputStream(root.resolve("app.css.gz")))) {
+            gz.write("precompressed".getBytes());
+        }
+        server.setCompression(new Compression());
+        server.staticFiles("/static", root);
+        server.get("/page", ctx -> ctx.response()
+                .setStatus(HttpStatus.OK)
+                .addHeader("Content-Type", "text/html")
+                .setBody(css.getBytes()));
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.setSoTimeout(5000);
+            OutputStream os = socket.getOutputStream();
+            InputStream is = socket.getInputStream();
+
+            os.write("GET /static/app.css HTTP/1.1\r\nAccept-Encoding: gzip\r\n\r\n".getBytes());
+            Map<String, String> headers = readHeaders(is);
+            assertEquals("gzip", headers.get("Content-Encoding"));
+            assertEquals("Accept-Encoding", headers.get("Vary"));
+            byte[] body = is.readNBytes(Integer.parseInt(headers.get("Content-Length")));
+            assertEquals("precompressed", new String(new GZIPInputStream(new ByteArrayInputStream(body)).readAllBytes()));
+
+            os.write("GET /static/app.css HTTP/1.1\r\n\r\n".getBytes());
+            assertEquals(css, readResponse(is).get("body"));
+
+            // .gz 가 없는 파일은 서버가 압축하고, 그 ETag 로 온 조건부 요청의 304 에도 같은 ETag 와 Vary 를 붙인다
+            os.write("GET /static/plain.css HTTP/1.1\r\nAccept-Encoding: gzip\r\n\r\n".getBytes());
+            headers = readHeaders(is);
+            assertEquals("gzip", headers.get("Content-Encoding"));
+            is.readNBytes(Integer.parseInt(headers.get("Content-Length")));
+            String etag = headers.get("ETag");
+            assertTrue(etag.endsWith("-gzip\""));
+
+            os.write(("GET /static/plain.css HTTP/1.1\r\nAccept-Encoding: gzip\r\nIf-None-Match: " + etag + "\r\n\r\n").getBytes());
+            headers = readHeaders(is);
+            assertTrue(headers.get("status").contains("304"));
+            assertEquals(etag, headers.get("ETag"));
+            assertEquals("Accept-Encoding", headers.get("Vary"));
+
+            os.write("GET /page HTTP/1.1\r\nAccept-Encoding: gzip, deflate\r\n\r\n".getBytes());
+            headers = readHeaders(is);
+            assertEquals("gzip", headers.get("Content-Encoding"));
+            body = is.readNBytes(Integer.parseInt(headers.get("Content-Length")));
+            assertEquals(css, new String(new GZIPInputStream(new ByteArrayInputStream(body)).readAllBytes()));
+        }
+    }
+
+    @Test
+    @DisplayName("경로 변수를 Context 에서 꺼냄")
+    void testPathParameter() throws IOException {
+        server.get("/users/:id/orders/:oid", ctx -> ctx.response()
+                .setStatus(HttpStatus.OK)
+                .setBody((ctx.param("id") + ":" + ctx.request().getParam("oid")).getBytes()));
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + PORT + "/users/42/orders/7").openConnection();
+        try (InputStream is = connection.getInputStream()) {
+            assertEquals("42:7", new String(is.readAllBytes()));
+        }
+    }
+
+    @Test
+    @DisplayName("비동기 핸들러의 결과와 오류, 시간 초과를 응답으로 보냄")
+    void testAsyncHandler() throws IOException {
+        server.getAsync("/async/:id", ctx -> CompletableFuture
+                .supplyAsync(() -> "user-" + ctx.param("id"))
+                .thenAccept(name -> ctx.response().setStatus(HttpStatus.OK).setBody(name.getBytes())));
+        server.getAsync("/missing", ctx -> CompletableFuture.failedFuture(new HttpException(HttpStatus.NOT_FOUND)));
+        server.getAsync("/slow", 100, ctx -> new CompletableFuture<>());
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.setSoTimeout(5000);
+            OutputStream os = socket.getOutputStream();
+            InputStream is = socket.getInputStream();
+
+            os.write("GET /async/7 HTTP/1.1\r\n\r\n".getBytes());
+            assertEquals("user-7", readResponse(is).get("body"));
+
+            os.write("GET /missing HTTP/1.1\r\n\r\n".getBytes());
+            assertTrue(readResponse(is).get("status").startsWith("HTTP/1.1 404"));
+
+            // 시간이 지나도 연결은 그대로 쓴다
+            os.write("GET /slow HTTP/1.1\r\n\r\nGET /async/8 HTTP/1.1\r\n\r\n".getBytes());
+            assertTrue(readResponse(is).get("status").startsWith("HTTP/1.1 504"));
+            assertEquals("user-8", readResponse(is).get("body"));
+        }
+    }
+
+    @Test
+    @DisplayName("미들웨어가 응답 헤더를 더하고, next 를 부르지 않으면 401 로 끝냄")
+    void testMiddleware() throws IOException {
+        server.use((ctx, next) -> {
+            ctx.response().addHeader("X-Served-By", "jin");
+            next.handle(ctx);
+        });
+        server.use("/admin", (ctx, next) -> {
+            if (ctx.request().getHeader("Authorization").isEmpty()) {
+                ctx.response().setStatus(HttpStatus.UNAUTHORIZED);
+                return;
+            }
+            next.handle(ctx);
+        });
+        server.get("/admin/stats", ctx -> ctx.response().setStatus(HttpStatus.OK).setBody("stats".getBytes()));
+        server.getAsync("/admin/report", ctx -> CompletableFuture
+                .runAsync(() -> ctx.response().setStatus(HttpStatus.OK).setBody("report".getBytes())));
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.setSoTimeout(5000);
+            OutputStream os = socket.getOutputStream();
+            InputStream is = socket.getInputStream();
+
+            os.write("GET /admin/stats HTTP/1.1\r\n\r\n".getBytes());
+            Map<String, String> response = readResponse(is);
+            assertTrue(response.get("status").startsWith("HTTP/1.1 401"));
+            assertEquals("jin", response.get("X-Served-By"));
+
+            os.write("GET /admin/stats HTTP/1.1\r\nAuthorization: Bearer t\r\n\r\n".getBytes());
+            response = readResponse(is);
+            assertEquals("stats", response.get("body"));
+            assertEquals("jin", response.get("X-Served-By"));
+
+            // 비동기 라우트도 같은 체인을 지난다
+            os.write("GET /admin/report HTTP/1.1\r\n\r\n".getBytes());
+            assertTrue(readResponse(is).get("status").startsWith("HTTP/1.1 401"));
+            os.write("GET /admin/report HTTP/1.1\r\nAuthorization: Bearer t\r\n\r\n".getBytes());
+            assertEquals("report", readResponse(is).get("body"));
+        }
+    }
+
+    @Test
+    @DisplayName("워커 큐가 차면 기다리게 하지 않고 바로 503 과 Retry-After 로 응답")
+    void testLoadShedding() throws Exception {
+        server = Server.defaultServer(PORT, 1).setMaxQueueSize(1).setMaxQueueTime(0);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        server.get("/block", ctx -> {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ctx.response().setStatus(HttpStatus.OK).setBody("done".getBytes());
+        });
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        // 하나는 워커를 잡고, 하나는 큐에서 기다리고, 나머지는 거절된다
+        try (Socket busy = new Socket("localhost", PORT)) {
+            busy.setSoTimeout(5000);
+            busy.getOutputStream().write("GET /block HTTP/1.1\r\nConnection: close\r\n\r\n".getBytes());
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+            try (Socket waiting = new Socket("localhost", PORT); Socket rejected = new Socket("localhost", PORT)) {
+                waiting.setSoTimeout(5000);
+                rejected.setSoTimeout(5000);
+                Map<String, String> response = readResponse(rejected.getInputStream());
+                assertTrue(response.get("status").startsWith("HTTP/1.1 503"));
+                assertEquals("1", response.get("Retry-After"));
+                assertEquals("close", response.get("Connection"));
+
+                release.countDown();
+                assertEquals("done", readResponse(busy.getInputStream()).get("body"));
+                waiting.getOutputStream().write("GET /block HTTP/1.1\r\n\r\n".getBytes());
+                assertEquals("done", readResponse(waiting.getInputStream()).get("body"));
+            }
+        }
+        assertEquals(1, server.getShedCount());
+    }
+
+    @Test
+    @DisplayName("워커 큐에서 maxQueueTime 이 지나면 워커가 비기를 기다리지 않고 바로 503 으로 응답")
+    void testQueueTimeShedding() throws Exception {
+        server = Server.defaultServer(PORT, 1).setMaxQueueTime(200);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        server.get("/block", ctx -> {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ctx.response().setStatus(HttpStatus.OK).setBody("done".getBytes());
+        });
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        try (Socket busy = new Socket("localhost", PORT); Socket queued = new Socket("localhost", PORT)) {
+            busy.setSoTimeout(5000);
+            queued.setSoTimeout(5000);
+            busy.getOutputStream().write("GET /block HTTP/1.1\r\nConnection: close\r\n\r\n".getBytes());
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+            queued.getOutputStream().write("GET /block HTTP/1.1\r\n\r\n".getBytes());
+
+            // 워커는 아직 핸들러에 막혀 있다
+            Map<String, String> response = readResponse(queued.getInputStream());
+            assertTrue(response.get("status").startsWith("HTTP/1.1 503"));
+            release.countDown();
+            assertEquals("done", readResponse(busy.getInputStream()).get("body"));
+        }
+        assertEquals(1, server.getShedCount());
+    }
+
+    @Test
+    @DisplayName("keep-alive 로 쉬는 연결이 워커를 모두 잡고 있으면 그 연결을 닫고 기다리는 연결을 처리")
+    void testIdleKeepAliveReleasesWorker() throws Exception {
+        server = Server.defaultServer(PORT, 2);
+        server.get("/hello", ctx -> ctx.response().setStatus(HttpStatus.OK).setBody("hello".getBytes()));
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        try (Socket first = new Socket("localhost", PORT); Socket second = new Socket("localhost", PORT);
+             Socket third = new Socket("localhost", PORT)) {
+            for (Socket idle : List.of(first, second)) {
+                idle.setSoTimeout(5000);
+                idle.getOutputStream().write("GET /hello HTTP/1.1\r\n\r\n".getBytes());
+                assertEquals("hello", readResponse(idle.getInputStream()).get("body"));
+            }
+
+            // 두 워커가 다음 요청을 기다리는 동안 온 연결은 유휴 시간(5초)이나 maxQueueTime 을 기다리지 않는다
+            third.setSoTimeout(5000);
+            long start = System.nanoTime();
+            third.getOutputStream().write("GET /hello HTTP/1.1\r\n\r\n".getBytes());
+            assertEquals("hello", readResponse(third.getInputStream()).get("body"));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        }
+        assertEquals(0, server.getShedCount());
+    }
+
+    @Test
+    @DisplayName("멈출 때 readiness 를 먼저 내리고, 처리 중인 요청은 Connection: close 로 끝까지 보낸 뒤 닫음")
+    void testGracefulShutdown() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        server.setReadinessDelay(200).enableReadiness("/ready");
+        server.get("/slow", ctx -> {
+            entered.countDown();
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            ctx.response().setStatus(HttpStatus.OK).setBody("slow".getBytes());
+        });
+        server.post("/echo", ctx -> ctx.response().setStatus(HttpStatus.OK).setBody(ctx.request().getBody().getBytes()));
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        try (Socket idle = new Socket("localhost", PORT); Socket busy = new Socket("localhost", PORT);
+             Socket keepAlive = new Socket("localhost", PORT); Socket partial = new Socket("localhost", PORT)) {
+            idle.setSoTimeout(5000);
+            busy.setSoTimeout(5000);
+            keepAlive.setSoTimeout(5000);
+            partial.setSoTimeout(5000);
+            idle.getOutputStream().write("GET /ready HTTP/1.1\r\n\r\n".getBytes());
+            Map<String, String> response = readResponse(idle.getInputStream());
+            assertEquals("ready", response.get("body"));
+            assertEquals("keep-alive", response.get("Connection"));
+            keepAlive.getOutputStream().write("GET /ready HTTP/1.1\r\n\r\n".getBytes());
+            assertEquals("ready", readResponse(keepAlive.getInputStream()).get("body"));
+            // 헤더를 보내는 중인 연결은 쉬는 연결이 아니다
+            partial.getOutputStream().write("POST /echo HTTP/1.1\r\nContent-Length: 5\r\n".getBytes());
+
+            busy.getOutputStream().write("GET /slow HTTP/1.1\r\n\r\n".getBytes());
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+            CompletableFuture<Boolean> stopped = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return server.stop(5000);
+                } catch (IOException | InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            // readinessDelay 동안에도 요청을 받지만 503 을 알리고 keep-alive 연결은 닫는다
+            while (server.isReady()) {
+            }
+            idle.getOutputStream().write("GET /ready HTTP/1.1\r\n\r\n".getBytes());
+            response = readResponse(idle.getInputStream());
+            assertTrue(response.get("status").startsWith("HTTP/1.1 503"));
+            assertEquals("close", response.get("Connection"));
+
+            // 쉬던 keep-alive 연결이 닫힌 뒤에도 받던 요청은 끝까지 받아서 응답한다
+            assertEquals(-1, keepAlive.getInputStream().read());
+            partial.getOutputStream().write("\r\nabcde".getBytes());
+            response = readResponse(partial.getInputStream());
+            assertEquals("abcde", response.get("body"));
+            assertEquals("close", response.get("Connection"));
+
+            response = readResponse(busy.getInputStream());
+            assertEquals("slow", response.get("body"));
+            assertEquals("close", response.get("Connection"));
+            assertTrue(stopped.get(5, TimeUnit.SECONDS));
+        }
+        assertThrows(IOException.class, () -> new Socket("localhost", PORT).close());
+    }
+
+    @Test
+    @DisplayName("헤더를 조금씩 보내거나 바디를 보내다 멈춘 연결은 408 로 응답하고 닫음")
+    void testRequestTimeouts() throws Exception {
+        server = Server.defaultServer(PORT, 1).setHeaderTimeout(300).setBodyTimeout(300);
+        server.get("/test", ctx -> ctx.response().setStatus(HttpStatus.OK).setBody("ok".getBytes()));
+        server.post("/echo", ctx -> ctx.response().setStatus(HttpStatus.OK).setBody(ctx.request().getBody().getBytes()));
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        // 유휴 시간보다 짧게 한 바이트씩 보내도 헤더 타임아웃이 지나면 끊긴다
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.setSoTimeout(5000);
+            OutputStream os = socket.getOutputStream();
+            os.write("GET /test HTTP/1.1\r\n".getBytes());
+            try {
+                for (int i = 0; i < 20; i++) {
+                    Thread.sleep(100);
+                    os.write('X');
+                }
+            } catch (IOException ignored) {
+                // 서버가 먼저 닫았다
+            }
+            InputStream is = socket.getInputStream();
+            Map<String, String> response = readResponse(is);
+            assertTrue(response.get("status").startsWith("HTTP/1.1 408"));
+            assertEquals("close", response.get("Connection"));
+            assertEquals(-1, is.read());
+        }
+
+        try (Socket socket = new Socket("localhost", PORT)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write("POST /echo HTTP/1.1\r\nContent-Length: 10\r\n\r\nabc".getBytes());
+            Map<String, String> response = readResponse(socket.getInputStream());
+            assertTrue(response.get("status").startsWith("HTTP/1.1 408"));
+            assertEquals("close", response.get("Connection"));
+        }
+
+        // 워커 하나가 풀려서 다음 요청을 처리한다
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + PORT + "/test").openConnection();
+        connection.setReadTimeout(5000);
+        assertEquals(HttpStatus.OK.getCode(), connection.getResponseCode());
+    }
+
+    // 상태 줄과 헤더, Content-Length 만큼의 바디를 읽는다. 상태 줄은 status, 바디는 body 키로 담는다
+    static Map<String, String> readResponse(InputStream is) throws IOException {
+        Map<String, String> headers = readHeaders(is);
+        byte[] body = is.readNBytes(Integer.parseInt(headers.getOrDefault("Content-Length", "0")));
+        headers.put("body", new String(body));
+        return headers;
+    }
+
+    // 상태 줄과 헤더만 읽는다
+    static Map<String, String> readHeaders(InputStream is) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("status", readLine(is));
+        String line;
+        while (!(line = readLine(is)).isEmpty()) {
+            String[] header = line.split(":", 2);
+            headers.put(header[0].trim(), header[1].trim());
+        }
+        return headers;
+    }
+
+    private static String readLine(InputStream is) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = is.read()) != '\n') {
+            if (b == -1) {
+                throw new IOException("Connection closed");
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString();
+    }
 }
@@ -0,0 +1,38 @@
+package http;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TimerWheelTest {
+
+    @Test
+    @DisplayName("만료 작업이 예외를 던져도 같은 칸의 다른 Timeout 은 만료되고, 다시 건 Timeout 도 휠에 남음")
+    void testFailingTask() throws InterruptedException {
+        TimerWheel wheel = new TimerWheel(TimerWheel.TICK);
+        AtomicInteger expired = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        TimerWheel.Timeout other = wheel.newTimeout(expired::incrementAndGet);
+        TimerWheel.Timeout[] failing = new TimerWheel.Timeout[1];
+        // 나중에 넣은 것이 칸의 앞에 있어 먼저 돈다
+        failing[0] = wheel.newTimeout(() -> {
+            failed.incrementAndGet();
+            failing[0].expireAfter(TimerWheel.TICK);
+            throw new IllegalStateException("boom");
+        });
+        other.expireAfter(0);
+        failing[0].expireAfter(0);
+
+        Thread.sleep(TimerWheel.TICK + 50);
+        wheel.advance();
+        assertEquals(1, failed.get());
+        assertEquals(1, expired.get());
+
+        Thread.sleep(2 * TimerWheel.TICK + 50);
+        wheel.advance();
+        assertEquals(2, failed.get());
+    }
+}
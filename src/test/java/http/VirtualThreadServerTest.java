@@ -0,0 +1,128 @@
+package http;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@EnabledForJreRange(min = JRE.JAVA_21)
+class VirtualThreadServerTest {
+
+    private static final int MAX_CONCURRENCY = 4;
+    private final int PORT = 9002;
+    private Server server;
+    private ExecutorService executorService;
+
+    @BeforeEach
+    void setUp() {
+        server = Server.virtualThreadServer(PORT, MAX_CONCURRENCY);
+        executorService = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        executorService.shutdownNow();
+        server.stop();
+    }
+
+    @Test
+    @DisplayName("동시 처리 수가 한도를 넘지 않음")
+    void testConcurrencyLimit() throws Exception {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        server.get("/slow", ctx -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            active.decrementAndGet();
+            ctx.response().setStatus(HttpStatus.OK).setBody("ok".getBytes());
+        });
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        List<Future<Integer>> responses = new ArrayList<>();
+        for (int i = 0; i < MAX_CONCURRENCY * 4; i++) {
+            responses.add(executorService.submit(() -> {
+                HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + PORT + "/slow").openConnection();
+                try {
+                    return connection.getResponseCode();
+                } finally {
+                    connection.disconnect();
+                }
+            }));
+        }
+
+        for (Future<Integer> response : responses) {
+            assertEquals(HttpStatus.OK.getCode(), response.get());
+        }
+        assertTrue(maxActive.get() <= MAX_CONCURRENCY);
+        assertEquals(0, server.getPinnedThreadCount());
+    }
+
+    @Test
+    // JDK 24 부터는 synchronized 안에서 막혀도 캐리어 스레드에 고정되지 않는다(JEP 491)
+    @EnabledForJreRange(min = JRE.JAVA_21, max = JRE.JAVA_22)
+    @DisplayName("synchronized 안에서 막힌 핸들러는 스택이 깊어도 고정된 가상 스레드로 셈")
+    void testPinnedThreadCount() throws Exception {
+        server.get("/pinned", ctx -> {
+            // JFR 이 남기는 64 프레임 밖으로 handleRequest 가 밀려나도 센다
+            pinDeep(100);
+            ctx.response().setStatus(HttpStatus.OK).setBody("ok".getBytes());
+        });
+
+        executorService.execute(() -> server.start());
+
+        while (!server.isConnected()) {
+        }
+
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + PORT + "/pinned").openConnection();
+        try {
+            assertEquals(HttpStatus.OK.getCode(), connection.getResponseCode());
+        } finally {
+            connection.disconnect();
+        }
+
+        // JFR 은 이벤트를 모아 두었다가 넘긴다
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (server.getPinnedThreadCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+        assertTrue(server.getPinnedThreadCount() > 0);
+    }
+
+    private static void pinDeep(int depth) {
+        if (depth > 0) {
+            pinDeep(depth - 1);
+            return;
+        }
+        synchronized (VirtualThreadServerTest.class) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package http.handler;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class StaticFileCacheTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    @DisplayName("같은 파일은 캐시된 항목을 돌려주고, 전체 크기를 넘으면 오래된 항목부터 내보냄")
+    void testLruEviction() throws IOException {
+        Path a = Files.write(root.resolve("a.txt"), new byte[400]);
+        Path b = Files.write(root.resolve("b.txt"), new byte[400]);
+        Path c = Files.write(root.resolve("c.txt"), new byte[400]);
+
+        try (StaticFileCache cache = new StaticFileCache(root, 1000)) {
+            StaticFileCache.Entry first = cache.get(a);
+            assertSame(first, cache.get(a));
+            cache.get(b);
+            cache.get(a);
+            cache.get(c);
+
+            // b 가 가장 오래 쓰이지 않았다
+            assertEquals(800, cache.size());
+            assertSame(first, cache.get(a));
+        }
+    }
+
+    @Test
+    @DisplayName("한도보다 큰 파일은 내용 없이 ETag 와 Last-Modified 만 만듦")
+    void testLargeFileNotCached() throws IOException {
+        Path large = Files.write(root.resolve("large.bin"), new byte[2000]);
+
+        try (StaticFileCache cache = new StaticFileCache(root, 1000)) {
+            StaticFileCache.Entry entry = cache.get(large);
+
+            assertNull(entry.content());
+            assertNotNull(entry.etag());
+            assertEquals(0, cache.size());
+        }
+    }
+
+    @Test
+    @DisplayName("파일이 바뀌면 WatchService 로 알아채고 새 내용과 ETag 를 돌려줌")
+    void testInvalidateOnChange() throws IOException, InterruptedException {
+        Path file = Files.writeString(root.resolve("app.css"), "body{}");
+
+        try (StaticFileCache cache = new StaticFileCache(root, 1000)) {
+            StaticFileCache.Entry before = cache.get(file);
+            Files.writeString(file, "body{color:red}");
+
+            StaticFileCache.Entry after = cache.get(file);
+            for (int i = 0; i < 100 && after == before; i++) {
+                Thread.sleep(100);
+                after = cache.get(file);
+            }
+
+            assertEquals("body{color:red}", new String(after.content()));
+            assertNotEquals(before.etag(), after.etag());
+        }
+    }
+}
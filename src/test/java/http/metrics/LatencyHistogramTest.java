@@ -0,0 +1,57 @@
+package http.metrics;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    @DisplayName("칸 상한은 값보다 크고 12.5% 안쪽")
+    void testBucketPrecision() {
+        for (long micros = 0; micros < 10_000_000; micros = micros * 2 + 1) {
+            for (long value : new long[]{micros, micros + micros / 3}) {
+                long upper = LatencyHistogram.upperBound(LatencyHistogram.index(value));
+                assertTrue(upper > value, value + " -> " + upper);
+                assertTrue(upper <= Math.max(value + 1, value * 9 / 8 + 1), value + " -> " + upper);
+            }
+        }
+        // 너무 큰 값은 마지막 칸에 넣는다
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.index(Long.MAX_VALUE / 1000));
+    }
+
+    @Test
+    @DisplayName("여러 스레드가 기록해도 합계와 분위수가 맞음")
+    void testConcurrentRecordAndQuantile() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                // 1ms 990번, 100ms 10번
+                for (int i = 0; i < 990; i++) {
+                    histogram.record(1_000_000);
+                }
+                for (int i = 0; i < 10; i++) {
+                    histogram.record(100_000_000);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(4000, histogram.count());
+        assertEquals(4 * (990 * 1_000_000L + 10 * 100_000_000L), histogram.sumNanos());
+        long p50 = histogram.valueAtQuantile(0.5);
+        long p999 = histogram.valueAtQuantile(0.999);
+        assertTrue(p50 > 1000 && p50 <= 1125, "p50=" + p50);
+        assertTrue(p999 > 100_000 && p999 <= 112_500, "p999=" + p999);
+    }
+}
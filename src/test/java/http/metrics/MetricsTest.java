@@ -0,0 +1,29 @@
+package http.metrics;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricsTest {
+
+    @Test
+    @DisplayName("히스토그램 le 라벨과 합계는 지수 표기 없이 소수로 내보냄")
+    void testBucketLabels() {
+        Metrics metrics = new Metrics();
+        metrics.record("GET", "/users/:id", 200, TimeUnit.MICROSECONDS.toNanos(300));
+
+        String body = metrics.scrape();
+
+        String labels = "jin_request_duration_seconds_bucket{method=\"GET\",route=\"/users/:id\",status=\"2xx\",le=";
+        assertTrue(body.contains(labels + "\"0.0005\"} 1\n"), body);
+        assertTrue(body.contains(labels + "\"0.0025\"} 1\n"), body);
+        assertTrue(body.contains(labels + "\"1\"} 1\n"), body);
+        assertTrue(body.contains(labels + "\"10\"} 1\n"), body);
+        assertTrue(body.contains("jin_request_duration_seconds_sum{method=\"GET\",route=\"/users/:id\",status=\"2xx\"} 0.0003\n"), body);
+        assertFalse(body.contains("E-"), body);
+    }
+}
@@ -1,12 +1,22 @@
 package http.router;
 
+import http.Context;
+import http.HttpRequest;
+import http.HttpResponse;
 import http.handler.Handler;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class RouterTest {
     Router r;
@@ -33,4 +43,225 @@ class RouterTest {
         Handler result = r.getHandlers("GET", "/test");
         assertNull(result);
     }
+
+    @Test
+    @DisplayName("경로 변수와 와일드카드")
+    void testPathParameters() {
+        Handler order = ctx -> {
+        };
+        Handler file = ctx -> {
+        };
+        r.addRoute("GET", "/users/:id/orders/:oid", order);
+        r.addRoute("GET", "/files/*path", file);
+
+        RouteMatch match = r.match("GET", "/users/42/orders/7");
+        assertSame(order, match.getHandler());
+        assertEquals("42", match.getParam("id"));
+        assertEquals("7", match.getParam("oid"));
+        assertNull(match.getParam("missing"));
+
+        match = r.match("GET", "/files/css/app.css");
+        assertSame(file, match.getHandler());
+        assertEquals("css/app.css", match.getParam("path"));
+
+        assertNull(r.match("GET", "/users/42/orders"));
+        assertNull(r.match("GET", "/users//orders/7"));
+        assertNull(r.match("POST", "/users/42/orders/7"));
+    }
+
+    @Test
+    @DisplayName("정적 세그먼트를 먼저 보고, 막히면 변수로 되돌아감")
+    void testStaticBeforeParameter() {
+        Handler newUser = ctx -> {
+        };
+        Handler edit = ctx -> {
+        };
+        r.addRoute("GET", "/users/new", newUser);
+        r.addRoute("GET", "/users/:id/edit", edit);
+
+        assertSame(newUser, r.getHandlers("GET", "/users/new"));
+        assertSame(edit, r.getHandlers("GET", "/users/new/edit"));
+        assertEquals("new", r.match("GET", "/users/new/edit").getParam("id"));
+        assertSame(edit, r.getHandlers("GET", "/users/nobody/edit"));
+    }
+
+    @Test
+    @DisplayName("간선을 나눠도 기존 라우트가 그대로 맞음")
+    void testSplitEdges() {
+        Handler team = ctx -> {
+        };
+        Handler tea = ctx -> {
+        };
+        Handler teams = ctx -> {
+        };
+        r.addRoute("GET", "/team", team);
+        r.addRoute("GET", "/tea", tea);
+        r.addRoute("GET", "/teams", teams);
+
+        assertSame(team, r.getHandlers("GET", "/team"));
+        assertSame(tea, r.getHandlers("GET", "/tea"));
+        assertSame(teams, r.getHandlers("GET", "/teams"));
+        assertNull(r.getHandlers("GET", "/te"));
+    }
+
+    @Test
+    @DisplayName("정적 파일 경로는 가장 긴 접두사가 이김")
+    void testLongestStaticPrefix() {
+        Handler root = ctx -> {
+        };
+        Handler assets = ctx -> {
+        };
+        Handler images = ctx -> {
+        };
+        r.staticFiles("/", root);
+        r.staticFiles("/assets/images", images);
+        r.staticFiles("/assets", assets);
+
+        assertSame(images, r.getHandlers("GET", "/assets/images/logo.png"));
+        assertSame(assets, r.getHandlers("GET", "/assets/app.js"));
+        assertSame(root, r.getHandlers("GET", "/index.html"));
+    }
+
+    @Test
+    @DisplayName("잘못된 경로 변수")
+    void testInvalidParameters() {
+        Handler handler = ctx -> {
+        };
+        r.addRoute("GET", "/users/:id", handler);
+
+        assertThrows(IllegalArgumentException.class, () -> r.addRoute("GET", "/users/:name/posts", handler));
+        assertThrows(IllegalArgumentException.class, () -> r.addRoute("GET", "/files/*path/more", handler));
+        assertThrows(IllegalArgumentException.class, () -> r.addRoute("GET", "/a/:x/:x", handler));
+    }
+
+    @Test
+    @DisplayName("라우트 삭제와 한 번에 바꾸기")
+    void testRemoveAndReplace() {
+        Handler users = ctx -> {
+        };
+        Handler user = ctx -> {
+        };
+        Handler health = ctx -> {
+        };
+        r.addRoute("GET", "/users", users);
+        r.addRoute("GET", "/users/:id", user);
+
+        assertTrue(r.removeRoute("GET", "/users/:id"));
+        assertFalse(r.removeRoute("GET", "/users/:id"));
+        assertNull(r.getHandlers("GET", "/users/1"));
+        assertSame(users, r.getHandlers("GET", "/users"));
+
+        r.replaceRoutes(router -> router.addRoute("GET", "/health", health));
+        assertNull(r.getHandlers("GET", "/users"));
+        assertSame(health, r.getHandlers("GET", "/health"));
+    }
+
+    @Test
+    @DisplayName("미들웨어는 등록 순서대로 감싸고, 접두사 아래 라우트에만 걸림")
+    void testMiddlewareChain() {
+        StringBuilder calls = new StringBuilder();
+        r.addRoute("GET", "/admin/users/:id", ctx -> calls.append("handler;"));
+        r.use("/", (ctx, next) -> {
+            calls.append("timing>");
+            next.handle(ctx);
+            calls.append("<timing;");
+        });
+        r.use("/admin", (ctx, next) -> calls.append("auth;"));
+        r.addRoute("GET", "/public", ctx -> calls.append("public;"));
+        r.staticFiles("/admin-assets", ctx -> calls.append("assets;"));
+
+        // 나중에 등록한 라우트에도 걸리고, 인증 미들웨어가 next 를 부르지 않으면 핸들러까지 가지 않는다
+        r.getHandlers("GET", "/admin/users/1").handle(null);
+        assertEquals("timing>auth;<timing;", calls.toString());
+
+        calls.setLength(0);
+        r.getHandlers("GET", "/public").handle(null);
+        assertEquals("timing>public;<timing;", calls.toString());
+
+        // /admin-assets 는 /admin 아래가 아니다
+        calls.setLength(0);
+        r.getHandlers("GET", "/admin-assets/app.js").handle(null);
+        assertEquals("timing>assets;<timing;", calls.toString());
+
+        assertThrows(IllegalArgumentException.class, () -> r.use("admin", (ctx, next) -> next.handle(ctx)));
+    }
+
+    @Test
+    @DisplayName("접두사 안팎의 요청을 함께 받는 경로 변수 라우트와 정적 파일은 요청 경로를 보고 미들웨어를 검")
+    void testMiddlewareOnSharedRoutes() {
+        StringBuilder calls = new StringBuilder();
+        r.use("/admin", (ctx, next) -> calls.append("auth;"));
+        r.addRoute("GET", "/:section/report", ctx -> calls.append("report;"));
+        r.addRoute("GET", "/files/*path", ctx -> calls.append("files;"));
+        r.staticFiles("/", ctx -> calls.append("file;"));
+
+        for (String path : new String[]{"/admin/report", "/admin/secret.txt", "/admin", "/x/../admin/secret.txt", "//admin/secret.txt"}) {
+            calls.setLength(0);
+            r.getHandlers("GET", path).handle(context(path));
+            assertEquals("auth;", calls.toString(), path);
+        }
+
+        calls.setLength(0);
+        r.getHandlers("GET", "/sales/report").handle(context("/sales/report"));
+        r.getHandlers("GET", "/administrator.html").handle(context("/administrator.html"));
+        r.getHandlers("GET", "/files/admin/a.txt").handle(context("/files/admin/a.txt"));
+        assertEquals("report;file;files;", calls.toString());
+    }
+
+    private static Context context(String path) {
+        return new Context(new HttpRequest("GET", "HTTP/1.1", null, path, null, null, null, null), new HttpResponse());
+    }
+
+    @Test
+    @DisplayName("잘못된 라우트가 섞인 batch 는 통째로 버림")
+    void testFailedBatchKeepsRoutes() {
+        Handler handler = ctx -> {
+        };
+        r.addRoute("GET", "/users/:id", handler);
+
+        assertThrows(IllegalArgumentException.class, () -> r.batch(router -> {
+            router.addRoute("GET", "/orders", handler);
+            router.addRoute("GET", "/users/:name/posts", handler);
+        }));
+
+        assertNull(r.getHandlers("GET", "/orders"));
+        assertSame(handler, r.getHandlers("GET", "/users/1"));
+        r.addRoute("GET", "/orders", handler);
+        assertSame(handler, r.getHandlers("GET", "/orders"));
+    }
+
+    @Test
+    @DisplayName("조회 중에 라우트를 더하고 빼도 기존 라우트는 항상 맞음")
+    void testConcurrentUpdates() throws InterruptedException {
+        Handler stable = ctx -> {
+        };
+        Handler plugin = ctx -> {
+        };
+        r.addRoute("GET", "/stable/:id", stable);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger failures = new AtomicInteger();
+        Thread reader = new Thread(() -> {
+            while (running.get()) {
+                RouteMatch match = r.match("GET", "/stable/7");
+                if (match == null || match.getHandler() != stable || !"7".equals(match.getParam("id"))) {
+                    failures.incrementAndGet();
+                }
+            }
+        });
+        reader.start();
+
+        for (int i = 0; i < 2000; i++) {
+            r.addRoute("GET", "/plugins/p" + i + "/:id", plugin);
+            if (i % 2 == 0) {
+                r.removeRoute("GET", "/plugins/p" + i + "/:id");
+            }
+        }
+        running.set(false);
+        reader.join();
+
+        assertEquals(0, failures.get());
+        assertSame(plugin, r.getHandlers("GET", "/plugins/p1999/x"));
+        assertNull(r.getHandlers("GET", "/plugins/p1998/x"));
+    }
 }